@@ -0,0 +1,62 @@
+package edu.utdallas.project3.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utdallas.project3.codec.Codecs;
+import edu.utdallas.project3.codec.MessageCodec;
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.Tag;
+
+/**
+ * Encoding and decoding one {@link Message} per codec and payload size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    @Param({ "binary", "serialization" })
+    String codecName;
+
+    @Param({ "16", "256", "4096" })
+    int payloadSize;
+
+    private MessageCodec codec;
+    private Message message;
+    private ByteBuffer payload;         // Frame without its header
+
+    @Setup
+    public void setup() throws IOException{
+        codec = Codecs.forName(codecName);
+        message = new Message(3, 7, Tag.REQUEST, Loopback.payload(payloadSize));
+        ByteBuffer frame = codec.encode(message);
+        frame.position(MessageCodec.HEADER_LENGTH);
+        payload = frame.slice();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() throws IOException{
+        return codec.encode(message);
+    }
+
+    @Benchmark
+    public Message decode() throws IOException{
+        return codec.decode(payload.duplicate());
+    }
+}
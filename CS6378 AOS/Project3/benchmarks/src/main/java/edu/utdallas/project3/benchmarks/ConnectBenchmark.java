@@ -0,0 +1,37 @@
+package edu.utdallas.project3.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time until every channel of a star of TCP nodes on localhost is ready,
+ * through {@link edu.utdallas.project3.socket.Connector#connect}: the hub
+ * accepts or dials one channel per neighbor, each neighbor one. Tearing
+ * the star down again is part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = 1)
+@Measurement(iterations = 20, batchSize = 1)
+@Fork(1)
+public class ConnectBenchmark {
+    @Param({ "1", "4", "16" })
+    int neighbors;
+
+    @Benchmark
+    public void connect() throws IOException, InterruptedException{
+        new Loopback(neighbors, "binary").close();
+    }
+}
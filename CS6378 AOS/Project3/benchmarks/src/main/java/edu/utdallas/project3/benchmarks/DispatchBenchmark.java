@@ -0,0 +1,79 @@
+package edu.utdallas.project3.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utdallas.project3.server.Concurrency;
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.Process;
+import edu.utdallas.project3.server.TagHandler;
+import edu.utdallas.project3.server.Tag;
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * {@link Process#handleMessage} routing a message to its tag's handler,
+ * per concurrency mode, on the calling thread
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({ "SERIAL_PER_SOURCE", "SERIAL_GLOBAL", "CONCURRENT" })
+    Concurrency concurrency;
+
+    @Param({ "16" })
+    int neighbors;
+
+    private Process process;
+    private Message message;
+
+    /**
+     * Process with a handler that only counts
+     */
+    static class CountingProcess extends Process {
+        long handled;
+
+        CountingProcess(Linker linker, MutexConfig config, Concurrency concurrency){
+            super(linker, config);
+            register(Tag.REQUEST, concurrency, new TagHandler() {
+                @Override
+                public void handle(Message msg, int srcId) {
+                    handled++;
+                }
+            });
+        }
+    }
+
+    @Setup
+    public void setup(){
+        List<Node> nodes = new ArrayList<>();
+        for(int id = 1; id <= neighbors; id++)
+            nodes.add(new Node(id));
+        process = new CountingProcess(new Linker(0, nodes), new MutexConfig(), concurrency);
+        message = new Message(1, 0, Tag.REQUEST, "1");
+    }
+
+    @Benchmark
+    public void handleMessage() throws IOException{
+        process.handleMessage(message, message.getSrcId(), message.getTag());
+    }
+}
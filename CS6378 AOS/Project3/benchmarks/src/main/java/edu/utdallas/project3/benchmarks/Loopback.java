@@ -0,0 +1,115 @@
+package edu.utdallas.project3.benchmarks;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.utdallas.project3.codec.Codecs;
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.MessageHandler;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.Tag;
+import edu.utdallas.project3.socket.Linker;
+
+/**
+ * Star of TCP nodes on localhost inside this JVM: node 0 has a channel to
+ * every leaf, leaves only to node 0. Leaves count what they receive.
+ */
+final class Loopback {
+    final Linker hub;
+    final List<Node> leaves;
+    final List<Linker> linkers;
+    final AtomicLong received;
+
+    /**
+     * Connect the star, timing nothing but the channel setup
+     *
+     * @param leafCount
+     * @param codec Codec name
+     */
+    Loopback(int leafCount, String codec) throws IOException, InterruptedException{
+        List<Node> nodes = new ArrayList<>();
+        for(int id = 0; id <= leafCount; id++)
+            nodes.add(new Node(id, "localhost", String.valueOf(freePort())));
+        this.leaves = new ArrayList<>(nodes.subList(1, nodes.size()));
+        this.linkers = new ArrayList<>();
+        this.received = new AtomicLong();
+
+        MessageHandler counter = new MessageHandler() {
+            @Override
+            public void handleMessage(Message m, int srcId, Tag tag) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public Message receiveMessage(int fromId) {
+                return null;
+            }
+        };
+        this.hub = new Linker(0, leaves, Codecs.forName(codec));
+        linkers.add(hub);
+        for(Node leaf : leaves){
+            Linker linker = new Linker(leaf.getNodeId(), Collections.singletonList(nodes.get(0)), Codecs.forName(codec));
+            linker.setMessageHandler(counter);
+            linkers.add(linker);
+        }
+        connect(nodes);
+    }
+
+    private void connect(List<Node> nodes) throws IOException, InterruptedException{
+        final List<IOException> failures = Collections.synchronizedList(new ArrayList<IOException>());
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < linkers.size(); i++){
+            final Linker linker = linkers.get(i);
+            final int port = nodes.get(i).getPort();
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        linker.buildChannels(port);
+                    } catch (Exception e){
+                        failures.add(e instanceof IOException ? (IOException)e : new IOException(e));
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join();
+        if(!failures.isEmpty()){
+            close();
+            throw failures.get(0);
+        }
+    }
+
+    /**
+     * Wait until the leaves received this many messages in total, yielding
+     * so receivers run even on one core
+     */
+    void awaitReceived(long count){
+        while(received.get() < count)
+            Thread.yield();
+    }
+
+    void close(){
+        for(Linker linker : linkers)
+            linker.close();
+    }
+
+    static String payload(int size){
+        StringBuilder sb = new StringBuilder(size);
+        for(int i = 0; i < size; i++)
+            sb.append((char)('a' + i % 26));
+        return sb.toString();
+    }
+
+    private static int freePort() throws IOException{
+        try(ServerSocket socket = new ServerSocket(0)){
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package edu.utdallas.project3.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utdallas.project3.server.Tag;
+
+/**
+ * {@link edu.utdallas.project3.socket.Linker#multicast} from one node to
+ * all its neighbors over TCP on localhost, counted once every neighbor's
+ * handler got it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MulticastBenchmark {
+    static final int BURST = 20;
+
+    @Param({ "1", "4", "16" })
+    int neighbors;
+
+    @Param({ "16", "1024" })
+    int payloadSize;
+
+    private Loopback loopback;
+    private String content;
+    private long expected;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException{
+        loopback = new Loopback(neighbors, "binary");
+        content = Loopback.payload(payloadSize);
+        expected = 0;
+    }
+
+    @TearDown
+    public void tearDown(){
+        loopback.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void multicast() throws IOException{
+        for(int i = 0; i < BURST; i++)
+            loopback.hub.multicast(loopback.leaves, Tag.REQUEST, content);
+        expected += BURST * neighbors;
+        loopback.awaitReceived(expected);
+    }
+}
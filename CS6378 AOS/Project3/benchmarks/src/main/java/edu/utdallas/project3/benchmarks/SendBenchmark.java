@@ -0,0 +1,68 @@
+package edu.utdallas.project3.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utdallas.project3.server.Tag;
+
+/**
+ * {@link edu.utdallas.project3.socket.Linker#sendMessage} from one node to
+ * another over TCP on localhost, counted once delivered to the receiver's
+ * handler. Messages go in bursts, so batching on the channel shows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendBenchmark {
+    static final int BURST = 100;
+
+    @Param({ "16", "256", "4096" })
+    int payloadSize;
+
+    @Param({ "binary" })
+    String codecName;
+
+    private Loopback loopback;
+    private int destination;
+    private String content;
+    private long sent;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException{
+        loopback = new Loopback(1, codecName);
+        destination = loopback.leaves.get(0).getNodeId();
+        content = Loopback.payload(payloadSize);
+        sent = 0;
+    }
+
+    @TearDown
+    public void tearDown(){
+        loopback.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void sendMessage() throws IOException{
+        for(int i = 0; i < BURST; i++)
+            loopback.hub.sendMessage(destination, Tag.REQUEST, content);
+        sent += BURST;
+        loopback.awaitReceived(sent);
+    }
+}
@@ -0,0 +1,138 @@
+package edu.utdallas.project3.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.Tag;
+
+/**
+ * Hand written compact format.
+ *
+ * <pre>
+ * frame   := length:int32 payload
+ * payload := tag:uint8 flags:uint8 src:varint [values] [clock] [content:utf8]
+ * values  := count:varint first:zigzag-varint (delta:zigzag-varint)*
+ * clock   := values
+ * </pre>
+ * The content runs to the end of the payload, so it needs no length of its
+ * own. A message with {@code null} content or values has no flag for it.
+ * Array values are stored as differences to their predecessor, which keeps
+ * counters of similar size such as request numbers at one byte each. The
+ * destination is left out, the frame is the same for every receiver.
+ */
+public class BinaryCodec implements MessageCodec {
+    public static final String NAME = "binary";
+
+    static final int FLAG_CONTENT = 0x01;
+    static final int FLAG_VALUES = 0x02;
+    static final int FLAG_CLOCK = 0x04;
+
+    private static final Tag[] TAGS = Tag.values();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ByteBuffer encode(Message message) throws IOException {
+        String content = message.getContent();
+        byte[] body = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+        int[] values = message.getValues();
+        int[] clock = message.getClock();
+        int flags = (body == null ? 0 : FLAG_CONTENT) | (values == null ? 0 : FLAG_VALUES)
+                | (clock == null ? 0 : FLAG_CLOCK);
+
+        int length = 2
+                + Varints.size(message.getSrcId())
+                + (values == null ? 0 : valuesSize(values))
+                + (clock == null ? 0 : valuesSize(clock))
+                + (body == null ? 0 : body.length);
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + length);
+        frame.putInt(length);
+        frame.put((byte)message.getTag().ordinal());
+        frame.put((byte)flags);
+        Varints.write(frame, message.getSrcId());
+        if(values != null)
+            writeValues(frame, values);
+        if(clock != null)
+            writeValues(frame, clock);
+        if(body != null)
+            frame.put(body);
+        frame.flip();
+        return frame;
+    }
+
+    @Override
+    public Message decode(ByteBuffer payload) throws IOException {
+        ByteBuffer in = payload.duplicate();
+        if(in.remaining() < 2)
+            throw new IOException("Truncated payload");
+        int ordinal = in.get() & 0xFF;
+        int flags = in.get() & 0xFF;
+        if(ordinal >= TAGS.length)
+            throw new IOException(String.format("Unknown tag %d", ordinal));
+        int src = Varints.read(in);
+
+        int[] values = null;
+        if((flags & FLAG_VALUES) != 0){
+            values = readValues(in);
+        }
+        int[] clock = null;
+        if((flags & FLAG_CLOCK) != 0){
+            clock = readValues(in);
+        }
+        String content = null;
+        if((flags & FLAG_CONTENT) != 0){
+            content = utf8(in);
+        }
+        Message message = new Message(src, Message.NO_DESTINATION, TAGS[ordinal], content);
+        message.setValues(values);
+        message.setClock(clock);
+        return message;
+    }
+
+    private static int valuesSize(int[] values){
+        int size = Varints.size(values.length);
+        int previous = 0;
+        for(int value : values){
+            size += Varints.size(Varints.zigzag(value - previous));
+            previous = value;
+        }
+        return size;
+    }
+
+    private static void writeValues(ByteBuffer frame, int[] values){
+        Varints.write(frame, values.length);
+        int previous = 0;
+        for(int value : values){
+            Varints.write(frame, Varints.zigzag(value - previous));
+            previous = value;
+        }
+    }
+
+    private static int[] readValues(ByteBuffer in) throws IOException{
+        int count = Varints.read(in);
+        if(count < 0 || count > in.remaining())     // At least a byte per value
+            throw new IOException(String.format("Illegal value count %d", count));
+        int[] values = new int[count];
+        int previous = 0;
+        for(int i = 0; i < count; i++){
+            previous += Varints.unzigzag(Varints.read(in));
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static String utf8(ByteBuffer in){
+        if(in.hasArray()){
+            return new String(in.array(), in.arrayOffset() + in.position(), in.remaining(), StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[in.remaining()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
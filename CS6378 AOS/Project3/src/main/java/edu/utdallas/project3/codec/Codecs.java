@@ -0,0 +1,23 @@
+package edu.utdallas.project3.codec;
+
+/**
+ * Lookup of codecs by configuration name
+ */
+public final class Codecs {
+
+    private Codecs(){
+    }
+
+    /**
+     * @param name {@link BinaryCodec#NAME} or {@link SerializationCodec#NAME}
+     * @return A new codec instance
+     * @throws IllegalArgumentException Unknown name
+     */
+    public static MessageCodec forName(String name){
+        if(BinaryCodec.NAME.equalsIgnoreCase(name))
+            return new BinaryCodec();
+        if(SerializationCodec.NAME.equalsIgnoreCase(name))
+            return new SerializationCodec();
+        throw new IllegalArgumentException(String.format("Unknown message codec '%s'", name));
+    }
+}
@@ -0,0 +1,47 @@
+package edu.utdallas.project3.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import edu.utdallas.project3.server.Message;
+
+/**
+ * Wire format of a {@link Message}.
+ *
+ * A codec turns a message into one length-prefixed frame: a 4-byte
+ * big-endian payload length followed by the payload. Transports cut frames
+ * at that boundary and hand only the payload back for decoding.
+ *
+ * A channel connects exactly two nodes, so the destination id is implied by
+ * the channel. Codecs may leave it out of the frame; the receiving transport
+ * sets it to the local id. This lets one encoded frame be shared by every
+ * member of a multicast.
+ */
+public interface MessageCodec {
+    int HEADER_LENGTH = 4;
+
+    /**
+     * Name used to select the codec in the configuration
+     */
+    String getName();
+
+    /**
+     * Encode one message
+     *
+     * @param message
+     * @return Buffer positioned at the frame header, limit at the frame end
+     * @throws IOException
+     */
+    ByteBuffer encode(Message message) throws IOException;
+
+    /**
+     * Decode the payload of one frame, header excluded.
+     * Must not keep a reference to the buffer. The destination may come back
+     * as {@link Message#NO_DESTINATION}.
+     *
+     * @param payload
+     * @return
+     * @throws IOException Malformed payload
+     */
+    Message decode(ByteBuffer payload) throws IOException;
+}
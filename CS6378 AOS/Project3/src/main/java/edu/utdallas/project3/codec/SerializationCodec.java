@@ -0,0 +1,54 @@
+package edu.utdallas.project3.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import edu.utdallas.project3.server.Message;
+
+/**
+ * Java object serialization, one fresh stream per message.
+ * Kept for compatibility with nodes that still speak it.
+ */
+public class SerializationCodec implements MessageCodec {
+    public static final String NAME = "serialization";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ByteBuffer encode(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        bytes.write(new byte[HEADER_LENGTH]);       // Reserve header, patched below.
+        try(ObjectOutputStream oos = new ObjectOutputStream(bytes)){
+            oos.writeObject(message);
+        }
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - HEADER_LENGTH);
+        return frame;
+    }
+
+    @Override
+    public Message decode(ByteBuffer payload) throws IOException {
+        byte[] bytes;
+        int offset, length = payload.remaining();
+        if(payload.hasArray()){
+            bytes = payload.array();
+            offset = payload.arrayOffset() + payload.position();
+        } else {
+            bytes = new byte[length];
+            payload.duplicate().get(bytes);
+            offset = 0;
+        }
+        try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))){
+            return (Message)ois.readObject();
+        } catch (ClassNotFoundException e){
+            throw new IOException("Unknown message class in frame", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package edu.utdallas.project3.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable length integers: 7 bits per byte, high bit set on every
+ * byte but the last. Small non-negative values take a single byte.
+ */
+public final class Varints {
+
+    private Varints(){
+    }
+
+    /**
+     * Number of bytes {@link #write(ByteBuffer, int)} uses for a value
+     */
+    public static int size(int value){
+        if((value & (~0 << 7)) == 0) return 1;
+        if((value & (~0 << 14)) == 0) return 2;
+        if((value & (~0 << 21)) == 0) return 3;
+        if((value & (~0 << 28)) == 0) return 4;
+        return 5;
+    }
+
+    public static void write(ByteBuffer buffer, int value){
+        while((value & ~0x7F) != 0){
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    public static int read(ByteBuffer buffer) throws IOException{
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            if(!buffer.hasRemaining())
+                throw new IOException("Truncated varint");
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Zigzag mapping: small negative values become small non-negative ones
+     */
+    public static int zigzag(int value){
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unzigzag(int value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
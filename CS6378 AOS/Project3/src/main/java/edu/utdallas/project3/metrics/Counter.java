@@ -0,0 +1,25 @@
+package edu.utdallas.project3.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count, cheap to bump from many threads at once
+ */
+public class Counter {
+    private final LongAdder adder = new LongAdder();
+
+    public void increment(){
+        adder.increment();
+    }
+
+    /**
+     * @param amount Not negative
+     */
+    public void add(long amount){
+        adder.add(amount);
+    }
+
+    public long get(){
+        return adder.sum();
+    }
+}
@@ -0,0 +1,8 @@
+package edu.utdallas.project3.metrics;
+
+/**
+ * Value read when metrics are collected, e.g. a queue depth
+ */
+public interface Gauge {
+    long get();
+}
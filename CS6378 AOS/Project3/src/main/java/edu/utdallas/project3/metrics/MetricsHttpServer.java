@@ -0,0 +1,74 @@
+package edu.utdallas.project3.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a {@link MetricsRegistry} at /metrics in the Prometheus text
+ * format, on one daemon thread so a scrape never competes with the
+ * protocol for more than a core.
+ */
+public class MetricsHttpServer {
+    public static final String PATH = "/metrics";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Bind and start serving
+     *
+     * @param registry
+     * @param port 0 for any free port, see {@link #getPort()}
+     * @throws IOException Port taken
+     */
+    public MetricsHttpServer(final MetricsRegistry registry, final int port) throws IOException{
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, String.format("metrics-http-%d", port));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try{
+                    byte[] body = registry.toString().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                    exchange.sendResponseHeaders(200, body.length);
+                    try(OutputStream out = exchange.getResponseBody()){
+                        out.write(body);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return Port bound
+     */
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    public void stop(){
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,110 @@
+package edu.utdallas.project3.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only MBean with one attribute per series of a {@link
+ * MetricsRegistry}, named like the series in the scrape, e.g.
+ * project3_channel_messages_sent_total{node="0",peer="1"}.
+ *
+ * Attributes are listed as they are when a client asks for the bean's
+ * info, so metrics created later show up on the next refresh.
+ */
+public class MetricsJmx implements DynamicMBean {
+    private final MetricsRegistry registry;
+    private final ObjectName name;
+
+    /**
+     * @param registry
+     * @param scope E.g. node=3, appended to the object name
+     * @throws JMException Invalid name
+     */
+    public MetricsJmx(MetricsRegistry registry, String scope) throws JMException{
+        this.registry = registry;
+        this.name = new ObjectName("edu.utdallas.project3:type=Metrics," + scope);
+    }
+
+    /**
+     * Register with the platform MBean server, replacing a bean of the
+     * same name
+     * @throws JMException
+     */
+    public void register() throws JMException{
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if(server.isRegistered(name))
+            server.unregisterMBean(name);
+        server.registerMBean(this, name);
+    }
+
+    public void unregister(){
+        try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e){
+            // Not registered
+        }
+    }
+
+    public ObjectName getName(){
+        return name;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.value(attribute);
+        if(value == null)
+            throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> values = registry.snapshot();
+        AttributeList list = new AttributeList();
+        for(String attribute : attributes){
+            Number value = values.get(attribute);
+            if(value != null)
+                list.add(new Attribute(attribute, value));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for(Map.Entry<String, Number> entry : registry.snapshot().entrySet()){
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of " + name.getKeyPropertyListString(),
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+}
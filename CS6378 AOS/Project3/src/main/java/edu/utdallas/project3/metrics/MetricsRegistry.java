@@ -0,0 +1,293 @@
+package edu.utdallas.project3.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.utdallas.project3.tools.Histogram;
+
+/**
+ * Named counters, gauges and histograms of a node or a whole in-process
+ * cluster, told apart by labels such as node="3".
+ *
+ * Metrics are created once, typically while wiring a node up, and kept by
+ * whoever records into them; recording never goes through the registry and
+ * allocates nothing. Collecting, e.g. for {@link MetricsHttpServer} or
+ * {@link MetricsJmx}, reads every metric as it is at that moment.
+ *
+ * Histograms are exposed as summaries: a few quantiles, sum and count, in
+ * the unit given by their scale, e.g. 1e-9 for nanoseconds as seconds.
+ */
+public class MetricsRegistry {
+    /**
+     * Precision of histograms created here, within 3%
+     */
+    public static final int HISTOGRAM_SUB_BITS = 5;
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+        final String text;
+
+        Type(String text){
+            this.text = text;
+        }
+    }
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * @param name E.g. project3_messages_sent_total
+     * @param help One line
+     * @param labels Names and values, alternating
+     * @return Counter of the name and labels, created on first use
+     */
+    public synchronized Counter counter(String name, String help, String... labels){
+        Family family = family(name, help, Type.COUNTER);
+        String key = render(labels, null);
+        for(Series series : family.series){
+            if(series.labels.equals(key))
+                return (Counter)series.source;
+        }
+        Counter counter = new Counter();
+        family.series.add(new Series(labels, counter, 1));
+        return counter;
+    }
+
+    /**
+     * @param name
+     * @param help One line
+     * @param gauge Read on every collection
+     * @param labels Names and values, alternating
+     * @throws IllegalArgumentException Name and labels taken
+     */
+    public synchronized void gauge(String name, String help, Gauge gauge, String... labels){
+        add(family(name, help, Type.GAUGE), new Series(labels, gauge, 1));
+    }
+
+    /**
+     * @param name
+     * @param help One line
+     * @param scale Factor from recorded values to the exposed unit
+     * @param labels Names and values, alternating
+     * @return New histogram to record into
+     * @throws IllegalArgumentException Name and labels taken
+     */
+    public Histogram histogram(String name, String help, double scale, String... labels){
+        Histogram histogram = new Histogram(HISTOGRAM_SUB_BITS);
+        register(name, help, histogram, scale, labels);
+        return histogram;
+    }
+
+    /**
+     * Expose a histogram recorded elsewhere, e.g. {@link
+     * edu.utdallas.project3.server.MutexStats#getWaitHistogram()}
+     *
+     * @param name
+     * @param help One line
+     * @param histogram
+     * @param scale Factor from recorded values to the exposed unit
+     * @param labels Names and values, alternating
+     * @throws IllegalArgumentException Name and labels taken
+     */
+    public synchronized void register(String name, String help, Histogram histogram, double scale, String... labels){
+        add(family(name, help, Type.SUMMARY), new Series(labels, histogram, scale));
+    }
+
+    /**
+     * Write every metric in the Prometheus text format, version 0.0.4
+     *
+     * @param out
+     * @throws IOException
+     */
+    public synchronized void writePrometheus(Appendable out) throws IOException{
+        for(Family family : families.values()){
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.text).append('\n');
+            for(Series series : family.series){
+                if(family.type != Type.SUMMARY){
+                    out.append(family.name).append(series.labels).append(' ')
+                            .append(Long.toString(series.longValue())).append('\n');
+                    continue;
+                }
+                Histogram histogram = (Histogram)series.source;
+                for(double quantile : QUANTILES){
+                    out.append(family.name).append(render(series.pairs, Double.toString(quantile))).append(' ')
+                            .append(Double.toString(histogram.getValueAtPercentile(quantile * 100) * series.scale))
+                            .append('\n');
+                }
+                out.append(family.name).append("_sum").append(series.labels).append(' ')
+                        .append(Double.toString(histogram.getSum() * series.scale)).append('\n');
+                out.append(family.name).append("_count").append(series.labels).append(' ')
+                        .append(Long.toString(histogram.getCount())).append('\n');
+            }
+        }
+    }
+
+    /**
+     * @return Every value by series name with its labels, histograms as
+     *         count, sum and quantiles
+     */
+    public synchronized Map<String, Number> snapshot(){
+        Map<String, Number> values = new LinkedHashMap<>();
+        for(Family family : families.values()){
+            for(Series series : family.series){
+                if(family.type != Type.SUMMARY){
+                    values.put(family.name + series.labels, series.longValue());
+                    continue;
+                }
+                Histogram histogram = (Histogram)series.source;
+                values.put(family.name + "_count" + series.labels, histogram.getCount());
+                values.put(family.name + "_sum" + series.labels, histogram.getSum() * series.scale);
+                for(double quantile : QUANTILES){
+                    values.put(family.name + render(series.pairs, Double.toString(quantile)),
+                            histogram.getValueAtPercentile(quantile * 100) * series.scale);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Read one series without collecting the others
+     *
+     * @param series Name with its labels, as in {@link #snapshot()}
+     * @return Value, null for no such series
+     */
+    public synchronized Number value(String series){
+        int brace = series.indexOf('{');
+        String name = brace < 0 ? series : series.substring(0, brace);
+        String labels = brace < 0 ? "" : series.substring(brace);
+        Family family = families.get(name);
+        if(family != null && family.type != Type.SUMMARY){
+            for(Series candidate : family.series){
+                if(candidate.labels.equals(labels))
+                    return candidate.longValue();
+            }
+            return null;
+        }
+        if(family != null){
+            for(Series candidate : family.series){
+                for(double quantile : QUANTILES){
+                    if(render(candidate.pairs, Double.toString(quantile)).equals(labels))
+                        return ((Histogram)candidate.source).getValueAtPercentile(quantile * 100) * candidate.scale;
+                }
+            }
+            return null;
+        }
+        boolean count = name.endsWith("_count");
+        if(!count && !name.endsWith("_sum"))
+            return null;
+        family = families.get(name.substring(0, name.lastIndexOf('_')));
+        if(family == null || family.type != Type.SUMMARY)
+            return null;
+        for(Series candidate : family.series){
+            if(candidate.labels.equals(labels)){
+                Histogram histogram = (Histogram)candidate.source;
+                return count ? (Number)histogram.getCount() : (Number)(histogram.getSum() * candidate.scale);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        try{
+            writePrometheus(sb);
+        } catch (IOException e){
+            throw new IllegalStateException(e);     // Not from a StringBuilder
+        }
+        return sb.toString();
+    }
+
+    private Family family(String name, String help, Type type){
+        Family family = families.get(name);
+        if(family == null){
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if(family.type != type){
+            throw new IllegalArgumentException(String.format("%s is a %s", name, family.type.text));
+        }
+        return family;
+    }
+
+    private static void add(Family family, Series series){
+        for(Series other : family.series){
+            if(other.labels.equals(series.labels))
+                throw new IllegalArgumentException(String.format("%s%s already registered", family.name, series.labels));
+        }
+        family.series.add(series);
+    }
+
+    /**
+     * @return {a="1",b="2"}, empty without labels
+     */
+    private static String render(String[] pairs, String quantile){
+        if(pairs.length % 2 != 0)
+            throw new IllegalArgumentException("Labels come as name and value pairs");
+        if(pairs.length == 0 && quantile == null)
+            return "";
+        StringBuilder sb = new StringBuilder("{");
+        for(int i = 0; i < pairs.length; i += 2){
+            if(i > 0)
+                sb.append(',');
+            sb.append(pairs[i]).append("=\"");
+            escape(sb, pairs[i + 1]);
+            sb.append('"');
+        }
+        if(quantile != null){
+            if(pairs.length > 0)
+                sb.append(',');
+            sb.append("quantile=\"").append(quantile).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void escape(StringBuilder sb, String value){
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '\\' || c == '"')
+                sb.append('\\').append(c);
+            else if(c == '\n')
+                sb.append("\\n");
+            else
+                sb.append(c);
+        }
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final List<Series> series = new ArrayList<>();
+
+        Family(String name, String help, Type type){
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static final class Series {
+        final String[] pairs;
+        final String labels;                // Rendered once
+        final Object source;                // Counter, Gauge or Histogram
+        final double scale;
+
+        Series(String[] pairs, Object source, double scale){
+            this.pairs = pairs.clone();
+            this.labels = render(pairs, null);
+            this.source = source;
+            this.scale = scale;
+        }
+
+        long longValue(){
+            return source instanceof Counter ? ((Counter)source).get() : ((Gauge)source).get();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package edu.utdallas.project3.server;
+
+/**
+ * What a {@link TagHandler} needs from the dispatcher to stay correct
+ */
+public enum Concurrency {
+    /**
+     * One message of a source at a time, in channel order. Different sources
+     * may run in parallel.
+     */
+    SERIAL_PER_SOURCE,
+
+    /**
+     * One message at a time across all sources and all tags registered as
+     * serial global, for handlers sharing process-wide state
+     */
+    SERIAL_GLOBAL,
+
+    /**
+     * Any number at once, even from the same source. The handler is
+     * thread-safe and does not rely on arrival order.
+     */
+    CONCURRENT;
+}
@@ -0,0 +1,127 @@
+package edu.utdallas.project3.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Log of one node's critical sections, each entry and exit stamped with the
+ * node's {@link VectorClock}, for {@link CsTraceVerifier} to check offline.
+ *
+ * <pre>
+ * file   := magic:int32 version:int32 node:int32 width:int32 record*
+ * record := kind:int32 clock:int32[width]
+ * </pre>
+ * All big-endian and of fixed size, so a reader can map any part of the
+ * file and find record boundaries by arithmetic. Entries and exits
+ * alternate, starting with an entry.
+ */
+public class CsTrace implements Closeable {
+    public static final int MAGIC = 0x43535452;         // "CSTR"
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 16;
+
+    public static final int ENTER_EXCLUSIVE = 1;
+    public static final int ENTER_SHARED = 2;
+    public static final int EXIT = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final VectorClock clock;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long records;
+
+    /**
+     * @param file Replaced if it exists
+     * @param clock Clock of the node, also stamping its messages
+     * @throws IOException
+     */
+    public CsTrace(Path file, VectorClock clock) throws IOException{
+        this.clock = clock;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, 2 * recordLength(clock.getWidth())));
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(clock.getMyId()).putInt(clock.getWidth());
+    }
+
+    /**
+     * @param nodeId
+     * @return Name of the node's trace in a trace directory
+     */
+    public static String fileName(int nodeId){
+        return String.format("cs-%d.trace", nodeId);
+    }
+
+    /**
+     * @param width Number of nodes
+     * @return Bytes per record
+     */
+    public static int recordLength(int width){
+        return 4 * (1 + width);
+    }
+
+    /**
+     * Log entering the critical section, a local event of the clock
+     * @param shared Shared access, see {@link MutexProcess#csEnterShared()}
+     * @throws IOException
+     */
+    public void enter(boolean shared) throws IOException{
+        append(shared ? ENTER_SHARED : ENTER_EXCLUSIVE);
+    }
+
+    /**
+     * Log leaving the critical section, before anything telling the
+     * others
+     * @throws IOException
+     */
+    public void exit() throws IOException{
+        append(EXIT);
+    }
+
+    /**
+     * @return Records written so far
+     */
+    public synchronized long getRecords(){
+        return records;
+    }
+
+    private synchronized void append(int kind) throws IOException{
+        int[] stamp = clock.tick();
+        if(buffer.remaining() < recordLength(stamp.length))
+            drain();
+        buffer.putInt(kind);
+        for(int value : stamp)
+            buffer.putInt(value);
+        records++;
+    }
+
+    private void drain() throws IOException{
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Write out what is buffered
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException{
+        drain();
+    }
+
+    @Override
+    public synchronized void close() throws IOException{
+        if(!channel.isOpen())
+            return;
+        try{
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package edu.utdallas.project3.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Checks the {@link CsTrace} files of all nodes of a run for mutual
+ * exclusion: no two critical sections of different nodes may be
+ * concurrent, unless both were shared.
+ *
+ * Critical section A of node a happened before B if A's exit precedes B's
+ * entry, i.e. B's entry stamp counts at least as many events of a as A's
+ * exit stamp. If mutual exclusion held, the sections form one chain under
+ * that order. The verifier merges the nodes' sections by the sum of their
+ * entry stamps, which respects the order, and checks each section against
+ * the last exclusive one and, if exclusive itself, the latest shared one
+ * of every node since. A violation always shows up in one of these checks,
+ * and every pair reported really is concurrent.
+ *
+ * Files are read through memory-mapped windows of bounded size, and only
+ * the current section of every node is held, so memory stays at a few
+ * vectors per node however long the run. k-mutual exclusion with k above
+ * one cannot pass.
+ */
+public class CsTraceVerifier {
+    /**
+     * Bytes of a file mapped at a time
+     */
+    public static final long DEFAULT_WINDOW = 64L << 20;
+
+    private static final int MAX_REPORTED = 10;
+
+    private CsTraceVerifier(){
+    }
+
+    /**
+     * @param files Trace of every node of the run
+     * @return Outcome
+     * @throws IOException Unreadable or malformed trace
+     */
+    public static Result verify(List<Path> files) throws IOException{
+        return verify(files, DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param files Trace of every node of the run
+     * @param window Bytes to map at a time
+     * @return Outcome
+     * @throws IOException Unreadable or malformed trace
+     */
+    public static Result verify(List<Path> files, long window) throws IOException{
+        List<Reader> readers = new ArrayList<>();
+        try{
+            int width = -1;
+            for(Path file : files){
+                Reader reader = new Reader(file, window);
+                readers.add(reader);
+                if(width >= 0 && reader.width != width)
+                    throw new IOException(String.format("%s has vectors of %d, others of %d", file, reader.width, width));
+                width = reader.width;
+            }
+            boolean[] seen = new boolean[Math.max(0, width)];
+            for(Reader reader : readers){
+                if(seen[reader.node])
+                    throw new IOException(String.format("Two traces of node %d", reader.node));
+                seen[reader.node] = true;
+            }
+            return check(readers, Math.max(0, width));
+        } finally {
+            for(Reader reader : readers)
+                reader.close();
+        }
+    }
+
+    private static Result check(List<Reader> readers, int width) throws IOException{
+        Result result = new Result();
+        PriorityQueue<Reader> heads = new PriorityQueue<>(Math.max(1, readers.size()), new Comparator<Reader>() {
+            @Override
+            public int compare(Reader a, Reader b) {
+                int bySum = Long.compare(a.enterSum, b.enterSum);
+                return bySum != 0 ? bySum : Integer.compare(a.node, b.node);
+            }
+        });
+        for(Reader reader : readers){
+            if(reader.next())
+                heads.add(reader);
+            else
+                result.unfinished += reader.unfinished ? 1 : 0;
+        }
+
+        int lastNode = -1;                  // Last exclusive section, none yet
+        long lastIndex = 0;
+        int lastExit = 0;
+        int[] sharedExit = new int[width];  // Latest shared exit per node since, 0 if none
+        long[] sharedIndex = new long[width];
+        while(!heads.isEmpty()){
+            Reader head = heads.poll();
+            int node = head.node;
+            int[] enter = head.enter;
+            result.sections++;
+            if(lastNode >= 0 && lastNode != node && enter[lastNode] < lastExit)
+                result.report(lastNode, lastIndex, node, head.index);
+            if(head.shared){
+                sharedExit[node] = head.exit[node];
+                sharedIndex[node] = head.index;
+            } else {
+                for(int j = 0; j < width; j++){
+                    if(j != node && sharedExit[j] != 0 && enter[j] < sharedExit[j])
+                        result.report(j, sharedIndex[j], node, head.index);
+                }
+                Arrays.fill(sharedExit, 0);
+                lastNode = node;
+                lastIndex = head.index;
+                lastExit = head.exit[node];
+            }
+            if(head.next())
+                heads.add(head);
+            else
+                result.unfinished += head.unfinished ? 1 : 0;
+        }
+        return result;
+    }
+
+    /**
+     * Outcome of a verification
+     */
+    public static class Result {
+        private long sections;
+        private long violations;
+        private int unfinished;
+        private final List<String> examples = new ArrayList<>();
+
+        private void report(int nodeA, long indexA, int nodeB, long indexB){
+            violations++;
+            if(examples.size() < MAX_REPORTED){
+                examples.add(String.format("section %d of node %d is concurrent with section %d of node %d",
+                        indexA, nodeA, indexB, nodeB));
+            }
+        }
+
+        public boolean isSafe(){
+            return violations == 0;
+        }
+
+        /**
+         * @return Critical sections checked
+         */
+        public long getSections(){
+            return sections;
+        }
+
+        /**
+         * @return Concurrent pairs found
+         */
+        public long getViolations(){
+            return violations;
+        }
+
+        /**
+         * @return Traces ending inside a critical section, whose last entry
+         *         is not checked
+         */
+        public int getUnfinished(){
+            return unfinished;
+        }
+
+        /**
+         * @return The first violations, in words
+         */
+        public List<String> getExamples(){
+            return Collections.unmodifiableList(examples);
+        }
+
+        @Override
+        public String toString(){
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%s: %d critical sections, %d violations, %d unfinished traces",
+                    isSafe() ? "SAFE" : "VIOLATED", sections, violations, unfinished));
+            for(String example : examples)
+                sb.append("\n  ").append(example);
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Critical sections of one node, one at a time, from a mapped window
+     * of its trace
+     */
+    private static final class Reader implements Closeable {
+        final Path file;
+        final FileChannel channel;
+        final long size;
+        final long window;
+        final int node;
+        final int width;
+        final int recordLength;
+        ByteBuffer mapped;
+        long mappedAt;                      // File offset of the window
+        long position;                      // File offset of the next record
+
+        // Current section
+        final int[] enter;
+        final int[] exit;
+        boolean shared;
+        long enterSum;
+        long index = -1;
+        boolean unfinished;
+
+        Reader(Path file, long window) throws IOException{
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(CsTrace.HEADER_LENGTH);
+            while(header.hasRemaining() && channel.read(header, header.position()) > 0)
+                ;
+            if(header.hasRemaining() || header.getInt(0) != CsTrace.MAGIC)
+                throw new IOException(file + " is no critical section trace");
+            if(header.getInt(4) != CsTrace.VERSION)
+                throw new IOException(String.format("%s has unknown version %d", file, header.getInt(4)));
+            this.node = header.getInt(8);
+            this.width = header.getInt(12);
+            if(width <= 0 || node < 0 || node >= width)
+                throw new IOException(String.format("%s has node %d outside vectors of %d", file, node, width));
+            this.recordLength = CsTrace.recordLength(width);
+            this.window = Math.max(recordLength, window / recordLength * recordLength);
+            this.position = CsTrace.HEADER_LENGTH;
+            this.enter = new int[width];
+            this.exit = new int[width];
+        }
+
+        /**
+         * Read the next section
+         * @return False at the end of the trace
+         */
+        boolean next() throws IOException{
+            int kind = read(enter);
+            if(kind < 0)
+                return false;
+            if(kind != CsTrace.ENTER_EXCLUSIVE && kind != CsTrace.ENTER_SHARED)
+                throw new IOException(String.format("%s: expected an entry at offset %d", file, position - recordLength));
+            int exitKind = read(exit);
+            if(exitKind < 0){
+                unfinished = true;
+                return false;
+            }
+            if(exitKind != CsTrace.EXIT)
+                throw new IOException(String.format("%s: expected an exit at offset %d", file, position - recordLength));
+            shared = kind == CsTrace.ENTER_SHARED;
+            long sum = 0;
+            for(int value : enter)
+                sum += value;
+            enterSum = sum;
+            index++;
+            return true;
+        }
+
+        /**
+         * @return Kind of the record read into the stamp, -1 if no whole
+         *         record is left
+         */
+        private int read(int[] stamp) throws IOException{
+            if(size - position < recordLength)
+                return -1;
+            if(mapped == null || position + recordLength > mappedAt + mapped.limit()){
+                mappedAt = position;
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position));
+            }
+            ByteBuffer in = mapped;
+            int offset = (int)(position - mappedAt);
+            int kind = in.getInt(offset);
+            for(int i = 0; i < width; i++)
+                stamp[i] = in.getInt(offset + 4 * (i + 1));
+            position += recordLength;
+            return kind;
+        }
+
+        @Override
+        public void close() throws IOException{
+            mapped = null;
+            channel.close();
+        }
+    }
+
+    /**
+     * Verify the traces of a run
+     *
+     * @param args Trace files, or directories of *.trace files
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java CsTraceVerifier <trace file or directory>...");
+            System.exit(2);
+        }
+        List<Path> files = new ArrayList<>();
+        for(String arg : args){
+            Path path = Paths.get(arg);
+            if(Files.isDirectory(path)){
+                try(DirectoryStream<Path> traces = Files.newDirectoryStream(path, "*.trace")){
+                    for(Path trace : traces)
+                        files.add(trace);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        Result result = verify(files);
+        System.out.println(result);
+        System.exit(result.isSafe() ? 0 : 1);
+    }
+}
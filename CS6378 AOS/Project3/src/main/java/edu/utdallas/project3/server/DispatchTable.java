@@ -0,0 +1,153 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import edu.utdallas.project3.metrics.MetricsRegistry;
+import edu.utdallas.project3.tools.Histogram;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Routes incoming messages to per-tag handlers, indexed by
+ * {@link Tag#ordinal()}.
+ *
+ * Each handler declares its {@link Concurrency}, so unrelated protocols do
+ * not queue behind one lock. The linker already delivers every channel one
+ * message at a time, which covers {@link Concurrency#SERIAL_PER_SOURCE};
+ * serial global handlers share one lock; concurrent handlers go to the
+ * executor when there is one.
+ *
+ * With {@link #setMetrics(MetricsRegistry, int)}, the time every handler
+ * takes is recorded per tag, wherever it runs.
+ */
+public class DispatchTable {
+    private static final Logger LOG = LogManager.getLogger(DispatchTable.class);
+    private static final Tag[] TAGS = Tag.values();
+
+    private final TagHandler[] handlers;
+    private final Concurrency[] modes;
+    private final Object globalLock;
+    private volatile Executor executor;
+    private final Histogram[] latencies;        // Null while no metrics
+    private MetricsRegistry registry;
+    private String node;
+
+    public DispatchTable(){
+        this.handlers = new TagHandler[TAGS.length];
+        this.modes = new Concurrency[TAGS.length];
+        this.globalLock = new Object();
+        this.latencies = new Histogram[TAGS.length];
+    }
+
+    /**
+     * Register the handler of a tag, replacing any previous one.
+     * Register before messages arrive.
+     *
+     * @param tag
+     * @param concurrency
+     * @param handler
+     */
+    public void register(Tag tag, Concurrency concurrency, TagHandler handler){
+        handlers[tag.ordinal()] = handler;
+        modes[tag.ordinal()] = concurrency;
+        if(registry != null && latencies[tag.ordinal()] == null)
+            latencies[tag.ordinal()] = newLatency(tag);
+    }
+
+    /**
+     * Time the handlers of registered tags, and of tags registered later.
+     * Set before messages arrive.
+     *
+     * @param registry
+     * @param nodeId Label of the histograms
+     */
+    public void setMetrics(MetricsRegistry registry, int nodeId){
+        this.registry = registry;
+        this.node = String.valueOf(nodeId);
+        for(Tag tag : TAGS){
+            if(handlers[tag.ordinal()] != null && latencies[tag.ordinal()] == null)
+                latencies[tag.ordinal()] = newLatency(tag);
+        }
+    }
+
+    private Histogram newLatency(Tag tag){
+        return registry.histogram("project3_handler_seconds", "Time in the message handler by tag", 1e-9,
+                "node", node, "tag", tag.name());
+    }
+
+    /**
+     * Run {@link Concurrency#CONCURRENT} handlers on an executor instead of
+     * the delivering thread
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+
+    /**
+     * @param tag
+     * @return Whether a handler is registered for the tag
+     */
+    public boolean isRegistered(Tag tag){
+        return handlers[tag.ordinal()] != null;
+    }
+
+    /**
+     * Hand a message to the handler of its tag
+     *
+     * @param msg
+     * @param srcId
+     * @param tag
+     * @return false if no handler is registered for the tag
+     * @throws IOException
+     */
+    public boolean dispatch(final Message msg, final int srcId, Tag tag) throws IOException{
+        final TagHandler handler = handlers[tag.ordinal()];
+        if(handler == null)
+            return false;
+        final Histogram latency = latencies[tag.ordinal()];
+        switch(modes[tag.ordinal()]){
+        case SERIAL_GLOBAL:
+            synchronized(globalLock){
+                handle(handler, latency, msg, srcId);
+            }
+            break;
+        case CONCURRENT:
+            Executor e = executor;
+            if(e == null){
+                handle(handler, latency, msg, srcId);
+                break;
+            }
+            e.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        handle(handler, latency, msg, srcId);
+                    } catch (IOException e){
+                        LOG.error("Handler of {} failed", msg.getTag(), e);
+                    }
+                }
+            });
+            break;
+        default:
+            handle(handler, latency, msg, srcId);
+        }
+        return true;
+    }
+
+    private static void handle(TagHandler handler, Histogram latency, Message msg, int srcId) throws IOException{
+        if(latency == null){
+            handler.handle(msg, srcId);
+            return;
+        }
+        long start = System.nanoTime();
+        try{
+            handler.handle(msg, srcId);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package edu.utdallas.project3.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Grid quorums for quorum-based mutual exclusion.
+ *
+ * Nodes are laid out row by row on a grid ceil(sqrt(N)) wide, in id order;
+ * the last row may be short. The quorum of a node is its row plus its
+ * column, about 2 sqrt(N) nodes. Any two quorums a and b intersect: if
+ * the cell at (row of a, column of b) is empty, a sits in the short last
+ * row, so b either shares that row or sits in a full row where the cell at
+ * (row of b, column of a) is filled.
+ */
+public class GridQuorum implements Topology {
+
+    /**
+     * @param myId
+     * @param nodes Every node, sorted by id
+     * @return Quorum of the node, sorted by id, itself included
+     */
+    public static List<Node> quorum(int myId, List<Node> nodes){
+        int n = nodes.size();
+        int width = (int)Math.ceil(Math.sqrt(n));
+        int me = indexOf(myId, nodes);
+        int row = me / width, column = me % width;
+        List<Node> quorum = new ArrayList<>();
+        for(int i = 0; i < n; i++){
+            if(i / width == row || i % width == column)
+                quorum.add(nodes.get(i));
+        }
+        return quorum;
+    }
+
+    @Override
+    public List<Node> neighbors(int myId, List<Node> nodes) {
+        List<Node> neighbors = quorum(myId, nodes);
+        neighbors.remove(indexOf(myId, neighbors));
+        return neighbors;
+    }
+
+    private static int indexOf(int nodeId, List<Node> nodes){
+        for(int i = 0; i < nodes.size(); i++){
+            if(nodes.get(i).getNodeId() == nodeId)
+                return i;
+        }
+        throw new IllegalArgumentException(String.format("Node %d is not in the node list", nodeId));
+    }
+}
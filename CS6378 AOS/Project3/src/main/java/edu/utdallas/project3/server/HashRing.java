@@ -0,0 +1,219 @@
+package edu.utdallas.project3.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.utdallas.project3.tools.LongObjectMap;
+
+/**
+ * Consistent hashing of 64-bit keys, e.g. lock resource ids, onto nodes.
+ *
+ * Every node owns a number of virtual points on a ring of hash values; a
+ * key belongs to the node of the first point at or after the key's hash.
+ * More virtual points even out the shares. Adding or removing a node only
+ * moves the keys of the arcs next to its points, see {@link #plan}.
+ *
+ * Points depend on node ids only, so every node builds the same ring from
+ * the same membership.
+ */
+public class HashRing {
+    private final long[] points;        // Sorted hash values
+    private final int[] owners;         // Node id per point
+    private final int nodeCount;
+
+    /**
+     * @param nodes Members
+     * @param virtualNodes Points per member
+     */
+    public HashRing(List<Node> nodes, int virtualNodes){
+        int count = nodes.size() * virtualNodes;
+        long[][] pairs = new long[count][];
+        int n = 0;
+        for(Node node : nodes){
+            for(int v = 0; v < virtualNodes; v++){
+                pairs[n++] = new long[]{ pointOf(node.getNodeId(), v), node.getNodeId() };
+            }
+        }
+        Arrays.sort(pairs, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                int byPoint = Long.compareUnsigned(a[0], b[0]);
+                return byPoint != 0 ? byPoint : Long.compare(a[1], b[1]);
+            }
+        });
+        this.points = new long[count];
+        this.owners = new int[count];
+        for(int i = 0; i < count; i++){
+            points[i] = pairs[i][0];
+            owners[i] = (int)pairs[i][1];
+        }
+        this.nodeCount = nodes.size();
+    }
+
+    /**
+     * @param key
+     * @return Id of the node owning the key
+     */
+    public int owner(long key){
+        return owners[pointIndex(LongObjectMap.mix(key))];
+    }
+
+    /**
+     * Preference list of a key: its owner followed by the next distinct
+     * nodes clockwise, e.g. for a replica group
+     *
+     * @param key
+     * @param count Nodes wanted, at most all of them
+     */
+    public int[] owners(long key, int count){
+        count = Math.min(count, nodeCount);
+        int[] result = new int[count];
+        int found = 0;
+        for(int i = pointIndex(LongObjectMap.mix(key)); found < count; i = (i + 1) % points.length){
+            int owner = owners[i];
+            boolean seen = false;
+            for(int j = 0; j < found && !seen; j++)
+                seen = result[j] == owner;
+            if(!seen)
+                result[found++] = owner;
+        }
+        return result;
+    }
+
+    /**
+     * @param nodeId
+     * @return Fraction of the hash space the node owns
+     */
+    public double share(int nodeId){
+        double total = 0;
+        for(int i = 0; i < points.length; i++){
+            if(owners[i] == nodeId)
+                total += arcLength(i == 0 ? points[points.length - 1] : points[i - 1], points[i]);
+        }
+        return total / Math.pow(2, 64);
+    }
+
+    /**
+     * Arcs of the hash space that change owner going from this ring to
+     * another, e.g. after a node joined or left. Locks of a moving arc
+     * must be drained at their old owner before the new one arbitrates
+     * them.
+     *
+     * @param next Ring of the new membership
+     * @return Moves in hash order, adjacent arcs of the same move merged
+     */
+    public List<Move> plan(HashRing next){
+        long[] bounds = new long[points.length + next.points.length];
+        System.arraycopy(points, 0, bounds, 0, points.length);
+        System.arraycopy(next.points, 0, bounds, points.length, next.points.length);
+        sortUnsigned(bounds);
+
+        List<Move> moves = new ArrayList<>();
+        for(int i = 0; i < bounds.length; i++){
+            long end = bounds[i];
+            long start = i == 0 ? bounds[bounds.length - 1] : bounds[i - 1];
+            if(start == end && bounds.length > 1)
+                continue;
+            int from = owners[pointIndex(end)];
+            int to = next.owners[next.pointIndex(end)];
+            if(from == to)
+                continue;
+            Move last = moves.isEmpty() ? null : moves.get(moves.size() - 1);
+            if(last != null && last.from == from && last.to == to && last.end == start)
+                last.end = end;
+            else
+                moves.add(new Move(from, to, start, end));
+        }
+        return moves;
+    }
+
+    /**
+     * Hash values (start, end] change owner from one node to another
+     */
+    public static class Move {
+        private final int from;
+        private final int to;
+        private final long start;
+        private long end;
+
+        Move(int from, int to, long start, long end){
+            this.from = from;
+            this.to = to;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getFrom() {
+            return from;
+        }
+
+        public int getTo() {
+            return to;
+        }
+
+        /**
+         * @return Exclusive start of the arc, an unsigned hash value
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return Inclusive end of the arc, an unsigned hash value
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * @return Fraction of the hash space moving
+         */
+        public double getShare() {
+            return arcLength(start, end) / Math.pow(2, 64);
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%d -> %d (%016x, %016x] %.2f%%", from, to, start, end, 100 * getShare());
+        }
+    }
+
+    /**
+     * @return Index of the first point at or after the hash, wrapping
+     */
+    private int pointIndex(long hash){
+        int low = 0, high = points.length;
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(Long.compareUnsigned(points[mid], hash) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low == points.length ? 0 : low;
+    }
+
+    private static long pointOf(int nodeId, int virtualNode){
+        return LongObjectMap.mix(((long)nodeId << 32) | virtualNode);
+    }
+
+    /**
+     * @return Length of the arc (start, end] as a double, the full ring if
+     *         both are equal
+     */
+    private static double arcLength(long start, long end){
+        long length = end - start;
+        double value = length >= 0 ? (double)length : (double)length + Math.pow(2, 64);
+        return value == 0 ? Math.pow(2, 64) : value;
+    }
+
+    private static void sortUnsigned(long[] values){
+        for(int i = 0; i < values.length; i++)
+            values[i] ^= Long.MIN_VALUE;        // Unsigned order as signed
+        Arrays.sort(values);
+        for(int i = 0; i < values.length; i++)
+            values[i] ^= Long.MIN_VALUE;
+    }
+}
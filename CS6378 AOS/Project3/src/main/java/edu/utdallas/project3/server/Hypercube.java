@@ -0,0 +1,37 @@
+package edu.utdallas.project3.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hypercube overlay: nodes whose positions in the node list differ in
+ * exactly one bit are neighbors.
+ *
+ * Every node has at most ceil(log2 N) neighbors and the diameter is
+ * ceil(log2 N), so a breadth-first tree is at most that deep. With N
+ * not a power of two the missing corners are left out; the overlay stays
+ * connected since clearing the highest bit of a position always leads to
+ * a smaller one.
+ */
+public class Hypercube implements Topology {
+
+    @Override
+    public List<Node> neighbors(int myId, List<Node> nodes) {
+        int me = -1;
+        for(int i = 0; i < nodes.size(); i++){
+            if(nodes.get(i).getNodeId() == myId)
+                me = i;
+        }
+        if(me < 0)
+            throw new IllegalArgumentException(String.format("Node %d is not in the node list", myId));
+        List<Node> neighbors = new ArrayList<>();
+        for(int bit = 1; bit < nodes.size(); bit <<= 1){
+            int other = me ^ bit;
+            if(other < nodes.size())
+                neighbors.add(nodes.get(other));
+        }
+        Collections.sort(neighbors);
+        return neighbors;
+    }
+}
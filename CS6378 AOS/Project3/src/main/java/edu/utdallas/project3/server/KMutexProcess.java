@@ -0,0 +1,121 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * Raymond's k-mutual exclusion, a distributed semaphore on top of
+ * Ricart-Agrawala: up to {@link MutexConfig#getMutexK()} nodes may be in
+ * the critical section at once.
+ *
+ * A node asks all others but enters with N-k replies; the at most k-1
+ * missing ones belong to nodes inside or ahead of it. Replies still owed
+ * arrive after the node entered, possibly after it asked again, so each
+ * REPLY names the request it answers and stale ones are dropped. A node
+ * owing several replies to the same neighbor answers the latest request
+ * only, one message for all of them.
+ */
+public class KMutexProcess extends MutexProcess {
+    public static final String NAME = "k-mutex";
+
+    private final Object lock = new Object();
+
+    private final List<Node> neighbors;
+    private final int needed;           // Replies to enter
+    private long clock;                 // Lamport clock
+    private long myTimestamp;           // Timestamp of the pending request
+    private boolean requesting;         // Requested or inside the critical section
+    private boolean inCs;
+    private final long[] deferred;      // Latest request owed a reply, 0 for none
+    private int replies;                // Replies to the pending request
+
+    public KMutexProcess(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.neighbors = linker.getNeighbors();
+        this.needed = Math.max(0, numProc + 1 - config.getMutexK());
+        this.deferred = new long[numProc];
+
+        register(Tag.REQUEST, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onRequest(srcId, Long.parseLong(msg.getContent()));
+            }
+        });
+        register(Tag.REPLY, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onReply(Long.parseLong(msg.getContent()));
+            }
+        });
+    }
+
+    @Override
+    protected void request() throws IOException {
+        synchronized(lock){
+            requesting = true;
+            myTimestamp = ++clock;
+            replies = 0;
+            if(needed == 0){
+                enter();            // k covers every node, nobody to ask
+                return;
+            }
+            countMessages(numProc);
+            linker.multicast(neighbors, Tag.REQUEST, Long.toString(myTimestamp));
+        }
+    }
+
+    @Override
+    protected void release() throws IOException {
+        synchronized(lock){
+            inCs = false;
+            requesting = false;
+            for(int i = 0; i < numProc; i++){
+                if(deferred[i] != 0){
+                    reply(i, deferred[i]);
+                    deferred[i] = 0;
+                }
+            }
+        }
+    }
+
+    private void onRequest(int srcId, long timestamp) throws IOException{
+        int i = indexOf(srcId);
+        synchronized(lock){
+            clock = Math.max(clock, timestamp) + 1;
+            if(inCs || (requesting && precedes(myTimestamp, myId, timestamp, srcId))){
+                deferred[i] = timestamp;    // Supersedes an older one, answered with it
+                return;
+            }
+            reply(i, timestamp);
+        }
+    }
+
+    private void onReply(long answered){
+        synchronized(lock){
+            countMessage();
+            if(requesting && !inCs && answered == myTimestamp && ++replies == needed)
+                enter();
+        }
+    }
+
+    private void enter(){
+        inCs = true;
+        granted();
+    }
+
+    private void reply(int index, long timestamp) throws IOException{
+        linker.sendMessage(neighbors.get(index).getNodeId(), Tag.REPLY, Long.toString(timestamp));
+    }
+
+    private static boolean precedes(long ts1, int id1, long ts2, int id2){
+        return ts1 < ts2 || (ts1 == ts2 && id1 < id2);
+    }
+
+    private int indexOf(int nodeId){
+        return Collections.binarySearch(neighbors, new Node(nodeId));
+    }
+}
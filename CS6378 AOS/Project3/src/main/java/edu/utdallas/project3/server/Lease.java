@@ -0,0 +1,69 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Time-bounded ownership of a lock, handed out by
+ * {@link LeaseService#acquire(long)}.
+ *
+ * The coordinator takes the lock back once the lease ran out, whether or
+ * not the holder released it. Holders therefore check {@link #isValid()}
+ * before acting, and pass the fencing token to the resource they guard so
+ * that it can turn away a holder whose lease has been given to someone
+ * else meanwhile: tokens only grow.
+ */
+public class Lease {
+    private final LeaseService service;
+    private final long resource;
+    private final long token;
+    private final long deadline;        // System.nanoTime() the lease ends at the latest
+    private final AtomicBoolean released;
+
+    Lease(LeaseService service, long resource, long token, long deadline){
+        this.service = service;
+        this.resource = resource;
+        this.token = token;
+        this.deadline = deadline;
+        this.released = new AtomicBoolean();
+    }
+
+    public long getResource(){
+        return resource;
+    }
+
+    /**
+     * @return Fencing token, larger than any given out before
+     */
+    public long getToken(){
+        return token;
+    }
+
+    /**
+     * Counted from when the lease was asked for plus the time the request
+     * queued at the coordinator, so it ends here no later than there.
+     *
+     * @return Time left, 0 or less once expired
+     */
+    public long getRemainingNanos(){
+        return deadline - System.nanoTime();
+    }
+
+    /**
+     * @return Not released and not expired
+     */
+    public boolean isValid(){
+        return !released.get() && getRemainingNanos() > 0;
+    }
+
+    /**
+     * Hand the lock back before the lease runs out. Harmless after it did.
+     * @throws IOException
+     * @throws IllegalStateException Released before
+     */
+    public void release() throws IOException{
+        if(!released.compareAndSet(false, true))
+            throw new IllegalStateException("Lease already released");
+        service.release(resource, token);
+    }
+}
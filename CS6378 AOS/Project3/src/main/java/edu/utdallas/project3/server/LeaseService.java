@@ -0,0 +1,462 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.LongObjectMap;
+import edu.utdallas.project3.tools.MutexConfig;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Named locks granted as leases by one coordinator, the node with the
+ * lowest id.
+ *
+ * A node asks the coordinator for a lock, gets a grant carrying a fencing
+ * token and gives it back: 3 messages per entry, none on the coordinator
+ * itself. The coordinator grants each lock in FIFO order and takes it back
+ * once its lease ran out, so a holder that crashed or hangs delays the
+ * others by at most {@link MutexConfig#getLeaseMillis()}.
+ *
+ * Requests, grants and releases are not sent one by one but collected per
+ * destination and sent as one LEASE message per tick, see
+ * {@link MutexConfig#getLeaseTickMillis()}. Under load a message carries
+ * many of them, at the price of up to a tick of latency per hop.
+ *
+ * Content of a LEASE message is a list of records separated by ';':
+ * R<i>resource</i> asks for a lock,
+ * G<i>resource</i>:<i>token</i>:<i>waited</i> grants it and
+ * F<i>resource</i>:<i>token</i> frees it. <i>waited</i> is how many
+ * nanoseconds the request queued at the coordinator: the requester counts
+ * its lease from when it asked plus that, which is never later than the
+ * coordinator's end of the lease, without synchronized clocks.
+ */
+public class LeaseService extends Process {
+    private static final Logger LOG = LogManager.getLogger(LeaseService.class);
+    private static final int NONE = -1;
+
+    /**
+     * Ticks of all services in the JVM
+     */
+    private static final ScheduledThreadPoolExecutor TICKER = newTicker();
+
+    private final List<Node> neighbors;
+    private final int coordinatorId;
+    private final long leaseNanos;
+    private final long tickMillis;
+    private ScheduledFuture<?> tick;
+
+    // Coordinator side
+    private final Object coordinator = new Object();
+    private final LongObjectMap<Slot> slots;
+    private final ArrayDeque<Expiry> expiries;     // All leases last as long, so in grant order
+    private long fence;                 // Last fencing token
+    private long grants;
+    private long expired;
+
+    // Requester side
+    private final Object requester = new Object();
+    private final LongObjectMap<ArrayDeque<Pending>> pending;   // Not granted yet, FIFO per resource
+
+    // Records not sent yet, by neighbor index
+    private final StringBuilder[] outbox;
+
+    /**
+     * Local grants of this thread not run yet, see grantLocally()
+     */
+    private final ThreadLocal<ArrayDeque<long[]>> granting = new ThreadLocal<ArrayDeque<long[]>>() {
+        @Override
+        protected ArrayDeque<long[]> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    public LeaseService(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.neighbors = linker.getNeighbors();
+        this.coordinatorId = config.getNodes().get(0).getNodeId();
+        this.leaseNanos = TimeUnit.MILLISECONDS.toNanos(config.getLeaseMillis());
+        this.tickMillis = config.getLeaseTickMillis();
+        this.slots = new LongObjectMap<>();
+        this.expiries = new ArrayDeque<>();
+        this.pending = new LongObjectMap<>();
+        this.outbox = new StringBuilder[numProc];
+        for(int i = 0; i < numProc; i++){
+            outbox[i] = new StringBuilder();
+        }
+
+        register(Tag.LEASE, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onRecords(srcId, msg.getContent());
+            }
+        });
+    }
+
+    /**
+     * Start ticking: sending batched records and expiring leases
+     */
+    @Override
+    public void start() throws IOException{
+        long period = Math.max(1, tickMillis);
+        tick = TICKER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    tick();
+                } catch (IOException e){
+                    LOG.error("[Node {}] [LEASE] Tick failed", myId, e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop ticking. Records not sent yet are dropped.
+     */
+    public void stop(){
+        if(tick != null)
+            tick.cancel(false);
+    }
+
+    /**
+     * Ask for a lease on a lock without blocking.
+     *
+     * The future completes on the message handling thread once the
+     * coordinator granted the lock. Cancelling it withdraws the caller; a
+     * grant arriving later is handed back right away.
+     *
+     * @param resource Resource id, see {@link LockTable#resourceId(String)}
+     * @return Lease to release when done
+     * @throws IOException
+     */
+    public CompletableFuture<Lease> acquire(long resource) throws IOException{
+        Pending waiter = new Pending();
+        synchronized(requester){
+            ArrayDeque<Pending> queue = pending.get(resource);
+            if(queue == null){
+                queue = new ArrayDeque<>(2);
+                pending.put(resource, queue);
+            }
+            queue.add(waiter);
+        }
+        if(coordinatorId == myId)
+            onRequest(myId, resource);
+        else
+            post(coordinatorId, 'R', resource, 0, 0);
+        return waiter.future;
+    }
+
+    /**
+     * @return Leases granted by this node as coordinator
+     */
+    public long getGrants(){
+        synchronized(coordinator){
+            return grants;
+        }
+    }
+
+    /**
+     * @return Leases this node as coordinator took back after they ran out
+     */
+    public long getExpired(){
+        synchronized(coordinator){
+            return expired;
+        }
+    }
+
+    public int getCoordinatorId(){
+        return coordinatorId;
+    }
+
+    void release(long resource, long token) throws IOException{
+        if(coordinatorId == myId)
+            onRelease(myId, resource, token);
+        else
+            post(coordinatorId, 'F', resource, token, 0);
+    }
+
+    private void onRecords(int srcId, String content) throws IOException{
+        int start = 0;
+        while(start < content.length()){
+            int end = content.indexOf(';', start);
+            if(end < 0)
+                end = content.length();
+            char type = content.charAt(start);
+            long[] fields = new long[3];        // Resource, token, waited
+            int field = 0;
+            for(int from = start + 1; from <= end && field < fields.length; field++){
+                int colon = content.indexOf(':', from);
+                int to = colon < 0 || colon > end ? end : colon;
+                fields[field] = Long.parseLong(content.substring(from, to));
+                from = to + 1;
+            }
+            long resource = fields[0], token = fields[1];
+            switch(type){
+            case 'R':
+                onRequest(srcId, resource);
+                break;
+            case 'G':
+                onGrant(resource, token, fields[2]);
+                break;
+            case 'F':
+                onRelease(srcId, resource, token);
+                break;
+            default:
+                LOG.warn("[Node {}] [LEASE] Unknown record {}", myId, content.substring(start, end));
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Coordinator: queue a request, granting it if the lock is free
+     */
+    private void onRequest(int srcId, long resource) throws IOException{
+        List<long[]> local = new ArrayList<>(1);
+        synchronized(coordinator){
+            Slot slot = slots.get(resource);
+            if(slot == null){
+                slot = new Slot(resource);
+                slots.put(resource, slot);
+            }
+            if(slot.holder == NONE)
+                grantTo(slot, srcId, 0, local);
+            else
+                slot.enqueue(srcId, System.nanoTime());
+        }
+        grantLocally(local);
+    }
+
+    /**
+     * Coordinator: the holder gave the lock back, stale tokens are ignored
+     */
+    private void onRelease(int srcId, long resource, long token) throws IOException{
+        List<long[]> local = new ArrayList<>(1);
+        synchronized(coordinator){
+            Slot slot = slots.get(resource);
+            if(slot == null || slot.holder != srcId || slot.token != token)
+                return;                     // Expired meanwhile
+            passOn(slot, local);
+        }
+        grantLocally(local);
+    }
+
+    /**
+     * Requester: the oldest pending caller of the lock gets it
+     */
+    private void onGrant(long resource, long token, long waited) throws IOException{
+        Pending waiter;
+        synchronized(requester){
+            ArrayDeque<Pending> queue = pending.get(resource);
+            if(queue == null){
+                LOG.warn("[Node {}] [LEASE] Unexpected grant of {}", myId, resource);
+                return;
+            }
+            waiter = queue.poll();
+            if(queue.isEmpty())
+                pending.remove(resource);
+        }
+        Lease lease = new Lease(this, resource, token, waiter.start + waited + leaseNanos);
+        if(!waiter.future.complete(lease))
+            lease.release();                // Withdrawn meanwhile, pass it on
+    }
+
+    /**
+     * @param waited Nanoseconds the request queued here
+     */
+    private void grantTo(Slot slot, int nodeId, long waited, List<long[]> local) throws IOException{
+        slot.holder = nodeId;
+        slot.token = ++fence;
+        grants++;
+        expiries.add(new Expiry(System.nanoTime() + leaseNanos, slot));
+        if(nodeId == myId)
+            local.add(new long[]{ slot.resource, slot.token, waited });
+        else
+            post(nodeId, 'G', slot.resource, slot.token, waited);
+    }
+
+    private void passOn(Slot slot, List<long[]> local) throws IOException{
+        if(slot.queueCount == 0){
+            slot.holder = NONE;
+            slot.token = 0;
+            slots.remove(slot.resource);
+            return;
+        }
+        long waited = System.nanoTime() - slot.queuedAt[slot.queueHead];
+        grantTo(slot, slot.dequeue(), waited, local);
+    }
+
+    /**
+     * Grants to this node itself, outside the coordinator's monitor since
+     * callers' callbacks run here. A callback releasing right away grants
+     * the next local caller; only the outermost call on the thread runs
+     * grants, so that does not nest.
+     */
+    private void grantLocally(List<long[]> local) throws IOException{
+        if(local.isEmpty())
+            return;
+        ArrayDeque<long[]> queue = granting.get();
+        boolean outermost = queue.isEmpty();
+        queue.addAll(local);
+        if(!outermost)
+            return;
+        try{
+            while(!queue.isEmpty()){
+                long[] grant = queue.peek();
+                onGrant(grant[0], grant[1], grant[2]);
+                queue.poll();
+            }
+        } finally {
+            queue.clear();
+        }
+    }
+
+    /**
+     * Queue a record for a node, sent with the next tick
+     */
+    private void post(int nodeId, char type, long resource, long token, long waited) throws IOException{
+        int index = Collections.binarySearch(neighbors, new Node(nodeId));
+        StringBuilder box = outbox[index];
+        synchronized(box){
+            if(box.length() > 0)
+                box.append(';');
+            box.append(type).append(resource);
+            if(type != 'R')
+                box.append(':').append(token);
+            if(type == 'G')
+                box.append(':').append(waited);
+        }
+        if(tickMillis == 0)
+            flush(index);
+    }
+
+    private void tick() throws IOException{
+        for(int i = 0; i < numProc; i++){
+            try{
+                flush(i);
+            } catch (IOException e){
+                // Other neighbors and the expiry scan still get their turn
+                LOG.error("[Node {}] [LEASE] Flush to node {} failed", myId, neighbors.get(i).getNodeId(), e);
+            }
+        }
+
+        List<long[]> local = new ArrayList<>();
+        synchronized(coordinator){
+            long now = System.nanoTime();
+            while(!expiries.isEmpty() && expiries.peek().deadline - now <= 0){
+                Expiry expiry = expiries.poll();
+                Slot slot = expiry.slot;
+                if(slot.token != expiry.token || slot.holder == NONE)
+                    continue;               // Released in time
+                expired++;
+                LOG.info("[Node {}] [LEASE] Lease {} of node {} on {} expired",
+                        myId, slot.token, slot.holder, slot.resource);
+                passOn(slot, local);
+            }
+        }
+        grantLocally(local);
+    }
+
+    private void flush(int index) throws IOException{
+        StringBuilder box = outbox[index];
+        String content;
+        synchronized(box){
+            if(box.length() == 0)
+                return;
+            content = box.toString();
+            box.setLength(0);
+        }
+        linker.sendMessage(neighbors.get(index).getNodeId(), Tag.LEASE, content);
+    }
+
+    private static ScheduledThreadPoolExecutor newTicker(){
+        ScheduledThreadPoolExecutor ticker = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "lease-ticker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ticker.setRemoveOnCancelPolicy(true);
+        return ticker;
+    }
+
+    /**
+     * Coordinator state of one lock in use
+     */
+    private static final class Slot {
+        final long resource;
+        int holder = NONE;
+        long token;
+        int[] queue;                        // Nodes waiting, FIFO ring
+        long[] queuedAt;                    // System.nanoTime() they asked at
+        int queueHead;
+        int queueCount;
+
+        Slot(long resource){
+            this.resource = resource;
+        }
+
+        void enqueue(int nodeId, long now){
+            if(queue == null){
+                queue = new int[4];
+                queuedAt = new long[4];
+            } else if(queueCount == queue.length){
+                int[] larger = new int[queue.length * 2];
+                long[] largerAt = new long[queue.length * 2];
+                for(int i = 0; i < queueCount; i++){
+                    larger[i] = queue[(queueHead + i) % queue.length];
+                    largerAt[i] = queuedAt[(queueHead + i) % queue.length];
+                }
+                queue = larger;
+                queuedAt = largerAt;
+                queueHead = 0;
+            }
+            int tail = (queueHead + queueCount++) % queue.length;
+            queue[tail] = nodeId;
+            queuedAt[tail] = now;
+        }
+
+        int dequeue(){
+            int first = queue[queueHead];
+            queueHead = (queueHead + 1) % queue.length;
+            queueCount--;
+            return first;
+        }
+    }
+
+    /**
+     * End of one lease
+     */
+    private static final class Expiry {
+        final long deadline;
+        final Slot slot;
+        final long token;
+
+        Expiry(long deadline, Slot slot){
+            this.deadline = deadline;
+            this.slot = slot;
+            this.token = slot.token;
+        }
+    }
+
+    /**
+     * A local caller waiting for its grant
+     */
+    private static final class Pending {
+        final long start = System.nanoTime();
+        final CompletableFuture<Lease> future = new CompletableFuture<>();
+    }
+}
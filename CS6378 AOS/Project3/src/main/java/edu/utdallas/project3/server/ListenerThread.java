@@ -3,12 +3,16 @@ package edu.utdallas.project3.server;
 import java.io.EOFException;
 import java.net.SocketException;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 /**
  * Thread listen to each neighbors
  * @author zeqing
  *
  */
 public class ListenerThread implements Runnable {
+    private static final Logger LOG = LogManager.getLogger(ListenerThread.class);
     private int myId;
     private int channel;
     private MessageHandler process;
@@ -31,9 +35,9 @@ public class ListenerThread implements Runnable {
             }
         } catch (SocketException | EOFException e) {
             // Handle Socket Closed Exception
-            System.out.println(String.format("[Node %d] Channel %d Terminated. %s", myId, channel, e.toString()));
+            LOG.info("[Node {}] Channel {} Terminated. {}", myId, channel, e);
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("[Node {}] Listener of channel {} failed", myId, channel, e);
         }        
     }
 
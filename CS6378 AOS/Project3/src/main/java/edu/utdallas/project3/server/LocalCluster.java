@@ -0,0 +1,204 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.JMException;
+
+import edu.utdallas.project3.codec.Codecs;
+import edu.utdallas.project3.metrics.MetricsHttpServer;
+import edu.utdallas.project3.metrics.MetricsJmx;
+import edu.utdallas.project3.metrics.MetricsRegistry;
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.socket.LocalHub;
+import edu.utdallas.project3.socket.LocalTransport;
+import edu.utdallas.project3.tools.MutexConfig;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs a whole cluster of processes inside one JVM over
+ * {@link LocalTransport}, fully connected unless a {@link Topology} says
+ * otherwise. Node ids are 0 to
+ * {@link MutexConfig#getNumberOfNodes()} - 1, and every process shares the
+ * same configuration. With a trace directory configured, every node keeps
+ * a {@link VectorClock} and logs its critical sections there, see
+ * {@link CsTrace}. With metrics enabled, all nodes share one registry,
+ * their series told apart by the node label, exposed as MBean
+ * cluster=local and on the configured scrape port.
+ */
+public class LocalCluster {
+    private static final Logger LOG = LogManager.getLogger(LocalCluster.class);
+
+    /**
+     * Creates the process of one node
+     */
+    public interface ProcessFactory {
+        Process create(Linker linker, MutexConfig config) throws IOException;
+    }
+
+    private final MutexConfig config;
+    private final ProcessFactory factory;
+    private final Topology topology;
+    private final LocalHub hub;
+    private final List<Linker> linkers;
+    private final List<Process> processes;
+    private final List<CsTrace> traces;
+    private ExecutorService executor;         // Shared by all nodes, null to handle inline
+    private MetricsRegistry metrics;          // Null unless enabled
+    private MetricsJmx jmx;
+    private MetricsHttpServer http;
+
+    public LocalCluster(MutexConfig config, ProcessFactory factory){
+        this(config, factory, Topology.FULL_MESH);
+    }
+
+    /**
+     * @param config Shared by every node, its node list is filled in here
+     * @param factory
+     * @param topology Channels between the nodes
+     */
+    public LocalCluster(MutexConfig config, ProcessFactory factory, Topology topology){
+        this.config = config;
+        this.factory = factory;
+        this.topology = topology;
+        this.hub = new LocalHub();
+        this.linkers = new ArrayList<>();
+        this.processes = new ArrayList<>();
+        this.traces = new ArrayList<>();
+    }
+
+    /**
+     * Create every process and connect them all
+     *
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void start() throws IOException, InterruptedException {
+        int numberOfNodes = config.getNumberOfNodes();
+        executor = config.getExecutionMode().newExecutor("cluster", config.getExecutionThreads());
+        List<Node> nodes = new ArrayList<>();
+        for(int id = 0; id < numberOfNodes; id++){
+            nodes.add(new Node(id));
+        }
+        config.setNodes(nodes);
+        if(config.isMetricsEnabled())
+            exposeMetrics();
+        for(int id = 0; id < numberOfNodes; id++){
+            List<Node> neighbors = topology.neighbors(id, nodes);
+            Linker linker = new Linker(id, neighbors, Codecs.forName(config.getMessageCodec()));
+            linker.setTransport(new LocalTransport(hub, config.getConnectDeadline()));
+            Process process = factory.create(linker, config);
+            linker.setMessageHandler(process);
+            if(metrics != null){
+                linker.setMetrics(metrics);
+                process.setMetrics(metrics);
+            }
+            if(!config.getTraceDirectory().isEmpty()){
+                VectorClock clock = new VectorClock(id, numberOfNodes);
+                linker.setVectorClock(clock);
+                if(process instanceof MutexProcess){
+                    CsTrace trace = new CsTrace(Paths.get(config.getTraceDirectory(), CsTrace.fileName(id)), clock);
+                    traces.add(trace);
+                    ((MutexProcess)process).setTrace(trace);
+                }
+            }
+            if(executor != null){
+                linker.setExecutor(executor);
+                process.setExecutor(executor);
+            }
+            linkers.add(linker);
+            processes.add(process);
+        }
+
+        // Each node waits for its neighbors while joining, so join them all at once.
+        ExecutorService joiners = Executors.newFixedThreadPool(numberOfNodes);
+        try{
+            List<Future<Void>> joined = new ArrayList<>();
+            for(final Linker linker : linkers){
+                joined.add(joiners.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        linker.buildChannels();
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> future : joined){
+                future.get();
+            }
+            for(Process process : processes){
+                process.start();
+            }
+        } catch (ExecutionException e){
+            close();
+            throw new IOException("Local cluster failed to start", e.getCause());
+        } finally {
+            joiners.shutdown();
+        }
+    }
+
+    private void exposeMetrics() throws IOException{
+        metrics = new MetricsRegistry();
+        try{
+            if(config.isMetricsJmx()){
+                jmx = new MetricsJmx(metrics, "cluster=local");
+                jmx.register();
+            }
+        } catch (JMException e){
+            throw new IOException("Cannot register metrics MBean", e);
+        }
+        if(config.getMetricsHttpPort() > 0)
+            http = new MetricsHttpServer(metrics, config.getMetricsHttpPort());
+    }
+
+    public Process getProcess(int nodeId){
+        return processes.get(nodeId);
+    }
+
+    public List<Process> getProcesses(){
+        return processes;
+    }
+
+    /**
+     * @return Hub counting every frame exchanged in the cluster
+     */
+    public LocalHub getHub(){
+        return hub;
+    }
+
+    /**
+     * @return Metrics of every node, null if disabled
+     */
+    public MetricsRegistry getMetrics(){
+        return metrics;
+    }
+
+    public void close(){
+        hub.shutdown();
+        for(Linker linker : linkers){
+            linker.close();
+        }
+        for(CsTrace trace : traces){
+            try{
+                trace.close();
+            } catch (IOException e){
+                LOG.error("Cannot close trace", e);
+            }
+        }
+        if(executor != null)
+            executor.shutdownNow();
+        if(http != null)
+            http.stop();
+        if(jmx != null)
+            jmx.unregister();
+    }
+}
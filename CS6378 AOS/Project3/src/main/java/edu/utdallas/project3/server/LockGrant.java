@@ -0,0 +1,47 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Permission to be in the critical section, handed out by
+ * {@link MutexProcess#csEnterAsync()} or {@link LockTable#acquire(long)}.
+ * Release it exactly once.
+ */
+public class LockGrant {
+    /**
+     * Gives the critical section back to whoever granted it
+     */
+    interface Releaser {
+        void release() throws IOException;
+    }
+
+    private final Releaser releaser;
+    private final long waitNanos;
+    private final AtomicBoolean released;
+
+    LockGrant(Releaser releaser, long waitNanos){
+        this.releaser = releaser;
+        this.waitNanos = waitNanos;
+        this.released = new AtomicBoolean();
+    }
+
+    /**
+     * Leave the critical section, passing it on to the next local caller
+     * or to the other nodes
+     * @throws IOException
+     * @throws IllegalStateException Released before
+     */
+    public void release() throws IOException{
+        if(!released.compareAndSet(false, true))
+            throw new IllegalStateException("Grant already released");
+        releaser.release();
+    }
+
+    /**
+     * @return Time from the request to the grant
+     */
+    public long getWaitNanos(){
+        return waitNanos;
+    }
+}
@@ -0,0 +1,465 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.LongObjectMap;
+import edu.utdallas.project3.tools.MutexConfig;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Any number of independent named locks over the channels of one process.
+ *
+ * Locks are arbitrated in one of two ways, see
+ * {@link MutexConfig#getLockArbitration()}:
+ * <ul>
+ * <li>{@link #ARBITRATION_ALL}: every lock runs Ricart-Agrawala on its own
+ * among all nodes, 2(N-1) messages per entry.</li>
+ * <li>{@link #ARBITRATION_RING}: the lock namespace is sharded over a
+ * {@link HashRing} of all nodes, and the home node of a lock grants it in
+ * FIFO order: LOCK_REQUEST, LOCK_REPLY as the grant and LOCK_RELEASE, 3
+ * messages per entry and none on the home node itself. Each node
+ * arbitrates only its share, so cluster throughput grows with the nodes.
+ * Membership is fixed; {@link HashRing#plan} tells which locks would move
+ * on a change.</li>
+ * </ul>
+ * Messages name the resource id. Protocol state exists only while a lock
+ * is requested, held, arbitrated with waiters or owes replies, and is
+ * dropped as soon as the lock goes idle, so idle locks cost nothing
+ * however many there are.
+ *
+ * State lives in striped {@link LongObjectMap}s keyed by resource id, each
+ * stripe with its own monitor and Lamport clock, so threads working on
+ * different locks rarely meet. A Lamport clock per stripe is enough since
+ * requests only compete with requests for the same resource, which always
+ * map to the same stripe.
+ *
+ * Local callers of one lock queue up behind a single request. A caller
+ * leaving hands the lock straight to the next local caller unless another
+ * node asked for it meanwhile.
+ */
+public class LockTable extends Process {
+    private static final Logger LOG = LogManager.getLogger(LockTable.class);
+    public static final String ARBITRATION_ALL = "all";
+    public static final String ARBITRATION_RING = "ring";
+
+    private static final int NONE = -1;
+
+    private final List<Node> neighbors;
+    private final Stripe[] stripes;
+    private final HashRing ring;        // Home nodes, null to ask all nodes
+
+    /**
+     * Grants of this thread not run yet, see grant()
+     */
+    private final ThreadLocal<ArrayDeque<Waiter>> granting = new ThreadLocal<ArrayDeque<Waiter>>() {
+        @Override
+        protected ArrayDeque<Waiter> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    public LockTable(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.neighbors = linker.getNeighbors();
+        int count = Integer.highestOneBit(Math.max(1, stripeCount(config)) * 2 - 1);
+        this.stripes = new Stripe[count];
+        for(int i = 0; i < count; i++){
+            stripes[i] = new Stripe();
+        }
+        if(ARBITRATION_RING.equalsIgnoreCase(config.getLockArbitration()))
+            this.ring = new HashRing(config.getNodes(), config.getLockVirtualNodes());
+        else if(ARBITRATION_ALL.equalsIgnoreCase(config.getLockArbitration()))
+            this.ring = null;
+        else
+            throw new IllegalArgumentException(String.format("Unknown lock arbitration '%s'", config.getLockArbitration()));
+
+        register(Tag.LOCK_REQUEST, Concurrency.CONCURRENT, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                String content = msg.getContent();
+                int comma = content.indexOf(',');
+                onRequest(srcId, Long.parseLong(content.substring(0, comma)),
+                        Long.parseLong(content.substring(comma + 1)));
+            }
+        });
+        register(Tag.LOCK_REPLY, Concurrency.CONCURRENT, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                String content = msg.getContent();
+                int comma = content.indexOf(',');
+                onReply(Long.parseLong(content.substring(0, comma)),
+                        Long.parseLong(content.substring(comma + 1)));
+            }
+        });
+        register(Tag.LOCK_RELEASE, Concurrency.CONCURRENT, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                String content = msg.getContent();
+                int comma = content.indexOf(',');
+                onRelease(srcId, Long.parseLong(content.substring(0, comma)),
+                        "1".equals(content.substring(comma + 1)));
+            }
+        });
+    }
+
+    /**
+     * Ask for a lock without blocking.
+     *
+     * The future completes on the message handling thread once the lock is
+     * granted. Cancelling it withdraws the caller; if the request is
+     * already out, the lock is released as soon as it is granted.
+     *
+     * @param resource Resource id, see {@link #resourceId(String)}
+     * @return Grant to release when done
+     * @throws IOException
+     */
+    public CompletableFuture<LockGrant> acquire(long resource) throws IOException{
+        Waiter waiter = new Waiter(resource);
+        Stripe stripe = stripeOf(resource);
+        boolean granted = false;
+        synchronized(stripe){
+            LockState state = stripe.locks.get(resource);
+            if(state == null){
+                state = new LockState();
+                stripe.locks.put(resource, state);
+            }
+            state.waiters.add(waiter);
+            if(state.waiters.size() == 1)
+                granted = request(stripe, resource, state);
+        }
+        if(granted)
+            grant(stripe, waiter);
+        return waiter.future;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a resource name. Names that collide share one
+     * lock, which is safe, only less concurrent.
+     *
+     * @param name
+     */
+    public static long resourceId(String name){
+        long hash = 0xcbf29ce484222325L;
+        for(byte b : name.getBytes(StandardCharsets.UTF_8)){
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return Locks with protocol state on this node, i.e. not idle
+     */
+    public int getActiveLocks(){
+        int count = 0;
+        for(Stripe stripe : stripes){
+            synchronized(stripe){
+                count += stripe.locks.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Ring of home nodes, null unless arbitrated on a ring
+     */
+    public HashRing getRing(){
+        return ring;
+    }
+
+    /**
+     * @return Cost of the grants on this node, over all locks
+     */
+    public MutexStats getStats(){
+        MutexStats total = new MutexStats();
+        for(Stripe stripe : stripes)
+            total.add(stripe.stats);
+        return total;
+    }
+
+    private void release(Waiter waiter) throws IOException{
+        long resource = waiter.resource;
+        Stripe stripe = stripeOf(resource);
+        Waiter next = null;
+        synchronized(stripe){
+            LockState state = stripe.locks.get(resource);
+            if(state == null || !state.held || state.waiters.peek() != waiter)
+                throw new IllegalStateException(String.format("Lock %d not held", resource));
+            state.waiters.poll();
+            boolean again = !state.waiters.isEmpty();
+            int home = ring == null ? myId : ring.owner(resource);
+            if(again && state.deferredCount == 0 && home == myId){
+                next = state.waiters.peek();        // Nobody else asked, keep it local
+                next.local = true;
+            } else if(ring == null){
+                state.held = false;
+                state.timestamp = 0;
+                for(int i = 0; i < state.deferredCount; i++)
+                    reply(stripe, state.deferred[i], resource);
+                state.deferredCount = 0;
+                if(again && request(stripe, resource, state))
+                    next = state.waiters.peek();
+            } else {
+                // Give it back to the home node, asking again in the same
+                // message if more local callers wait
+                state.held = false;
+                state.timestamp = again ? ++stripe.clock : 0;
+                if(again)
+                    state.waiters.peek().messages = 2;
+                if(home != myId)
+                    linker.sendMessage(home, Tag.LOCK_RELEASE, resource + "," + (again ? "1" : "0"));
+                else if(passOn(stripe, resource, state, myId, again))
+                    next = state.waiters.peek();
+            }
+            dropIfIdle(stripe, resource, state);
+        }
+        if(next != null)
+            grant(stripe, next);
+    }
+
+    private void onRequest(int srcId, long resource, long timestamp) throws IOException{
+        Stripe stripe = stripeOf(resource);
+        synchronized(stripe){
+            stripe.clock = Math.max(stripe.clock, timestamp) + 1;
+            LockState state = stripe.locks.get(resource);
+            if(ring != null){
+                if(state == null){
+                    state = new LockState();
+                    stripe.locks.put(resource, state);
+                }
+                arbitrate(stripe, resource, state, srcId);
+                return;
+            }
+            if(state != null && state.timestamp != 0
+                    && (state.held || precedes(state.timestamp, myId, timestamp, srcId))){
+                state.defer(srcId);
+                return;
+            }
+            reply(stripe, srcId, resource);
+        }
+    }
+
+    private void onReply(long resource, long timestamp) throws IOException{
+        Stripe stripe = stripeOf(resource);
+        Waiter next = null;
+        synchronized(stripe){
+            stripe.clock = Math.max(stripe.clock, timestamp) + 1;
+            LockState state = stripe.locks.get(resource);
+            if(state == null || state.timestamp == 0 || state.held){
+                LOG.warn("[Node {}] [LOCK] Unexpected reply for {}", myId, resource);
+                return;
+            }
+            if(ring != null || --state.missing == 0){
+                state.held = true;
+                next = state.waiters.peek();
+            }
+        }
+        if(next != null)
+            grant(stripe, next);
+    }
+
+    /**
+     * The home node of a lock hears that its holder left
+     */
+    private void onRelease(int srcId, long resource, boolean again) throws IOException{
+        Stripe stripe = stripeOf(resource);
+        Waiter next = null;
+        synchronized(stripe){
+            LockState state = stripe.locks.get(resource);
+            if(state == null || state.holder != srcId){
+                LOG.warn("[Node {}] [LOCK] Unexpected release of {} by {}", myId, resource, srcId);
+                return;
+            }
+            if(passOn(stripe, resource, state, srcId, again))
+                next = state.waiters.peek();
+            dropIfIdle(stripe, resource, state);
+        }
+        if(next != null)
+            grant(stripe, next);
+    }
+
+    /**
+     * Home node: queue a request, granting it if the lock is free
+     * @return Whether this node itself got the lock
+     */
+    private boolean arbitrate(Stripe stripe, long resource, LockState state, int requester) throws IOException{
+        if(state.holder != NONE){
+            state.defer(requester);
+            return false;
+        }
+        state.holder = requester;
+        return sendGrant(stripe, resource, state, requester);
+    }
+
+    /**
+     * Home node: the holder left, grant the lock to the next in line
+     * @param again The holder asks again, at the end of the line
+     * @return Whether this node itself got the lock
+     */
+    private boolean passOn(Stripe stripe, long resource, LockState state, int holder, boolean again) throws IOException{
+        if(again)
+            state.defer(holder);
+        if(state.deferredCount == 0){
+            state.holder = NONE;
+            return false;
+        }
+        state.holder = state.pollDeferred();
+        return sendGrant(stripe, resource, state, state.holder);
+    }
+
+    private boolean sendGrant(Stripe stripe, long resource, LockState state, int nodeId) throws IOException{
+        if(nodeId == myId){
+            state.held = true;
+            return true;
+        }
+        reply(stripe, nodeId, resource);
+        return false;
+    }
+
+    private static void dropIfIdle(Stripe stripe, long resource, LockState state){
+        if(state.waiters.isEmpty() && !state.held && state.timestamp == 0
+                && state.holder == NONE && state.deferredCount == 0)
+            stripe.locks.remove(resource);
+    }
+
+    /**
+     * Ask for a lock on behalf of the first local waiter, from all
+     * neighbors or from the home node
+     * @return Whether the lock is held right away
+     */
+    private boolean request(Stripe stripe, long resource, LockState state) throws IOException{
+        state.timestamp = ++stripe.clock;
+        Waiter waiter = state.waiters.peek();
+        if(ring != null){
+            int home = ring.owner(resource);
+            if(home == myId)
+                return arbitrate(stripe, resource, state, myId);
+            waiter.messages = 3;
+            linker.sendMessage(home, Tag.LOCK_REQUEST, resource + "," + state.timestamp);
+            return false;
+        }
+        state.missing = numProc;
+        if(numProc == 0){
+            state.held = true;
+            return true;
+        }
+        waiter.messages = 2 * numProc;
+        linker.multicast(neighbors, Tag.LOCK_REQUEST, resource + "," + state.timestamp);
+        return false;
+    }
+
+    private void reply(Stripe stripe, int nodeId, long resource) throws IOException{
+        linker.sendMessage(nodeId, Tag.LOCK_REPLY, resource + "," + (++stripe.clock));
+    }
+
+    /**
+     * Hand the lock to a local waiter, outside the stripe's monitor since
+     * the caller's callbacks run here.
+     *
+     * A callback may release right away and so grant the next local
+     * waiter; such grants are queued and run by the outermost call on the
+     * thread, keeping the stack flat however long the local queue is.
+     */
+    private void grant(Stripe stripe, Waiter waiter) throws IOException{
+        long waitNanos = System.nanoTime() - waiter.start;
+        stripe.stats.record(waiter.local ? 0 : waiter.messages, waitNanos);
+        if(waiter.local)
+            stripe.stats.recordCombined();
+        waiter.waitNanos = waitNanos;
+
+        ArrayDeque<Waiter> queue = granting.get();
+        queue.add(waiter);
+        if(queue.size() > 1)
+            return;                         // An outer call runs it
+        try{
+            while(!queue.isEmpty()){
+                Waiter next = queue.peek();
+                if(!next.future.complete(new LockGrant(next, next.waitNanos)))
+                    release(next);          // Withdrawn meanwhile, pass it on
+                queue.poll();
+            }
+        } finally {
+            queue.clear();
+        }
+    }
+
+    private Stripe stripeOf(long resource){
+        // High bits, the maps index by the low ones
+        return stripes[(int)(LongObjectMap.mix(resource) >>> 32) & (stripes.length - 1)];
+    }
+
+    private static int stripeCount(MutexConfig config){
+        if(config.getLockStripes() > 0)
+            return config.getLockStripes();
+        return 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    private static boolean precedes(long ts1, int id1, long ts2, int id2){
+        return ts1 < ts2 || (ts1 == ts2 && id1 < id2);
+    }
+
+    /**
+     * Locks of one stripe
+     */
+    private static final class Stripe {
+        final LongObjectMap<LockState> locks = new LongObjectMap<>();
+        final MutexStats stats = new MutexStats();
+        long clock;                             // Lamport clock of the stripe
+    }
+
+    /**
+     * Protocol state of one lock that is not idle
+     */
+    private static final class LockState {
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>(2);    // Head requests or holds
+        long timestamp;                     // Request out or held, 0 for none
+        boolean held;
+        int missing;                        // Replies still to come
+        int holder = NONE;                  // Home node: node granted the lock
+        int[] deferred;                     // Node ids owed a reply, FIFO at the home node
+        int deferredCount;
+
+        void defer(int nodeId){
+            if(deferred == null)
+                deferred = new int[4];
+            else if(deferredCount == deferred.length)
+                deferred = Arrays.copyOf(deferred, deferredCount * 2);
+            deferred[deferredCount++] = nodeId;
+        }
+
+        int pollDeferred(){
+            int first = deferred[0];
+            System.arraycopy(deferred, 1, deferred, 0, --deferredCount);
+            return first;
+        }
+    }
+
+    /**
+     * One local caller of a lock
+     */
+    private final class Waiter implements LockGrant.Releaser {
+        final long resource;
+        final long start = System.nanoTime();
+        final CompletableFuture<LockGrant> future = new CompletableFuture<>();
+        boolean local;                      // Handed over by a local caller
+        int messages;                       // Cost of its request
+        long waitNanos;
+
+        Waiter(long resource){
+            this.resource = resource;
+        }
+
+        @Override
+        public void release() throws IOException {
+            LockTable.this.release(this);
+        }
+    }
+}
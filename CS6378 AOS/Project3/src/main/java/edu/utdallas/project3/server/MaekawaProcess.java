@@ -0,0 +1,275 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * Maekawa's quorum-based mutual exclusion, deadlock-free through
+ * INQUIRE/YIELD/FAILED.
+ *
+ * Every node is the arbiter of one lock and needs the locks of its
+ * {@link GridQuorum} to enter, so an entry costs O(sqrt(N)) messages and
+ * channels are only needed within quorums. An arbiter lends its lock to
+ * the request with the smallest (Lamport timestamp, node id). When a
+ * better request arrives it sends INQUIRE to the holder, and a holder that
+ * already knows it can not win (it got FAILED somewhere) gives the lock
+ * back with YIELD. Requests that can not win at an arbiter get FAILED.
+ *
+ * The node's own lock is handled through a local loopback queue, in the
+ * same order as if it were a channel.
+ */
+public class MaekawaProcess extends MutexProcess {
+    public static final String NAME = "maekawa";
+
+    private final Object lock = new Object();
+    private final List<Node> quorum;        // Itself included
+    private final ArrayDeque<Message> loopback;
+    private long clock;
+
+    /* Requester side */
+    private boolean requesting;
+    private boolean inCs;
+    private long myTimestamp;
+    private final Set<Integer> granted;     // Arbiters whose lock this node holds
+    private final Set<Integer> inquiries;   // Arbiters waiting for a YIELD decision
+    private boolean failed;                 // Some arbiter prefers another request
+
+    /* Arbiter side */
+    private Request lockedBy;               // Null while the lock is free
+    private boolean inquired;               // INQUIRE sent to the current holder
+    private final PriorityQueue<Request> waiting;
+
+    public MaekawaProcess(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.quorum = GridQuorum.quorum(myId, config.getNodes());
+        this.loopback = new ArrayDeque<>();
+        this.granted = new HashSet<>();
+        this.inquiries = new HashSet<>();
+        this.waiting = new PriorityQueue<>();
+
+        TagHandler handler = new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                synchronized(lock){
+                    receive(msg);
+                    drainLoopback();
+                }
+            }
+        };
+        for(Tag tag : new Tag[]{ Tag.REQUEST, Tag.REPLY, Tag.INQUIRE, Tag.YIELD, Tag.FAILED, Tag.RELEASE }){
+            register(tag, Concurrency.SERIAL_PER_SOURCE, handler);
+        }
+    }
+
+    /**
+     * @return Quorum of this node, itself included
+     */
+    public List<Node> getQuorum(){
+        return quorum;
+    }
+
+    @Override
+    protected void request() throws IOException {
+        synchronized(lock){
+            requesting = true;
+            myTimestamp = ++clock;
+            granted.clear();
+            inquiries.clear();
+            failed = false;
+            for(Node member : quorum){
+                send(member.getNodeId(), Tag.REQUEST, myTimestamp);
+            }
+            drainLoopback();
+        }
+    }
+
+    @Override
+    protected void release() throws IOException {
+        synchronized(lock){
+            inCs = false;
+            requesting = false;
+            for(Node member : quorum){
+                send(member.getNodeId(), Tag.RELEASE, myTimestamp);
+            }
+            drainLoopback();
+        }
+    }
+
+    private void receive(Message msg) throws IOException{
+        int srcId = msg.getSrcId();
+        long timestamp = Long.parseLong(msg.getContent());
+        switch(msg.getTag()){
+        case REQUEST:
+            onRequest(new Request(timestamp, srcId));
+            break;
+        case YIELD:
+            onYield(srcId, timestamp);
+            break;
+        case RELEASE:
+            onRelease(srcId, timestamp);
+            break;
+        case REPLY:
+            count(srcId);
+            onGrant(srcId, timestamp);
+            break;
+        case INQUIRE:
+            count(srcId);
+            onInquire(srcId, timestamp);
+            break;
+        case FAILED:
+            count(srcId);
+            onFailed(timestamp);
+            break;
+        default:
+        }
+    }
+
+    /* Arbiter side */
+
+    private void onRequest(Request request) throws IOException{
+        clock = Math.max(clock, request.timestamp) + 1;
+        if(lockedBy == null){
+            lockedBy = request;
+            send(request.nodeId, Tag.REPLY, request.timestamp);
+            return;
+        }
+        Request best = waiting.peek();
+        waiting.add(request);
+        if(waiting.peek() != request || lockedBy.compareTo(request) < 0){
+            fail(request);
+            return;
+        }
+        if(best != null)
+            fail(best);             // No longer the one to get the lock next
+        if(!inquired){
+            inquired = true;
+            send(lockedBy.nodeId, Tag.INQUIRE, lockedBy.timestamp);
+        }
+    }
+
+    private void onYield(int srcId, long timestamp) throws IOException{
+        if(lockedBy == null || !lockedBy.is(srcId, timestamp))
+            return;
+        lockedBy.failed = true;     // The holder knows it lost
+        waiting.add(lockedBy);
+        grantNext();
+    }
+
+    private void onRelease(int srcId, long timestamp) throws IOException{
+        if(lockedBy == null || !lockedBy.is(srcId, timestamp))
+            return;
+        grantNext();
+    }
+
+    private void grantNext() throws IOException{
+        inquired = false;
+        lockedBy = waiting.poll();
+        if(lockedBy != null)
+            send(lockedBy.nodeId, Tag.REPLY, lockedBy.timestamp);
+    }
+
+    private void fail(Request request) throws IOException{
+        if(!request.failed){
+            request.failed = true;
+            send(request.nodeId, Tag.FAILED, request.timestamp);
+        }
+    }
+
+    /* Requester side */
+
+    private void onGrant(int srcId, long timestamp){
+        if(!requesting || timestamp != myTimestamp)
+            return;
+        granted.add(srcId);
+        if(granted.size() == quorum.size()){
+            inCs = true;
+            inquiries.clear();      // Answered by the RELEASE
+            granted();
+        }
+    }
+
+    private void onInquire(int srcId, long timestamp) throws IOException{
+        if(!requesting || inCs || timestamp != myTimestamp || !granted.contains(srcId))
+            return;
+        if(granted.size() == quorum.size())
+            return;                 // Entering anyway, the RELEASE answers
+        if(failed)
+            yieldTo(srcId);
+        else
+            inquiries.add(srcId);
+    }
+
+    private void onFailed(long timestamp) throws IOException{
+        if(!requesting || inCs || timestamp != myTimestamp)
+            return;
+        failed = true;
+        for(int arbiter : inquiries){
+            yieldTo(arbiter);
+        }
+        inquiries.clear();
+    }
+
+    private void yieldTo(int arbiter) throws IOException{
+        granted.remove(arbiter);
+        send(arbiter, Tag.YIELD, myTimestamp);
+    }
+
+    /* Messaging */
+
+    private void send(int dstId, Tag tag, long timestamp) throws IOException{
+        if(dstId == myId){
+            loopback.add(new Message(myId, myId, tag, Long.toString(timestamp)));
+            return;
+        }
+        if(tag == Tag.REQUEST || tag == Tag.YIELD || tag == Tag.RELEASE)
+            countMessage();
+        linker.sendMessage(dstId, tag, Long.toString(timestamp));
+    }
+
+    /**
+     * Messages this node receives as a requester count to its entry
+     */
+    private void count(int srcId){
+        if(srcId != myId && requesting)
+            countMessage();
+    }
+
+    private void drainLoopback() throws IOException{
+        Message msg;
+        while((msg = loopback.poll()) != null){
+            receive(msg);
+        }
+    }
+
+    /**
+     * A request as seen by an arbiter
+     */
+    private static class Request implements Comparable<Request> {
+        final long timestamp;
+        final int nodeId;
+        boolean failed;             // FAILED sent for it
+
+        Request(long timestamp, int nodeId){
+            this.timestamp = timestamp;
+            this.nodeId = nodeId;
+        }
+
+        boolean is(int nodeId, long timestamp){
+            return this.nodeId == nodeId && this.timestamp == timestamp;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if(timestamp != other.timestamp)
+                return Long.compare(timestamp, other.timestamp);
+            return Integer.compare(nodeId, other.nodeId);
+        }
+    }
+}
@@ -2,19 +2,28 @@ package edu.utdallas.project3.server;
 
 import java.io.Serializable;
 
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
 /**
  * 
  * @author Zeqing Li, zxl165030, The University of Texas at Dallas
  *
  */
-public class Message implements Serializable{
+public class Message implements Serializable, StringBuilderFormattable{
     
     private static final long serialVersionUID = 1L;
     
+    /**
+     * Destination of a message not bound to one receiver yet, e.g. a multicast
+     */
+    public static final int NO_DESTINATION = -1;
+    
     private int srcId;
     private int dstId;
     private String content;
     private Tag tag;
+    private int[] values;
+    private int[] clock;
     
     /**
      * Constructor for application message
@@ -42,6 +51,18 @@ public class Message implements Serializable{
         setTag(tag);
     }
     
+    /**
+     * Constructor for message carrying an array, for example a token
+     * @param src
+     * @param dst
+     * @param tag
+     * @param values
+     */
+    public Message(int src, int dst, Tag tag, int[] values){
+        this(src, dst, tag, (String)null);
+        setValues(values);
+    }
+    
     
     public int getSrcId() {
         return srcId;
@@ -79,11 +100,46 @@ public class Message implements Serializable{
     }
 
 
+    /**
+     * @return Array body, null if none
+     */
+    public int[] getValues() {
+        return values;
+    }
+
+    public void setValues(int[] values) {
+        this.values = values;
+    }
+
+
+    /**
+     * @return Vector timestamp of the send, null unless the linker keeps a
+     *         {@link VectorClock}
+     */
+    public int[] getClock() {
+        return clock;
+    }
+
+    public void setClock(int[] clock) {
+        this.clock = clock;
+    }
+
+
+    /**
+     * Append the message the way {@link #toString()} shows it, so loggers
+     * format it into their reused buffers without creating strings
+     */
+    @Override
+    public void formatTo(StringBuilder sb){
+        sb.append('[').append(tag).append("] SOURCE = ").append(srcId)
+                .append(" DST = ").append(dstId)
+                .append(" CONTENT = \"").append(content).append("\" ");
+    }
+
     @Override 
     public String toString(){
         StringBuilder sb = new StringBuilder();
-        sb.append(String.format("[%s] SOURCE = %d DST = %d CONTENT = \"%s\" ", 
-                tag, this.srcId, this.dstId, this.content));
+        formatTo(sb);
         return sb.toString();
     }
 
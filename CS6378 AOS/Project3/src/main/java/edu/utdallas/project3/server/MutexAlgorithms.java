@@ -0,0 +1,85 @@
+package edu.utdallas.project3.server;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * Lookup of mutual exclusion algorithms by configuration name
+ */
+public final class MutexAlgorithms {
+
+    private MutexAlgorithms(){
+    }
+
+    /**
+     * @param name {@link RicartAgrawalaProcess#NAME}, {@link MaekawaProcess#NAME},
+     *        {@link RaymondProcess#NAME}, {@link SuzukiKasamiProcess#NAME},
+     *        {@link KMutexProcess#NAME} or {@link ReaderWriterProcess#NAME}
+     * @return Factory of processes running the algorithm
+     * @throws IllegalArgumentException Unknown name
+     */
+    public static LocalCluster.ProcessFactory forName(String name){
+        if(RicartAgrawalaProcess.NAME.equalsIgnoreCase(name)){
+            return new LocalCluster.ProcessFactory() {
+                @Override
+                public Process create(Linker linker, MutexConfig config) {
+                    return new RicartAgrawalaProcess(linker, config);
+                }
+            };
+        }
+        if(MaekawaProcess.NAME.equalsIgnoreCase(name)){
+            return new LocalCluster.ProcessFactory() {
+                @Override
+                public Process create(Linker linker, MutexConfig config) {
+                    return new MaekawaProcess(linker, config);
+                }
+            };
+        }
+        if(RaymondProcess.NAME.equalsIgnoreCase(name)){
+            return new LocalCluster.ProcessFactory() {
+                @Override
+                public Process create(Linker linker, MutexConfig config) {
+                    return new RaymondProcess(linker, config);
+                }
+            };
+        }
+        if(SuzukiKasamiProcess.NAME.equalsIgnoreCase(name)){
+            return new LocalCluster.ProcessFactory() {
+                @Override
+                public Process create(Linker linker, MutexConfig config) {
+                    return new SuzukiKasamiProcess(linker, config);
+                }
+            };
+        }
+        if(KMutexProcess.NAME.equalsIgnoreCase(name)){
+            return new LocalCluster.ProcessFactory() {
+                @Override
+                public Process create(Linker linker, MutexConfig config) {
+                    return new KMutexProcess(linker, config);
+                }
+            };
+        }
+        if(ReaderWriterProcess.NAME.equalsIgnoreCase(name)){
+            return new LocalCluster.ProcessFactory() {
+                @Override
+                public Process create(Linker linker, MutexConfig config) {
+                    return new ReaderWriterProcess(linker, config);
+                }
+            };
+        }
+        throw new IllegalArgumentException(String.format("Unknown mutual exclusion algorithm '%s'", name));
+    }
+
+    /**
+     * @param name
+     * @return Channels the algorithm needs, a full mesh unless it says
+     *         otherwise
+     */
+    public static Topology topologyFor(String name){
+        if(MaekawaProcess.NAME.equalsIgnoreCase(name))
+            return new GridQuorum();
+        if(RaymondProcess.NAME.equalsIgnoreCase(name))
+            return new Hypercube();
+        return Topology.FULL_MESH;
+    }
+}
@@ -0,0 +1,441 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import edu.utdallas.project3.metrics.MetricsRegistry;
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MpscQueue;
+import edu.utdallas.project3.tools.MutexConfig;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Process running a distributed mutual exclusion algorithm.
+ *
+ * Callers either bracket their critical section with {@link #csEnter()}
+ * and {@link #csLeave()}, or ask with {@link #csEnterAsync()} and release
+ * the {@link LockGrant} they get. Local callers queue up here, so the
+ * algorithm only ever runs one request of this node at a time, and a
+ * waiting caller costs no thread. With a batch bound above one, callers
+ * queued here while the node holds the critical section enter in turn
+ * under the same request, and the node releases globally only after the
+ * batch or when nobody local is left.
+ *
+ * Subclasses start a request in {@link #request()}, call
+ * {@link #granted()} once they hold the critical section, give it up in
+ * {@link #release()}, and call {@link #countMessage()} for every message
+ * an entry costs.
+ */
+public abstract class MutexProcess extends Process {
+    private static final Logger LOG = LogManager.getLogger(MutexProcess.class);
+    /**
+     * Fires timeouts of all processes in the JVM
+     */
+    private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+    protected final MutexStats stats;
+    private final AtomicLong messages;     // Messages counted so far, over all entries
+    private final LockGrant.Releaser leaver;
+    private final int maxBatch;
+
+    // Local callers are added by any thread. Everything else below is only
+    // touched by the one thread running pump() at the time.
+    private final MpscQueue<Entry> waiting;
+    private final AtomicInteger pumping;   // Calls to pump() not yet served
+    private volatile Entry current;        // Requested from the algorithm or holding
+    private int batch;                     // Entries in a row under one request
+    private volatile boolean requestShared;    // Mode of the request in progress
+    private volatile CsTrace trace;        // Null unless entries are logged
+
+    public MutexProcess(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.stats = new MutexStats();
+        this.messages = new AtomicLong();
+        this.maxBatch = Math.max(1, config.getMutexBatch());
+        this.waiting = new MpscQueue<>();
+        this.pumping = new AtomicInteger();
+        this.leaver = new LockGrant.Releaser() {
+            @Override
+            public void release() throws IOException {
+                csLeave();
+            }
+        };
+    }
+
+    /**
+     * Block until this node holds the critical section
+     * @throws IOException
+     * @throws InterruptedException The request is withdrawn
+     */
+    public void csEnter() throws IOException, InterruptedException{
+        await(csEnterAsync());
+    }
+
+    /**
+     * Block until this node holds the critical section in shared mode.
+     * Leave it with {@link #csLeave()}.
+     * @throws IOException
+     * @throws InterruptedException The request is withdrawn
+     * @see #csEnterSharedAsync()
+     */
+    public void csEnterShared() throws IOException, InterruptedException{
+        await(csEnterSharedAsync());
+    }
+
+    private static void await(CompletableFuture<LockGrant> future) throws IOException, InterruptedException{
+        try{
+            future.get();
+        } catch (InterruptedException e){
+            if(!future.cancel(false) && !future.isCompletedExceptionally()){
+                // Granted while the interrupt was noticed; nobody else will leave
+                try{
+                    future.getNow(null).release();
+                } catch (IOException released){
+                    e.addSuppressed(released);
+                }
+            }
+            throw e;
+        } catch (ExecutionException e){
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Leave the critical section entered by {@link #csEnter()}.
+     * Messages sent on the way out still count to this entry.
+     * If another local caller waits, it may get the critical section
+     * straight away instead, see {@link MutexConfig#getMutexBatch()}.
+     * @throws IOException
+     */
+    public void csLeave() throws IOException{
+        Entry entry = current;
+        if(entry == null || !entry.granted || entry.left)
+            throw new IllegalStateException("Not in the critical section");
+        entry.left = true;
+        pump();
+    }
+
+    /**
+     * Ask for the critical section without blocking.
+     *
+     * The future completes on the message handling thread once the
+     * permission arrives, so dependent stages should be quick or use the
+     * async variants. Cancelling it withdraws the request: a caller still
+     * queued locally is skipped, one the algorithm already works on is
+     * released as soon as it is granted.
+     *
+     * @return Grant to release when done
+     */
+    public CompletableFuture<LockGrant> csEnterAsync(){
+        return enqueue(false);
+    }
+
+    /**
+     * Ask for the critical section in shared mode without blocking.
+     *
+     * Shared holders on different nodes do not exclude each other, only
+     * exclusive ones. Algorithms without a shared mode grant it
+     * exclusively, see {@link #isShared()}.
+     *
+     * @return Grant to release when done
+     */
+    public CompletableFuture<LockGrant> csEnterSharedAsync(){
+        return enqueue(true);
+    }
+
+    /**
+     * {@link #csEnterAsync()} that fails with a {@link TimeoutException}
+     * and withdraws the request if not granted in time
+     *
+     * @param timeout
+     * @param unit
+     */
+    public CompletableFuture<LockGrant> csEnterAsync(long timeout, TimeUnit unit){
+        return withTimeout(csEnterAsync(), timeout, unit);
+    }
+
+    /**
+     * {@link #csEnterSharedAsync()} with a timeout, like
+     * {@link #csEnterAsync(long, TimeUnit)}
+     *
+     * @param timeout
+     * @param unit
+     */
+    public CompletableFuture<LockGrant> csEnterSharedAsync(long timeout, TimeUnit unit){
+        return withTimeout(csEnterSharedAsync(), timeout, unit);
+    }
+
+    private CompletableFuture<LockGrant> enqueue(boolean shared){
+        Entry entry = new Entry(shared);
+        waiting.offer(entry);
+        pump();
+        return entry.future;
+    }
+
+    private static CompletableFuture<LockGrant> withTimeout(final CompletableFuture<LockGrant> future,
+            long timeout, TimeUnit unit){
+        final ScheduledFuture<?> timer = TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                future.completeExceptionally(new TimeoutException("Critical section not granted in time"));
+            }
+        }, timeout, unit);
+        future.whenComplete(new BiConsumer<LockGrant, Throwable>() {
+            @Override
+            public void accept(LockGrant grant, Throwable failure) {
+                timer.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Start asking for the critical section. Only one request of this node
+     * is in progress at a time, and never while it holds the critical
+     * section.
+     */
+    protected abstract void request() throws IOException;
+
+    /**
+     * Give up the critical section granted last
+     */
+    protected abstract void release() throws IOException;
+
+    /**
+     * @return Whether the request in progress only needs shared access.
+     *         Algorithms that ignore this treat every request as
+     *         exclusive, which is always safe.
+     */
+    protected boolean isShared(){
+        return requestShared;
+    }
+
+    /**
+     * Called by the algorithm once the current request holds the critical
+     * section, typically on a message handling thread
+     */
+    protected void granted(){
+        hold(current);
+        pump();
+    }
+
+    /**
+     * Called by the algorithm when the current request cannot go on, e.g.
+     * one started asynchronously by request(). The caller sees the cause
+     * and later requests go ahead.
+     *
+     * @param cause
+     */
+    protected void failed(IOException cause){
+        Entry entry = current;
+        if(entry == null || entry.granted)
+            return;
+        current = null;
+        entry.future.completeExceptionally(cause);
+        pump();
+    }
+
+    /**
+     * Charge one message to the entry in progress
+     */
+    protected void countMessage(){
+        messages.incrementAndGet();
+    }
+
+    /**
+     * Charge several messages to the entry in progress, e.g. a broadcast
+     */
+    protected void countMessages(int count){
+        messages.addAndGet(count);
+    }
+
+    public MutexStats getStats(){
+        return stats;
+    }
+
+    /**
+     * Log every entry and exit of this node, stamped with the vector clock
+     * its linker stamps messages with. Set before the first request.
+     *
+     * @param trace Null to stop logging
+     */
+    public void setTrace(CsTrace trace){
+        this.trace = trace;
+    }
+
+    /**
+     * Also expose the waiting time and messages of every critical section
+     * entry; their counts are the entries
+     */
+    @Override
+    public void setMetrics(MetricsRegistry registry){
+        super.setMetrics(registry);
+        String node = String.valueOf(myId);
+        registry.register("project3_cs_wait_seconds", "Time from request to entering the critical section",
+                stats.getWaitHistogram(), 1e-9, "node", node);
+        registry.register("project3_cs_messages", "Messages charged to a critical section entry",
+                stats.getMessageHistogram(), 1, "node", node);
+    }
+
+    /**
+     * @return Whether shared requests are granted shared, so that holders
+     *         on different nodes may overlap. Without, the trace logs every
+     *         entry as exclusive.
+     */
+    protected boolean hasSharedMode(){
+        return false;
+    }
+
+    /**
+     * Move local requests along: hand the algorithm the next request, or
+     * pass the critical section on once the holder left.
+     *
+     * Grants can complete callers' futures inside request() or release(),
+     * and callers may leave right away. Only one thread pumps at a time;
+     * calls arriving meanwhile just make it go round once more, so neither
+     * concurrent callers nor a long local queue nest on the stack.
+     */
+    private void pump(){
+        if(pumping.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        do{
+            step();
+            missed = pumping.addAndGet(-missed);
+        } while(missed != 0);
+    }
+
+    private void step(){
+        while(true){
+            Entry entry = current;
+            if(entry == null){
+                entry = nextWaiting(false);
+                if(entry == null)
+                    return;
+                current = entry;
+                batch = 1;
+                requestShared = entry.shared;
+                entry.messagesBefore = messages.get();
+                try{
+                    request();
+                } catch (IOException e){
+                    current = null;
+                    entry.future.completeExceptionally(e);
+                }
+                continue;
+            }
+            if(!entry.left)
+                return;                     // Still asking, or inside
+            log(false, false);
+
+            // Combine: the next local caller enters under the same request,
+            // unless it needs exclusive access and the request was shared
+            Entry next = batch < maxBatch ? nextWaiting(requestShared) : null;
+            if(next != null){
+                stats.record(messages.get() - entry.messagesBefore, entry.waitNanos);
+                current = next;
+                batch++;
+                next.messagesBefore = messages.get();
+                stats.recordCombined();
+                hold(next);
+                continue;
+            }
+            try{
+                release();
+            } catch (IOException e){
+                LOG.error("[Node {}] [MUTEX] Release failed", myId, e);
+            } finally {
+                stats.record(messages.get() - entry.messagesBefore, entry.waitNanos);
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * The entry now holds the critical section
+     */
+    private void hold(Entry entry){
+        entry.waitNanos = System.nanoTime() - entry.start;
+        entry.granted = true;
+        log(true, requestShared && hasSharedMode());
+        if(!entry.future.complete(new LockGrant(leaver, entry.waitNanos)))
+            entry.left = true;          // Withdrawn meanwhile, pass it on
+    }
+
+    /**
+     * Log an entry or exit, before anyone learns of it
+     */
+    private void log(boolean enter, boolean shared){
+        CsTrace log = trace;
+        if(log == null)
+            return;
+        try{
+            if(enter)
+                log.enter(shared);
+            else
+                log.exit();
+        } catch (IOException e){
+            LOG.error("[Node {}] [TRACE] Cannot log critical section", myId, e);
+        }
+    }
+
+    /**
+     * @param sharedOnly Leave an exclusive caller queued
+     * @return Next caller still waiting, in arrival order
+     */
+    private Entry nextWaiting(boolean sharedOnly){
+        while(true){
+            Entry next = waiting.peek();
+            if(next == null)
+                return null;
+            if(next.future.isDone()){
+                waiting.poll();             // Withdrawn while queued
+                continue;
+            }
+            if(sharedOnly && !next.shared)
+                return null;
+            return waiting.poll();
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newTimer(){
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "mutex-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * One local request for the critical section
+     */
+    private static class Entry {
+        final boolean shared;
+        final CompletableFuture<LockGrant> future = new CompletableFuture<>();
+        final long start = System.nanoTime();
+        long messagesBefore;
+        long waitNanos;
+        volatile boolean granted;
+        volatile boolean left;
+
+        Entry(boolean shared){
+            this.shared = shared;
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package edu.utdallas.project3.server;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.JMException;
+
+import edu.utdallas.project3.codec.Codecs;
+import edu.utdallas.project3.metrics.MetricsHttpServer;
+import edu.utdallas.project3.metrics.MetricsJmx;
+import edu.utdallas.project3.metrics.MetricsRegistry;
+import edu.utdallas.project3.socket.ConnectPolicy;
+import edu.utdallas.project3.socket.FlushPolicy;
 import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.socket.NioTransport;
+import edu.utdallas.project3.socket.ShmTransport;
 import edu.utdallas.project3.tools.MutexConfig;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 
 
 /**
@@ -18,6 +32,7 @@ import edu.utdallas.project3.tools.MutexConfig;
  * @author Jingyi Liu, The University of Texas at Dallas
  */
 public class MutexServer {    
+    private static final Logger LOG = LogManager.getLogger(MutexServer.class);
     MutexConfig config = null;
     
     public MutexServer(MutexConfig config){
@@ -44,26 +59,119 @@ public class MutexServer {
         
         final MutexServer serve = new MutexServer(config);
         
-        Linker linker = new Linker(myId, config.getNeighbors());
+        /* Only open the channels the algorithm uses */
+        config.setNeighbors(MutexAlgorithms.topologyFor(config.getMutexAlgorithm()).neighbors(myId, config.getNodes()));
+        Linker linker = new Linker(myId, config.getNeighbors(), Codecs.forName(config.getMessageCodec()));
+        FlushPolicy flushPolicy = new FlushPolicy(config.getLinkerMaxBatch(), config.getLinkerMaxDelay());
+        ConnectPolicy connectPolicy = new ConnectPolicy(
+                config.getConnectDeadline(), config.getConnectInitialBackoff(), config.getConnectMaxBackoff());
+        if(config.isShmEnabled()){
+            /* Nodes on this host talk through shared memory, the others through TCP */
+            NioTransport tcp = new NioTransport(port, linker.getCodec(), flushPolicy, connectPolicy);
+            linker.setTransport(new ShmTransport(tcp, Paths.get(config.getShmDirectory()), 
+                    "p3-" + config.getConfigFileName(), config.getShmRingSize(), config.getConnectDeadline()));
+        } else {
+            linker.setFlushPolicy(flushPolicy);
+            linker.setConnectPolicy(connectPolicy);
+        }
         
         
-        /* Use thread pools to manage process behaviors */
-        ExecutorService executorService = Executors.newFixedThreadPool(50);
+        /* Use thread pools to manage process behaviors, none to handle messages on the delivery thread */
+        ExecutorService executorService = config.getExecutionMode().newExecutor(
+                String.format("node-%d", myId), config.getExecutionThreads());
+        if(executorService != null)
+            linker.setExecutor(executorService);
+        
+        /* Messages from every channel are pushed to the process by the linker's event loop */
+        Process process = MutexAlgorithms.forName(config.getMutexAlgorithm()).create(linker, config);
+        linker.setMessageHandler(process);
+        
+        /* Log critical sections with vector timestamps, for CsTraceVerifier */
+        CsTrace trace = null;
+        if(!config.getTraceDirectory().isEmpty()){
+            List<Node> nodes = config.getNodes();
+            VectorClock clock = new VectorClock(myId, nodes.get(nodes.size() - 1).getNodeId() + 1);
+            linker.setVectorClock(clock);
+            if(process instanceof MutexProcess){
+                trace = new CsTrace(Paths.get(config.getTraceDirectory(), CsTrace.fileName(myId)), clock);
+                ((MutexProcess)process).setTrace(trace);
+            }
+        }
+        if(executorService != null)
+            process.setExecutor(executorService);
+        
+        /* Count traffic and time handlers, for JMX and Prometheus */
+        MetricsJmx jmx = null;
+        MetricsHttpServer http = null;
+        if(config.isMetricsEnabled()){
+            MetricsRegistry metrics = new MetricsRegistry();
+            linker.setMetrics(metrics);
+            process.setMetrics(metrics);
+            if(config.isMetricsJmx()){
+                try{
+                    jmx = new MetricsJmx(metrics, "node=" + myId);
+                    jmx.register();
+                } catch (JMException e){
+                    throw new IOException("Cannot register metrics MBean", e);
+                }
+            }
+            if(config.getMetricsHttpPort() > 0){
+                try{
+                    http = new MetricsHttpServer(metrics, config.getMetricsHttpPort() + myId);
+                } catch (IOException e){
+                    if(jmx != null)
+                        jmx.unregister();
+                    throw e;
+                }
+                LOG.info("[Node {}] [METRICS] Serving http://localhost:{}{}", 
+                        myId, http.getPort(), MetricsHttpServer.PATH);
+            }
+        }
         
         try {
             
 
             linker.buildChannels(port);
+            process.start();
 
+            if(process instanceof MutexProcess)
+                serve.runRequests((MutexProcess)process);
             
         } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
+            LOG.error("[Node {}] Failed", myId, e);
             linker.close();
+            if(executorService != null)
+                executorService.shutdownNow();
+            if(http != null)
+                http.stop();
+            if(jmx != null)
+                jmx.unregister();
+        } finally {
+            /* Flush the trace on failure too, that is when the verifier is needed */
+            if(trace != null){
+                try{
+                    trace.close();
+                } catch (IOException e){
+                    LOG.error("[Node {}] [TRACE] Cannot close trace", myId, e);
+                }
+            }
         }
         
     }
     
-
-
+    /**
+     * Enter the critical section {@link MutexConfig#getNumberOfRequest()}
+     * times, with exponentially distributed delays between requests and
+     * inside the critical section, and report the run, see
+     * {@link WorkloadDriver}. The process keeps serving its neighbors
+     * afterwards.
+     * 
+     * @param process
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void runRequests(MutexProcess process) throws IOException, InterruptedException{
+        WorkloadDriver driver = new WorkloadDriver(config);
+        driver.publish(driver.run(Collections.singletonList(process)), process.myId);
+    }
 }
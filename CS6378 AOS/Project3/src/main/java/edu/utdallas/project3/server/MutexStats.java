@@ -0,0 +1,130 @@
+package edu.utdallas.project3.server;
+
+import edu.utdallas.project3.tools.Histogram;
+
+/**
+ * Message and waiting cost of critical section entries.
+ *
+ * The messages of an entry are the ones this node sends or receives on its
+ * behalf between asking for the critical section and leaving it, e.g.
+ * requests and replies in Ricart-Agrawala.
+ */
+public class MutexStats {
+    /**
+     * Precision of the distributions kept, within 3%
+     */
+    public static final int HISTOGRAM_SUB_BITS = 5;
+
+    private long entries;
+    private long messages;
+    private long maxMessages;
+    private long uncontended;           // Entries with no message at all
+    private long combined;              // Entries handed over locally, no request of their own
+    private long waitNanos;
+    private final Histogram messageHistogram = new Histogram(HISTOGRAM_SUB_BITS);
+    private final Histogram waitHistogram = new Histogram(HISTOGRAM_SUB_BITS);
+
+    /**
+     * @param entryMessages Messages of one entry
+     * @param entryWaitNanos Time from request to entry
+     */
+    public synchronized void record(long entryMessages, long entryWaitNanos){
+        entries++;
+        messages += entryMessages;
+        maxMessages = Math.max(maxMessages, entryMessages);
+        if(entryMessages == 0)
+            uncontended++;
+        waitNanos += entryWaitNanos;
+        messageHistogram.record(entryMessages);
+        waitHistogram.record(entryWaitNanos);
+    }
+
+    /**
+     * Count an entry that got the critical section from another local
+     * caller, on top of {@link #record(long, long)}
+     */
+    public synchronized void recordCombined(){
+        combined++;
+    }
+
+    /**
+     * Add up the entries of another instance, e.g. per stripe
+     * @param other
+     */
+    public void add(MutexStats other){
+        long otherEntries, otherMessages, otherMax, otherUncontended, otherCombined, otherWait;
+        synchronized(other){
+            otherEntries = other.entries;
+            otherMessages = other.messages;
+            otherMax = other.maxMessages;
+            otherUncontended = other.uncontended;
+            otherCombined = other.combined;
+            otherWait = other.waitNanos;
+        }
+        synchronized(this){
+            entries += otherEntries;
+            messages += otherMessages;
+            maxMessages = Math.max(maxMessages, otherMax);
+            uncontended += otherUncontended;
+            combined += otherCombined;
+            waitNanos += otherWait;
+            messageHistogram.add(other.messageHistogram);
+            waitHistogram.add(other.waitHistogram);
+        }
+    }
+
+    public synchronized long getEntries() {
+        return entries;
+    }
+
+    public synchronized long getMessages() {
+        return messages;
+    }
+
+    public synchronized long getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * @return Entries that needed no message
+     */
+    public synchronized long getUncontended() {
+        return uncontended;
+    }
+
+    /**
+     * @return Entries that shared the request of an earlier local entry
+     */
+    public synchronized long getCombined() {
+        return combined;
+    }
+
+    public synchronized long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * @return Messages per entry
+     */
+    public Histogram getMessageHistogram() {
+        return messageHistogram;
+    }
+
+    /**
+     * @return Nanoseconds from request to entry, per entry
+     */
+    public Histogram getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    public synchronized double getMessagesPerEntry() {
+        return entries == 0 ? 0 : (double)messages / entries;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return String.format("entries=%d messages=%d (%.2f/CS, max %d) no-message entries=%d combined=%d wait=%.3f ms/CS",
+                entries, messages, getMessagesPerEntry(), maxMessages, uncontended, combined,
+                entries == 0 ? 0 : waitNanos / 1e6 / entries);
+    }
+}
@@ -3,12 +3,18 @@ package edu.utdallas.project3.server;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 
+import edu.utdallas.project3.metrics.MetricsRegistry;
 import edu.utdallas.project3.socket.Linker;
 import edu.utdallas.project3.tools.MutexConfig;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 public class Process implements MessageHandler{
+    private static final Logger LOG = LogManager.getLogger(Process.class);
     protected int numProc, myId;
     protected Linker linker;
    
@@ -52,6 +58,11 @@ public class Process implements MessageHandler{
      */
     protected int snapshotIndex;
     
+    /**
+     * Handlers of incoming messages by tag
+     */
+    protected DispatchTable dispatchTable;
+    
     public Process(Linker initLinker, MutexConfig config){
         this.config = config;
         
@@ -63,36 +74,80 @@ public class Process implements MessageHandler{
         this.snapshotList = new ArrayList<>();
         this.snapshotIndex = 0;
         this.mutex = new Semaphore(1);
+        this.dispatchTable = new DispatchTable();
+        
+        register(Tag.APP, Concurrency.CONCURRENT, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) {
+                LOG.info("[Node {}] [APP] {}", myId, msg);
+            }
+        });
     }
     
     /**
-     * Default message handler.
-     * Accept and process application message only 
+     * Called once all channels are up, before the process is used.
+     * Subclasses start their setup protocols here.
      * 
-     * Only one thread can handle message at the same time.
+     * @throws IOException
+     */
+    public void start() throws IOException{
+    }
+    
+    /**
+     * Register the handler of a tag.
+     * Subclasses register their protocols in their constructor.
+     * 
+     * @param tag
+     * @param concurrency What the handler needs to stay correct
+     * @param handler
+     */
+    protected void register(Tag tag, Concurrency concurrency, TagHandler handler){
+        dispatchTable.register(tag, concurrency, handler);
+    }
+    
+    /**
+     * Run concurrent handlers on an executor instead of the delivering thread
+     * @param executor
+     */
+    public void setExecutor(Executor executor){
+        dispatchTable.setExecutor(executor);
+    }
+    
+    /**
+     * Expose the metrics of this process, such as handler latencies.
+     * Set before messages arrive.
+     * @param registry
+     */
+    public void setMetrics(MetricsRegistry registry){
+        dispatchTable.setMetrics(registry, myId);
+    }
+    
+    /**
+     * Default message handler.
+     * Hands the message to the handler registered for its tag, messages
+     * of unregistered tags are only logged.
      * 
      * @throws IOException 
      */
-    public synchronized void handleMessage(Message msg, int srcId, Tag tag) throws IOException{
-        if(tag == Tag.APP) 
-            System.out.println("This is application message");
-        else 
-            System.out.println(String.format("[Node %d] [Request] content=%s", myId, msg.toString()));
+    public void handleMessage(Message msg, int srcId, Tag tag) throws IOException{
+        if(!dispatchTable.dispatch(msg, srcId, tag))
+            LOG.warn("[Node {}] [Request] No handler, content={}", myId, msg);
     }
     
     /**
-     * Send message to a specific node
+     * Send message to a specific node.
+     * Safe from any thread, the linker serializes each channel itself.
      * @param dstId
      * @param tag
      * @param content
      * @throws IOException
      */
-    public synchronized void sendMessage(int destination, Tag tag, String content) throws IOException{
+    public void sendMessage(int destination, Tag tag, String content) throws IOException{
         Message message = new Message(myId, destination, tag, content);
         linker.sendMessage(destination, message);
     }
     
-    public synchronized void sendMessage(int destination, Message message) throws IOException{
+    public void sendMessage(int destination, Message message) throws IOException{
         linker.sendMessage(destination, message);
     }
     
@@ -102,7 +157,7 @@ public class Process implements MessageHandler{
      * @param content
      * @throws IOException
      */
-    public synchronized void sendToNeighbors(Tag tag, String content) throws IOException{
+    public void sendToNeighbors(Tag tag, String content) throws IOException{
         List<Node> neighbors = linker.getNeighbors();
         linker.multicast(neighbors, tag, content);
     }
@@ -116,7 +171,7 @@ public class Process implements MessageHandler{
             Message message = linker.receiveMessage(fromId);
             return message;
         } catch (ClassNotFoundException e){
-            e.printStackTrace();
+            LOG.error("[Node {}] Undecodable message from {}", myId, fromId, e);
             return null;
         } catch (IOException e){
             linker.close();
@@ -128,16 +183,18 @@ public class Process implements MessageHandler{
         try{
             wait();
         } catch (InterruptedException e){
-            System.err.println(e);
+            LOG.warn("[Node {}] Interrupted while waiting", myId, e);
         }
     }
     
     /**
-     * Request permission to run globalState() function
+     * Request permission to run globalState() function.
+     * Not synchronized: the grant comes from a message handler while this
+     * blocks.
      * @throws InterruptedException
      */
-    public synchronized void requestSnapshotPermission() throws InterruptedException{
-        System.out.println(String.format("[Node %d] [SNAPSHOT] Request Permission.", myId));
+    public void requestSnapshotPermission() throws InterruptedException{
+        LOG.debug("[Node {}] [SNAPSHOT] Request Permission.", myId);
         snapshotPermission.acquire();
     }
     
@@ -145,8 +202,8 @@ public class Process implements MessageHandler{
      * Grant permission when at least one node is active.
      * Control by SpanTree
      */
-    protected synchronized void grantSnapshotPermisson(){
-        System.out.println(String.format("[Node %d] [SNAPSHOT] Grant Permission.", myId));
+    protected void grantSnapshotPermisson(){
+        LOG.debug("[Node {}] [SNAPSHOT] Grant Permission.", myId);
         snapshotPermission.release();
     }
     /**
@@ -0,0 +1,174 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.function.BiConsumer;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Raymond's token-based mutual exclusion over a {@link SpanningTree}.
+ *
+ * Every node points to the neighbor in the direction of the token
+ * ({@code holder}) and keeps a FIFO queue of neighbors, itself included,
+ * that want it. A node asks its holder at most once however many requests
+ * queue up behind it, so interior nodes aggregate the load of their
+ * subtrees. When the token moves on while the queue is still not empty,
+ * the request for its return rides along on the TOKEN message instead of
+ * a separate REQUEST. An entry costs O(depth) messages; the tree is built
+ * breadth-first over a {@link Hypercube}, which makes it at most
+ * ceil(log2 N) deep.
+ *
+ * The token starts at the root, the node with the smallest id.
+ */
+public class RaymondProcess extends MutexProcess {
+    private static final Logger LOG = LogManager.getLogger(RaymondProcess.class);
+    public static final String NAME = "raymond";
+
+    private static final int UNKNOWN = -1;
+    private static final String PLAIN = "0";
+    private static final String WITH_REQUEST = "1";
+
+    private final Object lock = new Object();
+    private final SpanningTree tree;
+
+    private int holder = UNKNOWN;       // Self if this node has the token
+    private boolean using;              // Inside the critical section
+    private boolean asked;              // Request sent to the holder
+    private final ArrayDeque<Integer> queue;
+
+    public RaymondProcess(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.tree = new SpanningTree(linker, config.getNodes().get(0).getNodeId());
+        this.queue = new ArrayDeque<>();
+
+        TagHandler treeHandler = new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                tree.handle(msg, srcId);
+            }
+        };
+        for(Tag tag : new Tag[]{ Tag.TREE_INVITE, Tag.TREE_ACCEPT, Tag.TREE_REJECT, Tag.TREE_CONVERGE, Tag.TREE_BROADCAST }){
+            register(tag, Concurrency.SERIAL_PER_SOURCE, treeHandler);
+        }
+        register(Tag.REQUEST, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                synchronized(lock){
+                    queue.add(srcId);
+                    assignPrivilege();
+                    makeRequest();
+                }
+            }
+        });
+        register(Tag.TOKEN, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                synchronized(lock){
+                    if(queue.contains(myId))
+                        countMessage();
+                    holder = myId;
+                    if(WITH_REQUEST.equals(msg.getContent()))
+                        queue.add(srcId);
+                    assignPrivilege();
+                    makeRequest();
+                }
+            }
+        });
+    }
+
+    /**
+     * The root floods the spanning tree
+     */
+    @Override
+    public void start() throws IOException {
+        if(myId == tree.getRootId())
+            tree.build();
+    }
+
+    public SpanningTree getTree(){
+        return tree;
+    }
+
+    /**
+     * Joins the queue once the tree is complete, fails the request if the
+     * tree cannot be built
+     */
+    @Override
+    protected void request() throws IOException {
+        tree.getReady().whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void ready, Throwable error) {
+                if(error != null){
+                    failed(new IOException("Spanning tree not built", error));
+                    return;
+                }
+                synchronized(lock){
+                    try{
+                        queue.add(myId);
+                        assignPrivilege();
+                        makeRequest();
+                    } catch (IOException e){
+                        LOG.error("[Node {}] [RAYMOND] Request failed", myId, e);
+                        queue.remove(myId);     // Not granted, a grant never throws
+                        failed(e);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void release() throws IOException {
+        synchronized(lock){
+            using = false;
+            assignPrivilege();
+            makeRequest();
+        }
+    }
+
+    /**
+     * Pass the token to the head of the queue, or enter if that is this node
+     */
+    private void assignPrivilege() throws IOException{
+        if(holder() != myId || using || queue.isEmpty())
+            return;
+        holder = queue.poll();
+        asked = false;
+        if(holder == myId){
+            using = true;
+            granted();
+            return;
+        }
+        if(queue.isEmpty()){
+            linker.sendMessage(holder, Tag.TOKEN, PLAIN);
+        } else {
+            asked = true;                   // Ask for it back in the same message
+            linker.sendMessage(holder, Tag.TOKEN, WITH_REQUEST);
+        }
+    }
+
+    private void makeRequest() throws IOException{
+        if(holder() == myId || queue.isEmpty() || asked)
+            return;
+        asked = true;
+        if(queue.contains(myId))
+            countMessage();
+        try{
+            linker.sendMessage(holder, Tag.REQUEST, PLAIN);
+        } catch (IOException e){
+            asked = false;                  // Ask again with the next request
+            throw e;
+        }
+    }
+
+    private int holder(){
+        if(holder == UNKNOWN)
+            holder = tree.getParent();      // Toward the root, where the token starts
+        return holder;
+    }
+}
@@ -0,0 +1,135 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * Shared/exclusive lock on Ricart-Agrawala.
+ *
+ * A REQUEST carries its mode besides the Lamport timestamp. A node defers
+ * its reply only to requests that conflict with its own, i.e. when either
+ * side is exclusive, and it is inside or ahead in (timestamp, node id)
+ * order. Shared requests therefore never wait for each other, while an
+ * exclusive request holds back every later request, shared or not, so
+ * writers do not starve behind a stream of readers.
+ *
+ * Shared requests come from {@link #csEnterShared()} and
+ * {@link #csEnterSharedAsync()}, exclusive ones from {@link #csEnter()} and
+ * {@link #csEnterAsync()}.
+ */
+public class ReaderWriterProcess extends MutexProcess {
+    public static final String NAME = "reader-writer";
+
+    private static final String SHARED = "S";
+    private static final String EXCLUSIVE = "X";
+
+    private final Object lock = new Object();
+
+    private final List<Node> neighbors;
+    private long clock;                 // Lamport clock
+    private long myTimestamp;           // Timestamp of the pending request
+    private boolean myShared;           // Mode of the pending request
+    private boolean requesting;         // Requested or inside the critical section
+    private boolean inCs;
+    private final boolean[] deferred;   // Reply owed after the critical section
+    private int missing;                // Replies still to come
+
+    public ReaderWriterProcess(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.neighbors = linker.getNeighbors();
+        this.deferred = new boolean[numProc];
+
+        register(Tag.REQUEST, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                String[] fields = msg.getContent().split(",");
+                onRequest(srcId, Long.parseLong(fields[0]), SHARED.equals(fields[1]));
+            }
+        });
+        register(Tag.REPLY, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onReply(Long.parseLong(msg.getContent()));
+            }
+        });
+    }
+
+    @Override
+    protected boolean hasSharedMode() {
+        return true;
+    }
+
+    @Override
+    protected void request() throws IOException {
+        synchronized(lock){
+            requesting = true;
+            myTimestamp = ++clock;
+            myShared = isShared();
+            missing = numProc;
+            if(missing == 0){
+                enter();
+                return;
+            }
+            countMessages(numProc);
+            linker.multicast(neighbors, Tag.REQUEST,
+                    String.format("%d,%s", myTimestamp, myShared ? SHARED : EXCLUSIVE));
+        }
+    }
+
+    @Override
+    protected void release() throws IOException {
+        synchronized(lock){
+            inCs = false;
+            requesting = false;
+            for(int i = 0; i < numProc; i++){
+                if(deferred[i]){
+                    deferred[i] = false;
+                    reply(i);
+                }
+            }
+        }
+    }
+
+    private void onRequest(int srcId, long timestamp, boolean shared) throws IOException{
+        int i = indexOf(srcId);
+        synchronized(lock){
+            clock = Math.max(clock, timestamp) + 1;
+            boolean conflicts = !(shared && myShared);
+            if(conflicts && (inCs || (requesting && precedes(myTimestamp, myId, timestamp, srcId)))){
+                deferred[i] = true;
+                return;
+            }
+            reply(i);
+        }
+    }
+
+    private void onReply(long timestamp){
+        synchronized(lock){
+            clock = Math.max(clock, timestamp) + 1;
+            countMessage();
+            if(--missing == 0)
+                enter();
+        }
+    }
+
+    private void enter(){
+        inCs = true;
+        granted();
+    }
+
+    private void reply(int index) throws IOException{
+        linker.sendMessage(neighbors.get(index).getNodeId(), Tag.REPLY, Long.toString(++clock));
+    }
+
+    private static boolean precedes(long ts1, int id1, long ts2, int id2){
+        return ts1 < ts2 || (ts1 == ts2 && id1 < id2);
+    }
+
+    private int indexOf(int nodeId){
+        return Collections.binarySearch(neighbors, new Node(nodeId));
+    }
+}
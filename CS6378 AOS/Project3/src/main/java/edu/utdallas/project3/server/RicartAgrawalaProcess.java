@@ -0,0 +1,137 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * Ricart-Agrawala mutual exclusion with the Roucairol-Carvalho
+ * optimization.
+ *
+ * A REPLY from a neighbor is a permission this node keeps until that
+ * neighbor sends a REQUEST, so a node entering again without contention
+ * sends nothing, and in general only asks the neighbors that have asked it
+ * since. Requests are ordered by (Lamport timestamp, node id).
+ */
+public class RicartAgrawalaProcess extends MutexProcess {
+    public static final String NAME = "ricart-agrawala";
+
+    private final Object lock = new Object();
+
+    private final List<Node> neighbors;
+    private long clock;                 // Lamport clock
+    private long myTimestamp;           // Timestamp of the pending request
+    private boolean requesting;         // Requested or inside the critical section
+    private boolean inCs;
+    private final boolean[] authorized; // Permission held, by neighbor index
+    private final boolean[] deferred;   // Reply owed after the critical section
+    private int missing;                // Permissions still to come
+
+    public RicartAgrawalaProcess(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.neighbors = linker.getNeighbors();
+        this.authorized = new boolean[numProc];
+        this.deferred = new boolean[numProc];
+
+        register(Tag.REQUEST, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onRequest(srcId, Long.parseLong(msg.getContent()));
+            }
+        });
+        register(Tag.REPLY, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onReply(srcId, Long.parseLong(msg.getContent()));
+            }
+        });
+    }
+
+    @Override
+    protected void request() throws IOException {
+        synchronized(lock){
+            requesting = true;
+            myTimestamp = ++clock;
+            missing = 0;
+            for(int i = 0; i < numProc; i++){
+                if(!authorized[i]){
+                    missing++;
+                    send(i, Tag.REQUEST, myTimestamp);
+                }
+            }
+            if(missing == 0)
+                enter();
+        }
+    }
+
+    @Override
+    protected void release() throws IOException {
+        synchronized(lock){
+            inCs = false;
+            requesting = false;
+            for(int i = 0; i < numProc; i++){
+                if(deferred[i]){
+                    deferred[i] = false;
+                    authorized[i] = false;
+                    send(i, Tag.REPLY, ++clock);
+                }
+            }
+        }
+    }
+
+    private void onRequest(int srcId, long timestamp) throws IOException{
+        int i = indexOf(srcId);
+        synchronized(lock){
+            clock = Math.max(clock, timestamp) + 1;
+            if(inCs || (requesting && precedes(myTimestamp, myId, timestamp, srcId))){
+                deferred[i] = true;
+                return;
+            }
+            boolean hadPermission = authorized[i];
+            authorized[i] = false;
+            send(i, Tag.REPLY, ++clock);
+            if(requesting && hadPermission){
+                // Gave away a permission the pending request counted on
+                missing++;
+                send(i, Tag.REQUEST, myTimestamp);
+            }
+        }
+    }
+
+    private void onReply(int srcId, long timestamp){
+        int i = indexOf(srcId);
+        synchronized(lock){
+            clock = Math.max(clock, timestamp) + 1;
+            if(authorized[i])
+                return;
+            authorized[i] = true;
+            if(requesting && !inCs){
+                countMessage();
+                if(--missing == 0)
+                    enter();
+            }
+        }
+    }
+
+    private void enter(){
+        inCs = true;
+        granted();
+    }
+
+    private void send(int index, Tag tag, long timestamp) throws IOException{
+        if(tag == Tag.REQUEST)
+            countMessage();
+        linker.sendMessage(neighbors.get(index).getNodeId(), tag, Long.toString(timestamp));
+    }
+
+    private static boolean precedes(long ts1, int id1, long ts2, int id2){
+        return ts1 < ts2 || (ts1 == ts2 && id1 < id2);
+    }
+
+    private int indexOf(int nodeId){
+        return Collections.binarySearch(neighbors, new Node(nodeId));
+    }
+}
@@ -0,0 +1,219 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import edu.utdallas.project3.socket.Linker;
+
+/**
+ * Breadth-first spanning tree built in layers with the TREE_* messages.
+ *
+ * A plain flood follows whichever path happens to be fastest and can end
+ * up as deep as a chain. Here the root grows the tree one layer per phase
+ * instead: it sends TREE_BROADCAST with the phase number down the tree,
+ * the nodes of the last layer send TREE_INVITE to their other neighbors,
+ * and a node joins under the first inviter with TREE_ACCEPT and refuses
+ * any other with TREE_REJECT. Counts of new nodes flow back up with
+ * TREE_CONVERGE, and the phase repeats until a layer stays empty. Then a
+ * final TREE_BROADCAST tells every node the tree is complete. Every node
+ * ends up at its hop distance from the root, so the tree is as shallow as
+ * the overlay allows.
+ *
+ * Messages are handed in through {@link #handle(Message, int)}.
+ */
+public class SpanningTree {
+    private static final int NONE = -1;
+    private static final int COMPLETE = 0;     // Phase number of the final broadcast
+
+    private final Linker linker;
+    private final int myId;
+    private final int rootId;
+
+    private int parent = NONE;
+    private int depth;
+    private final List<Integer> children;
+    private int phase;
+    private int unanswered;             // Invitations without ACCEPT or REJECT
+    private int unconverged;            // Children without CONVERGE
+    private int joined;                 // New nodes below this one in the current phase
+    private boolean ready;
+    private final CompletableFuture<Void> readyFuture;
+
+    /**
+     * @param linker Channels to the tree neighbors
+     * @param rootId
+     */
+    public SpanningTree(Linker linker, int rootId){
+        this.linker = linker;
+        this.myId = linker.getMyId();
+        this.rootId = rootId;
+        this.children = new ArrayList<>();
+        this.readyFuture = new CompletableFuture<>();
+    }
+
+    /**
+     * Start the construction. Only the root calls this.
+     * @throws IOException
+     */
+    public void build() throws IOException{
+        if(myId != rootId)
+            throw new IllegalStateException(String.format("Node %d is not the root", myId));
+        synchronized(this){
+            parent = myId;
+            depth = 0;
+            startPhase(1);
+        }
+        notifyReady();
+    }
+
+    /**
+     * Block until the tree is complete
+     * @throws InterruptedException
+     */
+    public synchronized void awaitReady() throws InterruptedException{
+        while(!ready){
+            wait();
+        }
+    }
+
+    /**
+     * @return Completes once the tree is complete, outside of any lock of
+     *         the tree
+     */
+    public CompletableFuture<Void> getReady(){
+        return readyFuture;
+    }
+
+    /**
+     * Handle one TREE_* message
+     * @param msg
+     * @param srcId
+     * @throws IOException
+     */
+    public void handle(Message msg, int srcId) throws IOException{
+        synchronized(this){
+            handleLocked(msg, srcId);
+        }
+        notifyReady();
+    }
+
+    private void notifyReady(){
+        boolean done;
+        synchronized(this){
+            done = ready;
+        }
+        if(done && !readyFuture.isDone())
+            readyFuture.complete(null);
+    }
+
+    private void handleLocked(Message msg, int srcId) throws IOException{
+        int value = Integer.parseInt(msg.getContent());
+        switch(msg.getTag()){
+        case TREE_INVITE:
+            if(parent == NONE){
+                parent = srcId;
+                depth = value + 1;
+                linker.sendMessage(srcId, Tag.TREE_ACCEPT, "0");
+            } else {
+                linker.sendMessage(srcId, Tag.TREE_REJECT, "0");
+            }
+            break;
+        case TREE_ACCEPT:
+            children.add(srcId);
+            joined++;
+            unanswered--;
+            checkPhaseDone();
+            break;
+        case TREE_REJECT:
+            unanswered--;
+            checkPhaseDone();
+            break;
+        case TREE_CONVERGE:
+            joined += value;
+            unconverged--;
+            checkPhaseDone();
+            break;
+        case TREE_BROADCAST:
+            if(value == COMPLETE)
+                complete();
+            else
+                startPhase(value);
+            break;
+        default:
+        }
+    }
+
+    /**
+     * Phase k adds the nodes at depth k
+     */
+    private void startPhase(int k) throws IOException{
+        phase = k;
+        joined = 0;
+        if(depth == k - 1){
+            for(Node neighbor : linker.getNeighbors()){
+                if(neighbor.getNodeId() != parent){
+                    unanswered++;
+                    linker.sendMessage(neighbor.getNodeId(), Tag.TREE_INVITE, Integer.toString(depth));
+                }
+            }
+        } else {
+            for(int child : children){
+                unconverged++;
+                linker.sendMessage(child, Tag.TREE_BROADCAST, Integer.toString(k));
+            }
+        }
+        checkPhaseDone();
+    }
+
+    private void checkPhaseDone() throws IOException{
+        if(unanswered > 0 || unconverged > 0)
+            return;
+        if(myId != rootId)
+            linker.sendMessage(parent, Tag.TREE_CONVERGE, Integer.toString(joined));
+        else if(joined > 0)
+            startPhase(phase + 1);
+        else
+            complete();
+    }
+
+    /**
+     * Tree is complete, tell the subtree
+     */
+    private void complete() throws IOException{
+        Collections.sort(children);
+        for(int child : children){
+            linker.sendMessage(child, Tag.TREE_BROADCAST, Integer.toString(COMPLETE));
+        }
+        ready = true;
+        notifyAll();
+    }
+
+    public int getRootId(){
+        return rootId;
+    }
+
+    /**
+     * @return Parent id, this node's own id at the root
+     */
+    public synchronized int getParent(){
+        return parent;
+    }
+
+    public synchronized List<Integer> getChildren(){
+        return new ArrayList<>(children);
+    }
+
+    /**
+     * @return Hops from the root
+     */
+    public synchronized int getDepth(){
+        return depth;
+    }
+
+    public synchronized boolean isReady(){
+        return ready;
+    }
+}
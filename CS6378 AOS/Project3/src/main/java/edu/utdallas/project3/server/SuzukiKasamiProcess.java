@@ -0,0 +1,137 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * Suzuki-Kasami broadcast token mutual exclusion.
+ *
+ * A node without the token broadcasts REQUEST with its next request number
+ * and waits for the TOKEN, n messages per entry. The holder enters again
+ * without any message while nobody else is waiting, which suits workloads
+ * with one hot node. Every node keeps the highest request number seen from
+ * each node (RN); the token carries the number of each node's last granted
+ * request (LN) and the queue of nodes waiting for it.
+ *
+ * Nodes are numbered by position in the node list. The token travels as
+ * one int array, LN followed by the queue, which the binary codec delta
+ * encodes: LN entries of similar size take a byte each. It starts at the
+ * node with the smallest id.
+ */
+public class SuzukiKasamiProcess extends MutexProcess {
+    public static final String NAME = "suzuki-kasami";
+
+    private final Object lock = new Object();
+    private final List<Node> nodes;
+    private final int me;               // Position in the node list
+
+    private final int[] rn;             // Highest request number seen, by position
+    private boolean hasToken;
+    private boolean inCs;
+    private int[] ln;                   // Token state, valid while holding it
+    private final ArrayDeque<Integer> queue;
+
+    public SuzukiKasamiProcess(Linker initLinker, MutexConfig config){
+        super(initLinker, config);
+        this.nodes = config.getNodes();
+        this.me = positionOf(myId);
+        this.rn = new int[nodes.size()];
+        this.ln = new int[nodes.size()];
+        this.queue = new ArrayDeque<>();
+        this.hasToken = me == 0;
+
+        register(Tag.REQUEST, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onRequest(positionOf(srcId), Integer.parseInt(msg.getContent()));
+            }
+        });
+        register(Tag.TOKEN, Concurrency.SERIAL_PER_SOURCE, new TagHandler() {
+            @Override
+            public void handle(Message msg, int srcId) throws IOException {
+                onToken(msg.getValues());
+            }
+        });
+    }
+
+    @Override
+    protected void request() throws IOException {
+        synchronized(lock){
+            if(hasToken){
+                inCs = true;
+                granted();
+                return;
+            }
+            rn[me]++;
+            countMessages(numProc);
+            linker.multicast(linker.getNeighbors(), Tag.REQUEST, Integer.toString(rn[me]));
+        }
+    }
+
+    @Override
+    protected void release() throws IOException {
+        synchronized(lock){
+            inCs = false;
+            ln[me] = rn[me];
+            boolean[] queued = new boolean[nodes.size()];
+            for(int position : queue){
+                queued[position] = true;
+            }
+            for(int k = 0; k < nodes.size(); k++){
+                if(!queued[k] && rn[k] == ln[k] + 1)
+                    queue.add(k);
+            }
+            if(!queue.isEmpty())
+                sendToken(queue.poll());
+        }
+    }
+
+    private void onRequest(int position, int requestNumber) throws IOException{
+        synchronized(lock){
+            rn[position] = Math.max(rn[position], requestNumber);
+            if(hasToken && !inCs && rn[position] == ln[position] + 1)
+                sendToken(position);
+        }
+    }
+
+    private void onToken(int[] token){
+        synchronized(lock){
+            int n = nodes.size();
+            System.arraycopy(token, 0, ln, 0, n);
+            queue.clear();
+            for(int i = n; i < token.length; i++){
+                queue.add(token[i]);
+            }
+            hasToken = true;
+            inCs = true;                // Reserved for the pending request, not lent out again
+            countMessage();
+            granted();
+        }
+    }
+
+    private void sendToken(int position) throws IOException{
+        int n = nodes.size();
+        int[] token = new int[n + queue.size()];
+        System.arraycopy(ln, 0, token, 0, n);
+        int i = n;
+        for(int waiting : queue){
+            token[i++] = waiting;
+        }
+        hasToken = false;
+        queue.clear();
+        int dstId = nodes.get(position).getNodeId();
+        linker.sendMessage(dstId, new Message(myId, dstId, Tag.TOKEN, token));
+    }
+
+    private int positionOf(int nodeId){
+        for(int i = 0; i < nodes.size(); i++){
+            if(nodes.get(i).getNodeId() == nodeId)
+                return i;
+        }
+        throw new IllegalArgumentException(String.format("Node %d is not in the node list", nodeId));
+    }
+}
@@ -19,5 +19,26 @@ public enum Tag {
     TREE_REJECT,
     
     TREE_CONVERGE,
-    TREE_BROADCAST;
+    TREE_BROADCAST,
+    
+    // Mutual exclusion, content is a Lamport timestamp
+    REQUEST,
+    REPLY,
+    
+    // Quorum arbitration
+    INQUIRE,
+    YIELD,
+    FAILED,
+    RELEASE,
+    
+    // Token passing
+    TOKEN,
+    
+    // Named locks, content is a resource id and a Lamport timestamp
+    LOCK_REQUEST,
+    LOCK_REPLY,
+    LOCK_RELEASE,
+    
+    // Leases, content is a batch of records
+    LEASE;
 }
@@ -0,0 +1,10 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+
+/**
+ * Handles the messages of one tag, registered with a {@link DispatchTable}
+ */
+public interface TagHandler {
+    void handle(Message msg, int srcId) throws IOException;
+}
@@ -0,0 +1,32 @@
+package edu.utdallas.project3.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which nodes a node opens channels to
+ */
+public interface Topology {
+    /**
+     * Channels to every other node
+     */
+    Topology FULL_MESH = new Topology() {
+        @Override
+        public List<Node> neighbors(int myId, List<Node> nodes) {
+            List<Node> neighbors = new ArrayList<>();
+            for(Node node : nodes){
+                if(node.getNodeId() != myId)
+                    neighbors.add(node);
+            }
+            return neighbors;
+        }
+    };
+
+    /**
+     * @param myId
+     * @param nodes Every node, sorted by id
+     * @return Neighbors of the node, sorted by id, itself excluded. Must be
+     *         symmetric: b is a neighbor of a if and only if a is one of b.
+     */
+    List<Node> neighbors(int myId, List<Node> nodes);
+}
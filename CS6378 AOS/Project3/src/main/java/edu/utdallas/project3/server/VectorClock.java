@@ -0,0 +1,65 @@
+package edu.utdallas.project3.server;
+
+/**
+ * Vector clock of one node, entry i counting the events of node i.
+ *
+ * The node's events are ordered by the monitor, so every thread of the
+ * node sees one sequence. A linker given the clock, see
+ * {@link edu.utdallas.project3.socket.Linker#setVectorClock(VectorClock)},
+ * stamps every message it sends and merges every stamp it receives; other
+ * events, e.g. entering and leaving the critical section, call
+ * {@link #tick()}.
+ */
+public class VectorClock {
+    private final int myId;
+    private final int[] clock;
+
+    /**
+     * @param myId Entry of this node
+     * @param width Number of nodes, ids 0 to width - 1
+     */
+    public VectorClock(int myId, int width){
+        if(myId < 0 || myId >= width)
+            throw new IllegalArgumentException(String.format("Node id %d outside vector of %d", myId, width));
+        this.myId = myId;
+        this.clock = new int[width];
+    }
+
+    /**
+     * Count a local event
+     * @return Timestamp of the event
+     */
+    public synchronized int[] tick(){
+        clock[myId]++;
+        return clock.clone();
+    }
+
+    /**
+     * Count a send
+     * @return Timestamp to put on the message
+     */
+    public int[] send(){
+        return tick();
+    }
+
+    /**
+     * Count a receive, after everything the sender had seen
+     * @param stamp Timestamp of the message
+     */
+    public synchronized void receive(int[] stamp){
+        int width = Math.min(stamp.length, clock.length);
+        for(int i = 0; i < width; i++){
+            if(stamp[i] > clock[i])
+                clock[i] = stamp[i];
+        }
+        clock[myId]++;
+    }
+
+    public int getMyId(){
+        return myId;
+    }
+
+    public int getWidth(){
+        return clock.length;
+    }
+}
@@ -0,0 +1,181 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import edu.utdallas.project3.tools.Histogram;
+import edu.utdallas.project3.tools.MutexConfig;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Drives mutual exclusion processes with the workload of a configuration:
+ * every node enters the critical section
+ * {@link MutexConfig#getNumberOfRequest()} times, one request at a time,
+ * after an exponentially distributed delay of mean
+ * {@link MutexConfig#getMeanInterRequestDelay()} ms, and stays inside for
+ * an exponentially distributed time of mean
+ * {@link MutexConfig#getMeanCSExecution()} ms.
+ *
+ * Response times come from the callers, messages per entry from the
+ * processes' {@link MutexStats} since they started. Synchronization delay,
+ * from one node leaving to the next waiting one entering, needs a common
+ * clock, so it is only measured among the nodes one driver runs, e.g. a
+ * {@link LocalCluster}; overlapping holders of k-mutex or shared entries
+ * are left out.
+ */
+public class WorkloadDriver {
+    private static final Logger LOG = LogManager.getLogger(WorkloadDriver.class);
+    private final MutexConfig config;
+    private final Histogram responseTime;
+    private final Histogram syncDelay;
+
+    // Critical sections of all driven nodes, in one clock
+    private final Object timeline = new Object();
+    private int inside;
+    private long lastExit;
+
+    public WorkloadDriver(MutexConfig config){
+        this.config = config;
+        this.responseTime = new Histogram();
+        this.syncDelay = new Histogram();
+    }
+
+    /**
+     * Run the workload on every process at once, a thread each, and wait
+     * for all of them
+     *
+     * @param processes
+     * @return Report of the run
+     * @throws IOException A node failed
+     * @throws InterruptedException
+     */
+    public WorkloadReport run(List<MutexProcess> processes) throws IOException, InterruptedException{
+        final List<Throwable> failures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for(final MutexProcess process : processes){
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        runRequests(process);
+                    } catch (Throwable t){
+                        synchronized(failures){
+                            failures.add(t);
+                        }
+                    }
+                }
+            }, String.format("workload-%d", process.myId)));
+        }
+        long start = System.nanoTime();
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join();
+        long elapsed = System.nanoTime() - start;
+        if(!failures.isEmpty())
+            throw new IOException("Workload failed", failures.get(0));
+
+        Histogram waitTime = new Histogram(MutexStats.HISTOGRAM_SUB_BITS);
+        Histogram messages = new Histogram(MutexStats.HISTOGRAM_SUB_BITS);
+        for(MutexProcess process : processes){
+            waitTime.add(process.getStats().getWaitHistogram());
+            messages.add(process.getStats().getMessageHistogram());
+        }
+        return new WorkloadReport(config, processes.size(), responseTime.getCount(), elapsed,
+                responseTime, syncDelay, waitTime, messages);
+    }
+
+    private void runRequests(MutexProcess process) throws IOException, InterruptedException{
+        Random random = new Random();
+        for(int i = 0; i < config.getNumberOfRequest(); i++){
+            TimeUnit.NANOSECONDS.sleep(exponential(random, config.getMeanInterRequestDelay()));
+            long requested = System.nanoTime();
+            process.csEnter();
+            entered(requested);
+            try{
+                TimeUnit.NANOSECONDS.sleep(exponential(random, config.getMeanCSExecution()));
+            } finally {
+                exited();
+                responseTime.record(System.nanoTime() - requested);
+                process.csLeave();
+            }
+        }
+        LOG.info("[Node {}] [MUTEX] {}", process.myId, process.getStats());
+    }
+
+    private void entered(long requested){
+        long now = System.nanoTime();
+        synchronized(timeline){
+            // Waited for the previous holder, not for its own delay
+            if(inside == 0 && lastExit != 0 && requested - lastExit < 0)
+                syncDelay.record(now - lastExit);
+            inside++;
+        }
+    }
+
+    private void exited(){
+        long now = System.nanoTime();
+        synchronized(timeline){
+            if(--inside == 0)
+                lastExit = now;
+        }
+    }
+
+    /**
+     * @return Sample in nanoseconds of an exponential distribution
+     */
+    private static long exponential(Random random, int meanMillis){
+        return Math.round(-meanMillis * 1e6 * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * Write the report where the configuration says, or print it
+     *
+     * @param report
+     * @param nodeId Put in place of "{node}" in the file name
+     * @throws IOException
+     */
+    public void publish(WorkloadReport report, int nodeId) throws IOException{
+        String file = config.getWorkloadReport();
+        if(file.isEmpty())
+            System.out.println(String.format("[Node %d] [WORKLOAD] %s", nodeId, report.toJson()));
+        else
+            report.write(Paths.get(file.replace("{node}", String.valueOf(nodeId))));
+    }
+
+    /**
+     * Run the workload of a configuration file on a whole cluster inside
+     * this JVM, e.g. to compare algorithms or cluster sizes without hosts.
+     * Only the first line and the settings of the file matter.
+     *
+     * @param args <config file>
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: java WorkloadDriver <config file>");
+            System.exit(1);
+        }
+        MutexConfig config = MutexConfig.loadFromConfigurationFile(args[0], 0);
+        String algorithm = config.getMutexAlgorithm();
+        LocalCluster cluster = new LocalCluster(config, MutexAlgorithms.forName(algorithm),
+                MutexAlgorithms.topologyFor(algorithm));
+        cluster.start();
+        try{
+            List<MutexProcess> processes = new ArrayList<>();
+            for(Process process : cluster.getProcesses())
+                processes.add((MutexProcess)process);
+            WorkloadDriver driver = new WorkloadDriver(config);
+            driver.publish(driver.run(processes), 0);
+        } finally {
+            cluster.close();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,123 @@
+package edu.utdallas.project3.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import edu.utdallas.project3.tools.Histogram;
+import edu.utdallas.project3.tools.MutexConfig;
+
+/**
+ * Outcome of one {@link WorkloadDriver} run, written as one JSON object so
+ * runs of different algorithms and cluster sizes can be compared by
+ * script. Times are in nanoseconds.
+ */
+public class WorkloadReport {
+    private final String algorithm;
+    private final int nodes;
+    private final MutexConfig config;
+    private final long entries;
+    private final long elapsedNanos;
+    private final Histogram responseTime;
+    private final Histogram syncDelay;
+    private final Histogram waitTime;
+    private final Histogram messages;
+
+    WorkloadReport(MutexConfig config, int nodes, long entries, long elapsedNanos,
+            Histogram responseTime, Histogram syncDelay, Histogram waitTime, Histogram messages){
+        this.algorithm = config.getMutexAlgorithm();
+        this.nodes = nodes;
+        this.config = config;
+        this.entries = entries;
+        this.elapsedNanos = elapsedNanos;
+        this.responseTime = responseTime;
+        this.syncDelay = syncDelay;
+        this.waitTime = waitTime;
+        this.messages = messages;
+    }
+
+    public long getEntries(){
+        return entries;
+    }
+
+    public long getElapsedNanos(){
+        return elapsedNanos;
+    }
+
+    /**
+     * @return Critical section entries per second over all nodes
+     */
+    public double getThroughput(){
+        return elapsedNanos == 0 ? 0 : entries * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return From request to leaving the critical section
+     */
+    public Histogram getResponseTime(){
+        return responseTime;
+    }
+
+    /**
+     * @return From one node leaving to the next one entering while it
+     *         waited; only seen by a driver running several nodes
+     */
+    public Histogram getSyncDelay(){
+        return syncDelay;
+    }
+
+    /**
+     * @return From request to entering the critical section
+     */
+    public Histogram getWaitTime(){
+        return waitTime;
+    }
+
+    /**
+     * @return Messages per critical section entry
+     */
+    public Histogram getMessages(){
+        return messages;
+    }
+
+    public String toJson(){
+        StringBuilder json = new StringBuilder();
+        json.append('{');
+        json.append(String.format(Locale.ROOT, "\"algorithm\":\"%s\",\"nodes\":%d,", algorithm, nodes));
+        json.append(String.format(Locale.ROOT, "\"requestsPerNode\":%d,\"meanInterRequestDelayMs\":%d,\"meanCSExecutionMs\":%d,",
+                config.getNumberOfRequest(), config.getMeanInterRequestDelay(), config.getMeanCSExecution()));
+        json.append(String.format(Locale.ROOT, "\"batch\":%d,\"k\":%d,\"codec\":\"%s\",\"executionMode\":\"%s\",",
+                config.getMutexBatch(), config.getMutexK(), config.getMessageCodec(), config.getExecutionMode()));
+        json.append(String.format(Locale.ROOT, "\"entries\":%d,\"elapsedNanos\":%d,\"throughputPerSecond\":%.3f,",
+                entries, elapsedNanos, getThroughput()));
+        appendHistogram(json, "responseTimeNanos", responseTime).append(',');
+        appendHistogram(json, "syncDelayNanos", syncDelay).append(',');
+        appendHistogram(json, "waitNanos", waitTime).append(',');
+        appendHistogram(json, "messagesPerCS", messages);
+        json.append('}');
+        return json.toString();
+    }
+
+    /**
+     * @param file Replaced if it exists
+     * @throws IOException
+     */
+    public void write(Path file) throws IOException{
+        Files.write(file, (toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static StringBuilder appendHistogram(StringBuilder json, String name, Histogram histogram){
+        return json.append(String.format(Locale.ROOT,
+                "\"%s\":{\"count\":%d,\"mean\":%.3f,\"min\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                name, histogram.getCount(), histogram.getMean(), histogram.getMin(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMax()));
+    }
+
+    @Override
+    public String toString(){
+        return toJson();
+    }
+}
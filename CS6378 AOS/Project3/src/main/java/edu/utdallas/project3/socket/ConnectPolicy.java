@@ -0,0 +1,67 @@
+package edu.utdallas.project3.socket;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Timing of channel establishment.
+ *
+ * Failed connects are retried after a jittered exponential backoff: after
+ * the n-th failed attempt, counted from 1, the wait is between half and all
+ * of {@code min(maxBackoff, initialBackoff * 2^(n-1))}. All channels must be
+ * up within {@code deadline} milliseconds, or the connect fails.
+ */
+public class ConnectPolicy {
+    public static final int DEFAULT_DEADLINE = 5 * 60 * 1000;
+    public static final int DEFAULT_INITIAL_BACKOFF = 50;
+    public static final int DEFAULT_MAX_BACKOFF = 2000;
+
+    private final int deadline;
+    private final int initialBackoff;
+    private final int maxBackoff;
+
+    public ConnectPolicy(int deadline, int initialBackoff, int maxBackoff){
+        if(deadline <= 0 || initialBackoff <= 0 || maxBackoff < initialBackoff)
+            throw new IllegalArgumentException(String.format(
+                    "Illegal connect policy deadline=%d initialBackoff=%d maxBackoff=%d",
+                    deadline, initialBackoff, maxBackoff));
+        this.deadline = deadline;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    public ConnectPolicy(){
+        this(DEFAULT_DEADLINE, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    /**
+     * @return Readiness deadline in milliseconds
+     */
+    public int getDeadline() {
+        return deadline;
+    }
+
+    public int getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public int getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * @param attempt Number of failed attempts so far, from 1
+     * @return Milliseconds to wait before the next attempt
+     */
+    public long backoff(int attempt){
+        long ceiling = maxBackoff;
+        if(attempt < 31)
+            ceiling = Math.min(maxBackoff, (long)initialBackoff << (attempt - 1));
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+
+    @Override
+    public String toString(){
+        return String.format("[deadline = %d ms] [backoff = %d..%d ms]", deadline, initialBackoff, maxBackoff);
+    }
+}
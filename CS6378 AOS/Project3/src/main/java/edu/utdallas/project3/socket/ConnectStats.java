@@ -0,0 +1,88 @@
+package edu.utdallas.project3.socket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Startup timing of {@link Connector#connect}, all offsets are measured
+ * from the start of the call.
+ */
+public class ConnectStats {
+    private final long start;
+    private volatile long bound;
+    private final AtomicLong accepted;      // Last channel from a smaller id
+    private final AtomicLong dialed;        // Last channel to a bigger id
+    private volatile long ready;
+    private final AtomicInteger dialAttempts;
+
+    ConnectStats(){
+        this.start = System.nanoTime();
+        this.accepted = new AtomicLong();
+        this.dialed = new AtomicLong();
+        this.dialAttempts = new AtomicInteger();
+    }
+
+    void markBound(){
+        bound = System.nanoTime() - start;
+    }
+
+    void markAccepted(){
+        max(accepted, System.nanoTime() - start);
+    }
+
+    void markDialed(){
+        max(dialed, System.nanoTime() - start);
+    }
+
+    void markReady(){
+        ready = System.nanoTime() - start;
+    }
+
+    void countDialAttempt(){
+        dialAttempts.incrementAndGet();
+    }
+
+    private static void max(AtomicLong target, long value){
+        long current;
+        while((current = target.get()) < value && !target.compareAndSet(current, value));
+    }
+
+    /**
+     * @return Milliseconds until the listen socket was bound
+     */
+    public long getBindTime(){
+        return TimeUnit.NANOSECONDS.toMillis(bound);
+    }
+
+    /**
+     * @return Milliseconds until the last smaller process was accepted
+     */
+    public long getAcceptTime(){
+        return TimeUnit.NANOSECONDS.toMillis(accepted.get());
+    }
+
+    /**
+     * @return Milliseconds until the last bigger process was connected
+     */
+    public long getDialTime(){
+        return TimeUnit.NANOSECONDS.toMillis(dialed.get());
+    }
+
+    /**
+     * @return Milliseconds until every channel was up, i.e. time-to-ready
+     */
+    public long getReadyTime(){
+        return TimeUnit.NANOSECONDS.toMillis(ready);
+    }
+
+    public int getDialAttempts(){
+        return dialAttempts.get();
+    }
+
+    @Override
+    public String toString(){
+        return String.format("[bind = %d ms] [accept = %d ms] [dial = %d ms] [ready = %d ms] [dial attempts = %d]",
+                getBindTime(), getAcceptTime(), getDialTime(), getReadyTime(), getDialAttempts());
+    }
+}
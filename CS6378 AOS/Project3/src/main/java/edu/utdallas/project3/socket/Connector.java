@@ -1,18 +1,28 @@
 package edu.utdallas.project3.socket;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.ConnectException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import edu.utdallas.project3.codec.MessageCodec;
 import edu.utdallas.project3.server.Message;
 import edu.utdallas.project3.server.Node;
 import edu.utdallas.project3.server.Tag;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 
 /**
  * A collection of accept sockets for maintaining channels
@@ -20,14 +30,27 @@ import edu.utdallas.project3.server.Tag;
  *
  */
 public class Connector {
-    ServerSocket listener;
-    Socket[] link;
+    private static final Logger LOG = LogManager.getLogger(Connector.class);
+    /**
+     * Upper bound of concurrent dialing threads
+     */
+    private static final int MAX_DIALERS = 32;
+    
+    ServerSocketChannel listener;
+    SocketChannel[] link;
+    private volatile ConnectStats stats;
     
     private static volatile Connector instance = null;
     
-    private Connector(){
+    /**
+     * Connector of its own, e.g. for one of several nodes in a JVM
+     */
+    public Connector(){
     }
     
+    /**
+     * @return Connector shared by the whole JVM, for a single node
+     */
     public static Connector getInstance() {
         // Double checking lock for thread safe.
         if(instance == null){
@@ -44,103 +67,235 @@ public class Connector {
     /**
      * Caveat: processes must be sorted
      * 
+     * Connections from smaller processes are accepted on one thread while
+     * bigger processes are dialed in parallel, each retrying with a
+     * jittered exponential backoff until the readiness deadline. A failed
+     * handshake is retried like a refused connect.
+     * Channels are returned in blocking mode, the handshake is done with one
+     * frame each way.
+     * 
      * @param listenPort
      * @param myId
-     * @param in
-     * @param out
+     * @param channels Filled with one connected channel per process
      * @param processes Sorted list of nodes containing nodeId, host address, and port.
-     * @throws IOException 
-     * @throws ClassNotFoundException 
+     * @param codec Wire format for the handshake
+     * @param policy Backoff and deadline
+     * @throws IOException Includes {@link SocketTimeoutException} when the deadline passes
      * @throws InterruptedException 
-     * @throws Exception
      */
     public void connect(
-            int listenPort, 
-            int myId, 
-            ObjectInputStream[] in, 
-            ObjectOutputStream[] out, 
-            List<Node> processes) throws IOException, ClassNotFoundException, InterruptedException {
+            final int listenPort, 
+            final int myId, 
+            final SocketChannel[] channels, 
+            final List<Node> processes,
+            final MessageCodec codec,
+            final ConnectPolicy policy) throws IOException, InterruptedException {
         
-        int numProc = processes.size();
-        link = new Socket[numProc];
+        final int numProc = processes.size();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.getDeadline());
+        stats = new ConnectStats();
+        link = new SocketChannel[numProc];
 
-        System.out.println(String.format("[Node %d] [Connect: Phase 0] Setup Server at port %d", myId, listenPort));
-        listener = new ServerSocket(listenPort);
+        listener = ServerSocketChannel.open();
+        listener.socket().setReuseAddress(true);
+        listener.bind(new InetSocketAddress(listenPort));
+        stats.markBound();
+        LOG.info("[Node {}] [Connect] Listen at port {}, {} channels, {}", myId, listenPort, numProc, policy);
         
-        /* Accept connections from all the smaller processes */
-        int numRecved = 0;
-        System.out.println(String.format("[Node %d] [Connect: Phase 0] Targets: %s", myId, processes.toString()));
+        /* Smaller processes dial us, we dial the bigger ones */
+        int split = 0;
+        while(split < numProc && processes.get(split).getNodeId() < myId)
+            split++;
+        final int numSmaller = split;
+        
+        final CountDownLatch ready = new CountDownLatch(numProc);
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    acceptAll(myId, numSmaller, channels, processes, codec, ready);
+                } catch (IOException e){
+                    fail(failure, e, ready);
+                }
+            }
+        }, String.format("connector-%d-accept", myId));
+        acceptor.start();
         
-        while(numRecved < processes.size() && processes.get(numRecved).getNodeId() < myId){
-            System.out.println(String.format("[Node %d] [Connect:Phase 1] Status: numRecved %d, nodeId %d",  myId, numRecved, processes.get(numRecved).getNodeId()));
-            Socket socket = listener.accept();
-            ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+        int numBigger = numProc - numSmaller;
+        ExecutorService dialers = Executors.newFixedThreadPool(Math.max(1, Math.min(numBigger, MAX_DIALERS)));
+        for(int i = numSmaller; i < numProc; i++){
+            final int dstIndex = i;
+            dialers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        dial(myId, dstIndex, channels, processes, codec, policy, deadline);
+                        ready.countDown();
+                    } catch (IOException e){
+                        fail(failure, e, ready);
+                    } catch (InterruptedException e){
+                        // Connect abandoned
+                    }
+                }
+            });
+        }
+        dialers.shutdown();
+        
+        boolean done = ready.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        IOException cause = failure.get();
+        if(!done || cause != null){
+            dialers.shutdownNow();
+            acceptor.interrupt();
+            closeSockets();
+            acceptor.join(); 
+            if(cause != null)
+                throw cause;
+            throw new SocketTimeoutException(String.format("[Node %d] Channels not ready after %d ms, missing %s",
+                    myId, policy.getDeadline(), missing(channels, processes)));
+        }
+        acceptor.join();
+        stats.markReady();
+        LOG.info("[Node {}] [Connect] Build Channel Done. {}", myId, stats);
+    }
+    
+    /**
+     * Accept one channel from every smaller process, in any order
+     */
+    private void acceptAll(
+            int myId, 
+            int numSmaller, 
+            SocketChannel[] channels, 
+            List<Node> processes,
+            MessageCodec codec,
+            CountDownLatch ready) throws IOException {
+        
+        int numRecved = 0;
+        while(numRecved < numSmaller){
+            SocketChannel socket = listener.accept();
             
             // Read the first message from new request.
-            Message msg = (Message)ois.readObject();
-            System.out.println(String.format("[Node %d] [Connect:Phase 1] Receive %s", myId, msg.toString()));
-            
+            Message msg;
+            try{
+                socket.socket().setTcpNoDelay(true);
+                msg = Frames.read(socket, codec);
+            } catch (IOException e){
+                // One broken peer must not take down the other channels
+                LOG.warn("[Node {}] [Connect] Drop {} after failed handshake: {}", myId, socket, e.toString());
+                socket.close();
+                continue;
+            }
             int fromId = msg.getSrcId();
             int fromIndex = Collections.binarySearch(processes, new Node(fromId));
-            if(msg.getTag().equals(Tag.HANDSHAKE)){
-                link[fromIndex] = socket;  
-                in[fromIndex] = ois;
-                out[fromIndex] = new ObjectOutputStream(socket.getOutputStream());
+            if(!msg.getTag().equals(Tag.HANDSHAKE) || fromIndex < 0 || fromIndex >= numSmaller || link[fromIndex] != null){
+                LOG.warn("[Node {}] [Connect] Reject unexpected {}", myId, msg);
+                socket.close();
+                continue;
+            }
 
-                int src = myId, dst = fromId;
-                msg = new Message(src, dst, Tag.HANDSHAKE, "Response");
-                out[fromIndex].writeObject(msg);
-                
-                numRecved++;
+            int src = myId, dst = fromId;
+            msg = new Message(src, dst, Tag.HANDSHAKE, "Response");
+            try{
+                Frames.write(socket, codec.encode(msg));
+            } catch (IOException e){
+                // Not registered yet, so a later dial from that node is still accepted
+                LOG.warn("[Node {}] [Connect] Drop node {} after failed handshake: {}", myId, fromId, e.toString());
+                socket.close();
+                continue;
             }
+            link[fromIndex] = socket;  
+            channels[fromIndex] = socket;
+            
+            numRecved++;
+            stats.markAccepted();
+            ready.countDown();
         }
-        System.out.println(String.format("[Node %d] [Connect:Phase 1] Complete.", myId));
+    }
+    
+    /**
+     * Connect to one bigger process, retrying until it is up and answers
+     * the handshake
+     */
+    private void dial(
+            int myId, 
+            int dstIndex, 
+            SocketChannel[] channels, 
+            List<Node> processes,
+            MessageCodec codec,
+            ConnectPolicy policy,
+            long deadline) throws IOException, InterruptedException {
         
-        /* Contact all the bigger process*/
-        while(numRecved < processes.size()){
-            Node process = processes.get(numRecved);
-            int dstId = process.getNodeId();
-            String host = process.getHostName();
-            int port = process.getPort();
-
-            int dstIndex = Collections.binarySearch(processes, new Node(dstId));
-            
-            boolean connected = false;
-            while(!connected){
-                try{ 
-                    System.out.println(String.format("[Node %d] [Connect:Phase 2] Connect to %s:%d", myId, host, port));
-                    link[dstIndex] = new Socket(host, port);
-                    connected = true;
-                } catch (ConnectException e){
-                    System.out.println(String.format("[Node %d] [Connect:Phase 2] Connection fail: %s", myId, e.toString()));
-                    Thread.sleep(1000);          // Wait 1s to resent
-                    System.out.println(String.format("[Node %d] [Connect:Phase 2] Retry connecting...", myId));
-                }
+        Node process = processes.get(dstIndex);
+        
+        for(int attempt = 1; ; attempt++){
+            stats.countDialAttempt();
+            // Resolve again on every attempt, the name may not be registered yet.
+            InetSocketAddress address = new InetSocketAddress(process.getHostName(), process.getPort());
+            SocketChannel socket = null;
+            try{ 
+                if(!address.isUnresolved())
+                    socket = SocketChannel.open(address);
+            } catch (ConnectException e){
+                // Not listening yet.
             }
-            System.out.println(String.format("[Node %d] [Connect:Phase 2] Connection success! to %s:%d", myId, host, port));
-            
-            out[dstIndex] = new ObjectOutputStream(link[dstIndex].getOutputStream());
-            
-            /* Send a handshake message to P_i */
-            int src = myId, dst = process.getNodeId();
-            Message msg = new Message(src, dst, Tag.HANDSHAKE, "Request");
-            out[dstIndex].writeObject(msg);
-            out[dstIndex].flush();
-
-            // ObjectInputStream constructor will block until the header has been read.  
-            in[dstIndex] = new ObjectInputStream(link[dstIndex].getInputStream());
-            msg = (Message)in[dstIndex].readObject();
-            if(msg.getTag().equals(Tag.HANDSHAKE)){
-                System.out.println(String.format("[Node %d] [Connect:Phase 3] InputStream Setup Success! ", myId));
+            if(socket != null){
+                try{
+                    handshake(myId, process.getNodeId(), socket, codec);
+                    link[dstIndex] = socket;
+                    channels[dstIndex] = socket;
+                    stats.markDialed();
+                    return;
+                } catch (IOException e){
+                    // E.g. the peer dropped us while it was still starting up
+                    LOG.warn("[Node {}] [Connect] Handshake with node {} failed: {}", myId, process.getNodeId(), e.toString());
+                    socket.close();
+                    if(Thread.currentThread().isInterrupted())
+                        throw new InterruptedException();
+                }
             }
-            System.out.println(String.format("[Node %d] [Connect:Phase 3] Send %s", myId, msg.toString()));
-            numRecved++;
+            long wait = policy.backoff(attempt);
+            if(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) - deadline > 0)
+                throw new SocketTimeoutException(String.format("Gave up on %s after %d attempts", address, attempt));
+            Thread.sleep(wait);
         }
+    }
 
-        System.out.println(String.format("[Node %d] [Connect:Phase 3] Build Channel Done.", myId));
-        
+    /**
+     * Send a handshake to P_i and block until its response has been read
+     */
+    private static void handshake(int myId, int dst, SocketChannel socket, MessageCodec codec) throws IOException{
+        socket.socket().setTcpNoDelay(true);
+        Message msg = new Message(myId, dst, Tag.HANDSHAKE, "Request");
+        Frames.write(socket, codec.encode(msg));
+
+        msg = Frames.read(socket, codec);
+        if(!msg.getTag().equals(Tag.HANDSHAKE))
+            throw new IOException(String.format("[Node %d] Expect handshake from %d, got %s", myId, dst, msg));
+    }
+    
+    private static void fail(AtomicReference<IOException> failure, IOException e, CountDownLatch ready){
+        if(failure.compareAndSet(null, e)){
+            while(ready.getCount() > 0)
+                ready.countDown();      // Wake up connect() right away.
+        }
+    }
+    
+    private static List<Integer> missing(SocketChannel[] channels, List<Node> processes){
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < channels.length; i++){
+            if(channels[i] == null)
+                ids.add(processes.get(i).getNodeId());
+        }
+        return ids;
     }
     
+    /**
+     * @return Timing of the last {@link #connect}, null before
+     */
+    public ConnectStats getStats(){
+        return stats;
+    }
     
     /**
      * Close all connection to this node.
@@ -148,14 +303,15 @@ public class Connector {
      */
     public void closeSockets(){
         try{
-            listener.close();
+            if(listener != null)
+                listener.close();
             
-            //TODO: May cause io exception.
             for(int i = 0; i < link.length; i++){
-                link[i].close();
+                if(link[i] != null)
+                    link[i].close();
             }
         } catch(Exception e){
-            System.err.println(e);
+            LOG.warn("[Connect] Cannot close sockets", e);
         }
     }
 }
@@ -0,0 +1,199 @@
+package edu.utdallas.project3.socket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Single selector thread multiplexing every neighbor channel of a node.
+ *
+ * Frames are cut out of the read buffers and handed to the listener in
+ * arrival order, so each channel stays FIFO.
+ */
+class EventLoop implements Runnable {
+    private static final Logger LOG = LogManager.getLogger(EventLoop.class);
+    private final int myId;
+    private final Transport.FrameListener listener;
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final PriorityQueue<DelayedFlush> delayedFlushes;   // Only touched by the loop thread
+    private volatile boolean running;
+    private Thread thread;
+
+    EventLoop(int myId, Transport.FrameListener listener) throws IOException{
+        this.myId = myId;
+        this.listener = listener;
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.delayedFlushes = new PriorityQueue<>();
+    }
+
+    /**
+     * Register channels and start the selector thread.
+     * Channels must be switched to non-blocking mode beforehand.
+     */
+    void start(NeighborChannel[] channels) throws IOException{
+        for(NeighborChannel channel : channels){
+            SelectionKey key = channel.getSocket().register(selector, SelectionKey.OP_READ, channel);
+            channel.attach(this, key);
+        }
+        running = true;
+        thread = new Thread(this, String.format("linker-%d-loop", myId));
+        thread.start();
+    }
+
+    /**
+     * Change interest set from any thread. Applied by the selector thread.
+     */
+    void setInterest(final SelectionKey key, final int ops){
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                if(key.isValid())
+                    key.interestOps(ops);
+            }
+        });
+    }
+
+    /**
+     * Flush a channel after a delay, from any thread.
+     *
+     * @param channel
+     * @param delay Milliseconds
+     */
+    void scheduleFlush(final NeighborChannel channel, int delay){
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                delayedFlushes.add(new DelayedFlush(deadline, channel));
+            }
+        });
+    }
+
+    void execute(Runnable task){
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while(running){
+                DelayedFlush next = delayedFlushes.peek();
+                if(next == null){
+                    selector.select();
+                } else {
+                    long wait = TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime() + 999999);   // Round up
+                    if(wait > 0)
+                        selector.select(wait);
+                    else
+                        selector.selectNow();
+                }
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while(it.hasNext()){
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NeighborChannel channel = (NeighborChannel)key.attachment();
+                    try{
+                        if(key.isValid() && key.isReadable())
+                            readFrames(channel);
+                        if(key.isValid() && key.isWritable())
+                            channel.flush();
+                    } catch (IOException e){
+                        fail(channel, e);
+                    }
+                }
+                runDelayedFlushes();
+            }
+        } catch (ClosedSelectorException e){
+            // Closed by shutdown()
+        } catch (IOException e){
+            LOG.error("[Node {}] Event loop failed", myId, e);
+        }
+    }
+
+    private void runTasks(){
+        Runnable task;
+        while((task = tasks.poll()) != null){
+            task.run();
+        }
+    }
+
+    private void runDelayedFlushes(){
+        long now = System.nanoTime();
+        DelayedFlush next;
+        while((next = delayedFlushes.peek()) != null && next.deadline - now <= 0){
+            delayedFlushes.poll();
+            try{
+                next.channel.tryFlush();
+            } catch (IOException e){
+                fail(next.channel, e);
+            }
+        }
+    }
+
+    private void fail(NeighborChannel channel, IOException cause){
+        SelectionKey key = channel.getSocket().keyFor(selector);
+        if(key != null)
+            key.cancel();
+        channel.close();
+        listener.onClosed(channel.getIndex(), cause);
+    }
+
+    private void readFrames(NeighborChannel channel) throws IOException{
+        ByteBuffer buffer = channel.read();
+        if(buffer == null)
+            throw new EOFException("End of stream");
+
+        int length;
+        while((length = Frames.peekLength(buffer)) >= 0
+                && buffer.remaining() >= Frames.HEADER_LENGTH + length){
+            int start = buffer.position() + Frames.HEADER_LENGTH;
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(start).limit(start + length);
+            buffer.position(start + length);
+            listener.onFrame(channel.getIndex(), payload);
+        }
+        channel.compact(length);
+    }
+
+    /**
+     * Stop the selector thread. Channels are closed by their owner.
+     */
+    void shutdown(){
+        running = false;
+        try{
+            selector.close();
+        } catch (IOException e){
+            LOG.warn("[Node {}] Cannot close selector", myId, e);
+        }
+    }
+
+    private static class DelayedFlush implements Comparable<DelayedFlush> {
+        final long deadline;
+        final NeighborChannel channel;
+
+        DelayedFlush(long deadline, NeighborChannel channel){
+            this.deadline = deadline;
+            this.channel = channel;
+        }
+
+        @Override
+        public int compareTo(DelayedFlush other) {
+            return Long.compare(deadline - other.deadline, 0);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package edu.utdallas.project3.socket;
+
+/**
+ * How a channel batches outbound frames.
+ *
+ * A flush gathers at most {@code maxBatch} queued frames into one socket
+ * write. With a {@code maxDelay} above zero, a frame entering an idle queue
+ * may wait up to that many milliseconds for company before it is flushed,
+ * unless {@code maxBatch} frames pile up first. With no delay, only frames
+ * that queue up while another flush is in progress are coalesced.
+ */
+public class FlushPolicy {
+    public static final int DEFAULT_MAX_BATCH = 64;
+    public static final int DEFAULT_MAX_DELAY = 0;
+
+    private final int maxBatch;
+    private final int maxDelay;
+
+    public FlushPolicy(int maxBatch, int maxDelay){
+        if(maxBatch < 1)
+            throw new IllegalArgumentException("maxBatch must be at least 1");
+        if(maxDelay < 0)
+            throw new IllegalArgumentException("maxDelay must not be negative");
+        this.maxBatch = maxBatch;
+        this.maxDelay = maxDelay;
+    }
+
+    public FlushPolicy(){
+        this(DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY);
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /**
+     * @return Linger time in milliseconds
+     */
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("[maxBatch = %d] [maxDelay = %d ms]", maxBatch, maxDelay);
+    }
+}
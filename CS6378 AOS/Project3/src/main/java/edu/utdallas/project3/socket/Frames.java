@@ -0,0 +1,73 @@
+package edu.utdallas.project3.socket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import edu.utdallas.project3.codec.MessageCodec;
+import edu.utdallas.project3.server.Message;
+
+/**
+ * Length-prefixed framing for messages on a stream channel.
+ *
+ * Every frame is a 4-byte big-endian payload length followed by the payload,
+ * so a non-blocking reader can tell when a whole message has arrived. The
+ * payload itself is up to the {@link MessageCodec}.
+ */
+final class Frames {
+    static final int HEADER_LENGTH = MessageCodec.HEADER_LENGTH;
+
+    /**
+     * Upper bound of a single payload, guards against a corrupted stream
+     */
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private Frames(){
+    }
+
+    /**
+     * Read the payload length of the frame starting at the buffer position.
+     *
+     * @return Payload length, or -1 if the header is not complete yet
+     * @throws IOException Illegal length
+     */
+    static int peekLength(ByteBuffer buffer) throws IOException{
+        if(buffer.remaining() < HEADER_LENGTH)
+            return -1;
+        int length = buffer.getInt(buffer.position());
+        if(length < 0 || length > MAX_FRAME_LENGTH)
+            throw new IOException(String.format("Illegal frame length %d", length));
+        return length;
+    }
+
+    /**
+     * Write a whole frame to a channel in blocking mode
+     */
+    static void write(SocketChannel channel, ByteBuffer frame) throws IOException{
+        while(frame.hasRemaining()){
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Read a whole frame from a channel in blocking mode.
+     * Only used while channels are set up, before they join the event loop.
+     */
+    static Message read(SocketChannel channel, MessageCodec codec) throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(channel, header);
+        header.flip();
+        ByteBuffer payload = ByteBuffer.allocate(peekLength(header));
+        readFully(channel, payload);
+        payload.flip();
+        return codec.decode(payload);
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException{
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer) < 0)
+                throw new EOFException("Channel closed before a full frame arrived");
+        }
+    }
+}
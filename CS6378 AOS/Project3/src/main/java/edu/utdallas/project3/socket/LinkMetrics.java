@@ -0,0 +1,104 @@
+package edu.utdallas.project3.socket;
+
+import java.util.List;
+
+import edu.utdallas.project3.metrics.Counter;
+import edu.utdallas.project3.metrics.Gauge;
+import edu.utdallas.project3.metrics.MetricsRegistry;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.Tag;
+
+/**
+ * Traffic of a {@link Linker}: messages and bytes, frame headers included,
+ * sent and received per channel and per tag, and the outbound queue depth
+ * of every channel.
+ *
+ * Channel counters are created up front, tag counters on the first message
+ * of a tag, so the scrape lists only the tags a node actually uses.
+ */
+class LinkMetrics {
+    private static final Tag[] TAGS = Tag.values();
+
+    private final MetricsRegistry registry;
+    private final String node;
+    private final Counter[] sentMessages;       // By channel
+    private final Counter[] sentBytes;
+    private final Counter[] receivedMessages;
+    private final Counter[] receivedBytes;
+    private final Counter[] tagSentMessages;    // By tag ordinal, null until used
+    private final Counter[] tagSentBytes;
+    private final Counter[] tagReceivedMessages;
+    private final Counter[] tagReceivedBytes;
+
+    /**
+     * @param registry
+     * @param myId
+     * @param neighbors Sorted list of neighbors
+     * @param transport Asked for queue depths on every collection
+     */
+    LinkMetrics(MetricsRegistry registry, int myId, List<Node> neighbors, final Transport transport){
+        this.registry = registry;
+        this.node = String.valueOf(myId);
+        int numProc = neighbors.size();
+        this.sentMessages = new Counter[numProc];
+        this.sentBytes = new Counter[numProc];
+        this.receivedMessages = new Counter[numProc];
+        this.receivedBytes = new Counter[numProc];
+        for(int i = 0; i < numProc; i++){
+            final int index = i;
+            String peer = String.valueOf(neighbors.get(i).getNodeId());
+            sentMessages[i] = registry.counter("project3_channel_messages_sent_total",
+                    "Messages sent to a neighbor", "node", node, "peer", peer);
+            sentBytes[i] = registry.counter("project3_channel_bytes_sent_total",
+                    "Bytes sent to a neighbor, frame headers included", "node", node, "peer", peer);
+            receivedMessages[i] = registry.counter("project3_channel_messages_received_total",
+                    "Messages received from a neighbor", "node", node, "peer", peer);
+            receivedBytes[i] = registry.counter("project3_channel_bytes_received_total",
+                    "Bytes received from a neighbor, frame headers included", "node", node, "peer", peer);
+            registry.gauge("project3_channel_queue_depth", "Frames queued to a neighbor and not yet sent",
+                    new Gauge() {
+                        @Override
+                        public long get() {
+                            return transport.getQueueDepth(index);
+                        }
+                    }, "node", node, "peer", peer);
+        }
+        this.tagSentMessages = new Counter[TAGS.length];
+        this.tagSentBytes = new Counter[TAGS.length];
+        this.tagReceivedMessages = new Counter[TAGS.length];
+        this.tagReceivedBytes = new Counter[TAGS.length];
+    }
+
+    void sent(int index, Tag tag, int bytes){
+        sentMessages[index].increment();
+        sentBytes[index].add(bytes);
+        int t = tag.ordinal();
+        Counter messages = tagSentMessages[t];
+        Counter size = tagSentBytes[t];
+        if(messages == null || size == null){
+            // Racing threads get the same counters from the registry
+            messages = tagSentMessages[t] = registry.counter("project3_tag_messages_sent_total",
+                    "Messages sent by message tag", "node", node, "tag", tag.name());
+            size = tagSentBytes[t] = registry.counter("project3_tag_bytes_sent_total",
+                    "Bytes sent by message tag, frame headers included", "node", node, "tag", tag.name());
+        }
+        messages.increment();
+        size.add(bytes);
+    }
+
+    void received(int index, Tag tag, int bytes){
+        receivedMessages[index].increment();
+        receivedBytes[index].add(bytes);
+        int t = tag.ordinal();
+        Counter messages = tagReceivedMessages[t];
+        Counter size = tagReceivedBytes[t];
+        if(messages == null || size == null){
+            messages = tagReceivedMessages[t] = registry.counter("project3_tag_messages_received_total",
+                    "Messages received by message tag", "node", node, "tag", tag.name());
+            size = tagReceivedBytes[t] = registry.counter("project3_tag_bytes_received_total",
+                    "Bytes received by message tag, frame headers included", "node", node, "tag", tag.name());
+        }
+        messages.increment();
+        size.add(bytes);
+    }
+}
@@ -2,97 +2,333 @@ package edu.utdallas.project3.socket;
 
 
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 
+import edu.utdallas.project3.codec.BinaryCodec;
+import edu.utdallas.project3.codec.MessageCodec;
+import edu.utdallas.project3.metrics.MetricsRegistry;
 import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.MessageHandler;
 import edu.utdallas.project3.server.Node;
 import edu.utdallas.project3.server.Tag;
+import edu.utdallas.project3.server.VectorClock;
+import edu.utdallas.project3.tools.SerialExecutor;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 /**
- * A coordinator for manage  
+ * A coordinator for manage channels to all neighbors.
+ *
+ * Messages are encoded here and carried as frames by a {@link Transport}:
+ * TCP through {@link NioTransport} by default, or any transport given with
+ * {@link #setTransport(Transport)}. Incoming messages are pushed to the
+ * registered {@link MessageHandler}, on the delivery thread or on an
+ * executor given with {@link #setExecutor(Executor)}; without a handler
+ * they are buffered per channel for {@link #receiveMessage(int)}.
  * @author zeqing
  *
  */
 public class Linker {
-    private ObjectOutputStream[] out;
-    private ObjectInputStream[] in;
+    private static final Logger LOG = LogManager.getLogger(Linker.class);
+    /**
+     * Marks a closed channel in its inbox
+     */
+    private static final Message CLOSED = new Message(-1, -1, Tag.DEFAULT, (String)null);
+
+    private Transport transport;
+    private BlockingQueue<Message>[] inbox;
     private int myId;               // Local node id
     private int numProc;            // Number of processes it contact with
-    private Connector connector;    
     private List<Node> neighbors;
-    
+    private volatile MessageHandler handler;
+    private MessageCodec codec;
+    private FlushPolicy flushPolicy;
+    private ConnectPolicy connectPolicy;
+    private SerialExecutor[] lanes;     // Per channel, null to deliver inline
+    private VectorClock clock;          // Null to send without timestamps
+    private MetricsRegistry registry;   // Null to count nothing
+    private LinkMetrics metrics;
+
     public Linker(int myId, List<Node> neighbors){
+        this(myId, neighbors, new BinaryCodec());
+    }
+
+    /**
+     * @param myId
+     * @param neighbors Sorted list of neighbors
+     * @param codec Wire format, must be the same on every node
+     */
+    @SuppressWarnings("unchecked")
+    public Linker(int myId, List<Node> neighbors, MessageCodec codec){
         this.myId = myId;
+        this.codec = codec;
+        this.flushPolicy = new FlushPolicy();
+        this.connectPolicy = new ConnectPolicy();
         this.numProc = neighbors.size();
         this.neighbors = neighbors;
-        
-        this.out = new ObjectOutputStream[numProc];
-        this.in = new ObjectInputStream[numProc];
-        
-        this.connector = Connector.getInstance();
+
+        this.inbox = new BlockingQueue[numProc];
+        for(int i = 0; i < numProc; i++){
+            inbox[i] = new LinkedBlockingQueue<>();
+        }
+    }
+
+    /**
+     * Deliver incoming messages to a handler instead of buffering them.
+     * Must be set before {@link #buildChannels(int)}.
+     * Handler is invoked on the transport's delivery thread, one message at
+     * a time, unless an executor has been set.
+     *
+     * @param handler
+     */
+    public void setMessageHandler(MessageHandler handler){
+        this.handler = handler;
+    }
+
+    /**
+     * Run the message handler on an executor instead of the transport's
+     * delivery thread, so handlers may block without stalling other
+     * channels. Messages of one channel are still handled one at a time and
+     * in order. Must be set before {@link #buildChannels(int)}.
+     *
+     * @param executor
+     */
+    public void setExecutor(Executor executor){
+        lanes = new SerialExecutor[numProc];
+        for(int i = 0; i < numProc; i++){
+            lanes[i] = new SerialExecutor(executor);
+        }
+    }
+
+    /**
+     * Stamp every message sent with the clock, and merge the stamps of
+     * messages received into it before they are handed on.
+     * Must be set before {@link #buildChannels(int)}, on every node.
+     *
+     * @param clock
+     */
+    public void setVectorClock(VectorClock clock){
+        this.clock = clock;
+    }
+
+    /**
+     * @return Clock given with {@link #setVectorClock(VectorClock)}, null if
+     *         none
+     */
+    public VectorClock getVectorClock(){
+        return clock;
+    }
+
+    /**
+     * Count messages and bytes per channel and per tag, and expose the
+     * outbound queue depths, in the registry.
+     * Must be set before {@link #buildChannels(int)}.
+     *
+     * @param registry
+     */
+    public void setMetrics(MetricsRegistry registry){
+        this.registry = registry;
+    }
+
+    /**
+     * Carry frames over the given transport instead of TCP.
+     * Must be set before {@link #buildChannels()}.
+     *
+     * @param transport
+     */
+    public void setTransport(Transport transport){
+        this.transport = transport;
+    }
+
+    /**
+     * Batching of outbound frames on TCP channels.
+     * Must be set before {@link #buildChannels(int)}.
+     *
+     * @param flushPolicy
+     */
+    public void setFlushPolicy(FlushPolicy flushPolicy){
+        this.flushPolicy = flushPolicy;
+    }
+
+    /**
+     * Backoff and readiness deadline of {@link #buildChannels(int)}.
+     *
+     * @param connectPolicy
+     */
+    public void setConnectPolicy(ConnectPolicy connectPolicy){
+        this.connectPolicy = connectPolicy;
+    }
+
+    /**
+     * @return Startup timing of the last {@link #buildChannels(int)}, null
+     *         for transports other than TCP
+     */
+    public ConnectStats getConnectStats(){
+        if(transport instanceof NioTransport)
+            return ((NioTransport)transport).getConnectStats();
+        if(transport instanceof ShmTransport)
+            return ((ShmTransport)transport).getConnectStats();
+        return null;
     }
-    
+
     /**
-     * Build bidirectional channels with all neighbors
+     * Build bidirectional TCP channels with all neighbors, unless another
+     * transport has been set
      * @param listenPort
-     * @throws InterruptedException 
-     * @throws IOException 
-     * @throws ClassNotFoundException 
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws ClassNotFoundException
      * @throws Exception
      */
     public void buildChannels(int listenPort) throws ClassNotFoundException, IOException, InterruptedException {
-        connector.connect(listenPort, myId, in, out, neighbors);
+        if(transport == null)
+            transport = new NioTransport(listenPort, codec, flushPolicy, connectPolicy);
+        buildChannels();
+    }
+
+    /**
+     * Build bidirectional channels with all neighbors over the transport
+     * given by {@link #setTransport(Transport)}
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void buildChannels() throws IOException, InterruptedException {
+        if(registry != null)
+            metrics = new LinkMetrics(registry, myId, neighbors, transport);
+        transport.open(myId, neighbors, new Receiver());
     }
-    
+
     /**
-     * Send one message to a destination neighbor
-     * 
+     * Send one message to a destination neighbor.
+     * Safe to call from any thread; each channel queues and flushes on its
+     * own, so a slow neighbor does not hold up sends to the others.
+     *
      * @param dstId Destination id
      * @param tag Message type
      * @param content Message body
-     * @throws IOException 
+     * @throws IOException
      */
-    public synchronized void sendMessage(int dstId, Tag tag, String content) throws IOException{
+    public void sendMessage(int dstId, Tag tag, String content) throws IOException{
         sendMessage(dstId, new Message(myId, dstId, tag, content));
     }
-    
-    public synchronized void sendMessage(int dstId, Message message) throws IOException{
+
+    public void sendMessage(int dstId, Message message) throws IOException{
         int dstIndex = idToIndex(dstId);
-        out[dstIndex].writeObject(message);
+        if(clock != null)
+            message.setClock(clock.send());
+        ByteBuffer frame = codec.encode(message);
+        if(metrics != null)
+            metrics.sent(dstIndex, message.getTag(), frame.remaining());
+        LOG.debug("[Node {}] [Send] {} to {}", myId, message, dstId);
+        transport.send(dstIndex, frame);
     }
-    
+
     /**
-     * Multicast to a group of destinations
-     * 
+     * Multicast to a group of destinations.
+     * The message is encoded once and the same frame bytes are queued on
+     * every member's channel; receivers fill in the destination themselves.
+     *
      * @param members The multicast group member
      * @param tag Message type
      * @param content Message body
      * @throws IOException
      */
     public void multicast(List<Node> members, Tag tag, String content) throws IOException{
+        if(members.isEmpty())
+            return;
+        Message message = new Message(myId, Message.NO_DESTINATION, tag, content);
+        if(clock != null)
+            message.setClock(clock.send());     // One send event for the whole group
+        ByteBuffer frame = codec.encode(message);
+        LOG.debug("[Node {}] [Multicast] {} to {} members", myId, message, members.size());
         for(Node member : members){
-            sendMessage(member.getNodeId(), tag, content);
+            int index = idToIndex(member.getNodeId());
+            if(metrics != null)
+                metrics.sent(index, tag, frame.remaining());
+            transport.send(index, frame.duplicate());
         }
     }
-        
+
     /**
-     * Listen to a particular neighbor
-     * 
+     * Listen to a particular neighbor.
+     * Only available when no message handler is registered.
+     *
      * @param fromId
      * @return
-     * @throws IOException
+     * @throws IOException Channel has been closed
      * @throws ClassNotFoundException
      */
     public Message receiveMessage(int fromId) throws IOException, ClassNotFoundException {
         int fromIndex = idToIndex(fromId);
-        Message msg = (Message)in[fromIndex].readObject();   // This will block if no message.
-        return msg;
+        try{
+            Message msg = inbox[fromIndex].take();   // This will block if no message.
+            if(msg == CLOSED){
+                inbox[fromIndex].add(CLOSED);        // Keep later readers failing too.
+                throw new EOFException(String.format("Channel %d closed", fromId));
+            }
+            return msg;
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
     }
-    
+
+    /**
+     * Decodes frames from the transport and hands messages on
+     */
+    private class Receiver implements Transport.FrameListener {
+        @Override
+        public void onFrame(int index, ByteBuffer payload) throws IOException {
+            int length = payload.remaining() + Frames.HEADER_LENGTH;
+            final Message msg = codec.decode(payload);     // Payload is only valid during this call.
+            if(metrics != null)
+                metrics.received(index, msg.getTag(), length);
+            msg.setDstId(myId);
+            LOG.debug("[Node {}] [Receive] {}", myId, msg);
+            if(clock != null && msg.getClock() != null)
+                clock.receive(msg.getClock());
+            final MessageHandler h = handler;
+            if(h == null){
+                inbox[index].add(msg);
+            } else if(lanes == null){
+                deliver(h, msg);
+            } else {
+                lanes[index].execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(h, msg);
+                    }
+                });
+            }
+        }
+
+        private void deliver(MessageHandler h, Message msg){
+            try{
+                h.handleMessage(msg, msg.getSrcId(), msg.getTag());
+            } catch (Exception e){
+                LOG.error("[Node {}] Handler failed on {}", myId, msg, e);
+            }
+        }
+
+        @Override
+        public void onClosed(int index, IOException cause) {
+            LOG.info("[Node {}] Channel {} Terminated. {}", myId, neighbors.get(index).getNodeId(), cause);
+            inbox[index].add(CLOSED);
+        }
+    }
+
+    public MessageCodec getCodec() {
+        return codec;
+    }
+
     public int getMyId() {
         return myId;
     }
@@ -108,15 +344,16 @@ public class Linker {
     public void setNeighbors(List<Node> neighbors) {
         this.neighbors = neighbors;
     }
-    
+
     private int idToIndex(int nodeId){
         return Collections.binarySearch(neighbors, new Node(nodeId));
     }
 
     public void close(){
-        connector.closeSockets();
+        if(transport != null)
+            transport.close();
     }
-    
+
     public int getNumProc(){
     	return this.numProc;
     }
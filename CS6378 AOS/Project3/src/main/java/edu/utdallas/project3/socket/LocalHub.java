@@ -0,0 +1,98 @@
+package edu.utdallas.project3.socket;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.utdallas.project3.server.Node;
+
+/**
+ * Rendezvous point of the {@link LocalTransport}s of one in-process cluster.
+ * Also counts every frame and byte moved through it, which gives the exact
+ * message complexity of a run.
+ */
+public class LocalHub {
+    private final ConcurrentMap<Integer, LocalTransport> members;
+    private final AtomicLong frames;
+    private final AtomicLong bytes;
+    private volatile boolean shutdown;
+
+    public LocalHub(){
+        this.members = new ConcurrentHashMap<>();
+        this.frames = new AtomicLong();
+        this.bytes = new AtomicLong();
+    }
+
+    void register(int nodeId, LocalTransport transport){
+        if(members.putIfAbsent(nodeId, transport) != null)
+            throw new IllegalStateException(String.format("Node %d already joined the hub", nodeId));
+        synchronized(this){
+            notifyAll();
+        }
+    }
+
+    void unregister(int nodeId, LocalTransport transport){
+        members.remove(nodeId, transport);
+    }
+
+    /**
+     * Wait until every neighbor has joined
+     *
+     * @return Transports of the neighbors, in neighbor order
+     * @throws InterruptedException
+     * @throws IllegalStateException Deadline passed
+     */
+    LocalTransport[] await(List<Node> neighbors, long timeout, TimeUnit unit) throws InterruptedException{
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        LocalTransport[] peers = new LocalTransport[neighbors.size()];
+        synchronized(this){
+            for(int i = 0; i < peers.length; i++){
+                while((peers[i] = members.get(neighbors.get(i).getNodeId())) == null){
+                    long wait = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if(wait <= 0)
+                        throw new IllegalStateException(String.format("Node %d never joined the hub", neighbors.get(i).getNodeId()));
+                    wait(wait);
+                }
+            }
+        }
+        return peers;
+    }
+
+    void count(int frameBytes){
+        frames.incrementAndGet();
+        bytes.addAndGet(frameBytes);
+    }
+
+    /**
+     * @return Frames sent through the hub so far
+     */
+    public long getFrameCount(){
+        return frames.get();
+    }
+
+    /**
+     * @return Bytes sent through the hub so far, headers included
+     */
+    public long getByteCount(){
+        return bytes.get();
+    }
+
+    /**
+     * The whole cluster is going down; members closing from now on do not
+     * report closed channels to each other.
+     */
+    public void shutdown(){
+        shutdown = true;
+    }
+
+    boolean isShutdown(){
+        return shutdown;
+    }
+
+    public void resetCounters(){
+        frames.set(0);
+        bytes.set(0);
+    }
+}
@@ -0,0 +1,179 @@
+package edu.utdallas.project3.socket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.tools.MpscQueue;
+
+/**
+ * In-memory transport for running many nodes inside one JVM.
+ *
+ * Each directed pair of nodes shares one {@link MpscQueue} of frames, owned
+ * by the receiver. Frames are handed over by reference, so there is no
+ * copying and no socket on the path. Any number of threads may send to the
+ * same neighbor at once, each with one atomic swap and no lock; one
+ * delivery thread per node is the single consumer of all its queues and
+ * parks while they are empty.
+ */
+public class LocalTransport implements Transport {
+    /**
+     * Marks the end of a channel in its queue
+     */
+    private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+    private static final int SPINS_BEFORE_PARK = 64;
+
+    private final LocalHub hub;
+    private final long timeout;
+    private int myId;
+    private List<Node> neighbors;
+    private MpscQueue<ByteBuffer>[] inbound;      // Indexed by neighbor
+    private LocalTransport[] peers;
+    private int[] indexAtPeer;                     // My index in each peer's neighbor list
+    private FrameListener listener;
+    private Thread deliverer;
+    private final AtomicBoolean sleeping;
+    private volatile boolean running;
+
+    /**
+     * @param hub Shared by every node of the cluster
+     * @param timeout Milliseconds to wait for the neighbors to join
+     */
+    public LocalTransport(LocalHub hub, long timeout){
+        this.hub = hub;
+        this.timeout = timeout;
+        this.sleeping = new AtomicBoolean();
+    }
+
+    public LocalTransport(LocalHub hub){
+        this(hub, ConnectPolicy.DEFAULT_DEADLINE);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void open(int myId, List<Node> neighbors, FrameListener listener) throws IOException, InterruptedException {
+        this.myId = myId;
+        this.neighbors = neighbors;
+        this.listener = listener;
+        int numProc = neighbors.size();
+        inbound = new MpscQueue[numProc];
+        for(int i = 0; i < numProc; i++){
+            inbound[i] = new MpscQueue<>();
+        }
+        running = true;
+        deliverer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                deliver();
+            }
+        }, String.format("local-%d-deliver", myId));
+        deliverer.setDaemon(true);
+
+        hub.register(myId, this);
+        boolean opened = false;
+        try{
+            peers = hub.await(neighbors, timeout, TimeUnit.MILLISECONDS);
+            indexAtPeer = new int[numProc];
+            for(int i = 0; i < numProc; i++){
+                indexAtPeer[i] = peers[i].indexOf(myId);
+                if(indexAtPeer[i] < 0)
+                    throw new IOException(String.format("[Node %d] Node %d does not list me as neighbor", myId, peers[i].myId));
+            }
+            deliverer.start();
+            opened = true;
+        } catch (IllegalStateException e){
+            throw new IOException(String.format("[Node %d] %s", myId, e.getMessage()), e);
+        } finally {
+            if(!opened){
+                // Leave the hub so a retry, or another transport, can take the id
+                running = false;
+                hub.unregister(myId, this);
+            }
+        }
+    }
+
+    @Override
+    public void send(int index, ByteBuffer frame) throws IOException {
+        LocalTransport peer = peers[index];
+        if(!running || !peer.running)
+            throw new ClosedChannelException();
+        peer.inbound[indexAtPeer[index]].offer(frame);
+        hub.count(frame.remaining());
+        peer.wakeUp();                  // Only once the offer returned, see MpscQueue
+    }
+
+    private void wakeUp(){
+        if(sleeping.get())
+            LockSupport.unpark(deliverer);
+    }
+
+    /**
+     * Delivery thread: drain every inbound queue round robin, park when idle
+     */
+    private void deliver(){
+        int idle = 0;
+        while(running){
+            boolean delivered = false;
+            for(int i = 0; i < inbound.length; i++){
+                ByteBuffer frame = inbound[i].poll();
+                if(frame == null)
+                    continue;
+                delivered = true;
+                if(frame == CLOSED){
+                    listener.onClosed(i, new EOFException("Peer closed"));
+                    continue;
+                }
+                ByteBuffer payload = frame.duplicate();
+                payload.position(payload.position() + Frames.HEADER_LENGTH);
+                try{
+                    listener.onFrame(i, payload);
+                } catch (IOException e){
+                    listener.onClosed(i, e);
+                }
+            }
+            if(delivered){
+                idle = 0;
+            } else if(++idle < SPINS_BEFORE_PARK){
+                Thread.yield();
+            } else {
+                sleeping.set(true);
+                if(allEmpty())
+                    LockSupport.park(this);
+                sleeping.set(false);
+            }
+        }
+    }
+
+    private boolean allEmpty(){
+        for(MpscQueue<ByteBuffer> queue : inbound){
+            if(!queue.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    private int indexOf(int nodeId){
+        return Collections.binarySearch(neighbors, new Node(nodeId));
+    }
+
+    @Override
+    public void close() {
+        if(!running)
+            return;
+        running = false;
+        hub.unregister(myId, this);
+        for(int i = 0; peers != null && !hub.isShutdown() && i < peers.length; i++){
+            peers[i].inbound[indexAtPeer[i]].offer(CLOSED);
+            peers[i].wakeUp();
+        }
+        LockSupport.unpark(deliverer);
+    }
+}
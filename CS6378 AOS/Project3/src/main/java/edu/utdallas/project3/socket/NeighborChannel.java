@@ -0,0 +1,215 @@
+package edu.utdallas.project3.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Non-blocking channel to one neighbor.
+ *
+ * Senders only append to a lock-free queue; whoever finds the channel idle
+ * becomes its flusher and drains the queue with gathering writes, so frames
+ * that pile up during a flush leave together in one system call. If the
+ * socket fills up, the flusher role passes to the event loop until the
+ * socket turns writable again. Other channels are never held up.
+ */
+class NeighborChannel {
+    private static final Logger LOG = LogManager.getLogger(NeighborChannel.class);
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+
+    private final int index;            // Position in the sorted neighbor list
+    private final int nodeId;
+    private final SocketChannel socket;
+    private final FlushPolicy policy;
+    private EventLoop loop;
+    private SelectionKey key;
+
+    /**
+     * Frames waiting for a flush, and their count
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> queue;
+    private final AtomicInteger queued;
+
+    /**
+     * Set while one thread owns the write side
+     */
+    private final AtomicBoolean flushing;
+
+    /**
+     * Frames of the current gathering write, [batchStart, batchEnd) still
+     * have bytes left. Only touched by the flusher.
+     */
+    private final ByteBuffer[] batch;
+    private int batchStart, batchEnd;
+
+    /**
+     * Bytes received but not yet framed. Only touched by the event loop.
+     */
+    private ByteBuffer readBuffer;
+
+    NeighborChannel(int index, int nodeId, SocketChannel socket, FlushPolicy policy){
+        this.index = index;
+        this.nodeId = nodeId;
+        this.socket = socket;
+        this.policy = policy;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.flushing = new AtomicBoolean();
+        this.batch = new ByteBuffer[policy.getMaxBatch()];
+        this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    }
+
+    int getIndex(){
+        return index;
+    }
+
+    int getNodeId(){
+        return nodeId;
+    }
+
+    SocketChannel getSocket(){
+        return socket;
+    }
+
+    void attach(EventLoop loop, SelectionKey key){
+        this.loop = loop;
+        this.key = key;
+    }
+
+    /**
+     * Send one frame. Never blocks on a slow receiver.
+     *
+     * @param frame
+     * @throws IOException Channel has been closed
+     */
+    void write(ByteBuffer frame) throws IOException{
+        if(!socket.isOpen())
+            throw new ClosedChannelException();
+        queue.add(frame);
+        int n = queued.incrementAndGet();
+        if(policy.getMaxDelay() == 0 || n >= policy.getMaxBatch()){
+            tryFlush();
+        } else if(n == 1){
+            loop.scheduleFlush(this, policy.getMaxDelay());
+        }
+    }
+
+    /**
+     * Drain the queue unless another thread is already doing it.
+     */
+    void tryFlush() throws IOException{
+        while(flushing.compareAndSet(false, true)){
+            if(!drain())
+                return;                 // Socket full, event loop takes over.
+            flushing.set(false);
+            if(queued.get() == 0)
+                return;                 // Otherwise a frame slipped in after the drain.
+        }
+    }
+
+    /**
+     * Resume a flush stopped by a full socket.
+     * Called by the event loop when the socket is writable.
+     */
+    void flush() throws IOException{
+        if(!drain())
+            return;
+        key.interestOps(SelectionKey.OP_READ);
+        flushing.set(false);
+        if(queued.get() > 0)
+            tryFlush();
+    }
+
+    /**
+     * Write queued frames, a batch at a time.
+     *
+     * @return true if the queue is empty, false if the socket is full
+     */
+    private boolean drain() throws IOException{
+        while(true){
+            if(batchStart == batchEnd){
+                batchStart = batchEnd = 0;
+                ByteBuffer frame;
+                while(batchEnd < batch.length && (frame = queue.poll()) != null){
+                    batch[batchEnd++] = frame;
+                }
+                if(batchEnd == 0)
+                    return true;
+                queued.addAndGet(-batchEnd);
+            }
+            socket.write(batch, batchStart, batchEnd - batchStart);
+            while(batchStart < batchEnd && !batch[batchStart].hasRemaining()){
+                batch[batchStart++] = null;
+            }
+            if(batchStart < batchEnd){
+                loop.setInterest(key, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Read whatever is available into the read buffer.
+     *
+     * @return Buffer in read mode holding every unframed byte; caller must
+     *         hand it back through {@link #compact(int)}.
+     * @throws IOException
+     */
+    ByteBuffer read() throws IOException{
+        if(!readBuffer.hasRemaining()){
+            grow(readBuffer.capacity() * 2);
+        }
+        int n = socket.read(readBuffer);
+        if(n < 0)
+            return null;
+        readBuffer.flip();
+        return readBuffer;
+    }
+
+    /**
+     * Keep the incomplete tail after framing and make room for a frame of
+     * the given length if the buffer is too small.
+     */
+    void compact(int nextFrameLength){
+        readBuffer.compact();
+        int required = nextFrameLength + Frames.HEADER_LENGTH;
+        if(nextFrameLength > 0 && readBuffer.capacity() < required){
+            grow(required);
+        }
+    }
+
+    private void grow(int capacity){
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        readBuffer.flip();
+        bigger.put(readBuffer);
+        readBuffer = bigger;
+    }
+
+    void close(){
+        try{
+            socket.close();
+        } catch (IOException e){
+            LOG.warn("Cannot close channel to node {}", nodeId, e);
+        }
+    }
+
+    /**
+     * @return Frames written but not yet sent
+     */
+    int getQueued(){
+        return queued.get();
+    }
+
+    @Override
+    public String toString(){
+        return String.format("[channel %d] [node %d]", index, nodeId);
+    }
+}
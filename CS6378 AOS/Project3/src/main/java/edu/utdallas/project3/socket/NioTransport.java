@@ -0,0 +1,71 @@
+package edu.utdallas.project3.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+import edu.utdallas.project3.codec.MessageCodec;
+import edu.utdallas.project3.server.Node;
+
+/**
+ * TCP transport. Channels are set up by the {@link Connector} and then
+ * multiplexed by one {@link EventLoop} thread.
+ */
+public class NioTransport implements Transport {
+    private final int listenPort;
+    private final MessageCodec codec;       // Only for the handshake
+    private final FlushPolicy flushPolicy;
+    private final ConnectPolicy connectPolicy;
+    private final Connector connector;
+    private NeighborChannel[] channels;
+    private EventLoop eventLoop;
+
+    public NioTransport(int listenPort, MessageCodec codec, FlushPolicy flushPolicy, ConnectPolicy connectPolicy){
+        this.listenPort = listenPort;
+        this.codec = codec;
+        this.flushPolicy = flushPolicy;
+        this.connectPolicy = connectPolicy;
+        this.connector = new Connector();        // Own sockets, so nodes may share a JVM
+    }
+
+    @Override
+    public void open(int myId, List<Node> neighbors, FrameListener listener) throws IOException, InterruptedException {
+        int numProc = neighbors.size();
+        SocketChannel[] sockets = new SocketChannel[numProc];
+        connector.connect(listenPort, myId, sockets, neighbors, codec, connectPolicy);
+
+        channels = new NeighborChannel[numProc];
+        for(int i = 0; i < numProc; i++){
+            sockets[i].configureBlocking(false);
+            channels[i] = new NeighborChannel(i, neighbors.get(i).getNodeId(), sockets[i], flushPolicy);
+        }
+        eventLoop = new EventLoop(myId, listener);
+        eventLoop.start(channels);
+    }
+
+    @Override
+    public void send(int index, ByteBuffer frame) throws IOException {
+        channels[index].write(frame);
+    }
+
+    @Override
+    public int getQueueDepth(int index){
+        NeighborChannel[] open = channels;
+        return open == null ? 0 : open[index].getQueued();
+    }
+
+    /**
+     * @return Startup timing of the last {@link #open}
+     */
+    public ConnectStats getConnectStats(){
+        return connector.getStats();
+    }
+
+    @Override
+    public void close() {
+        if(eventLoop != null)
+            eventLoop.shutdown();
+        connector.closeSockets();
+    }
+}
@@ -0,0 +1,96 @@
+package edu.utdallas.project3.socket;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Volatile loads and ordered stores of longs at raw addresses, e.g. inside
+ * a memory-mapped file shared with another process. Java 8 has no public
+ * API for this, so it goes through sun.misc.Unsafe, the only access to it
+ * in the code base.
+ *
+ * Unsafe is looked up by name and called through method handles, which the
+ * JIT inlines like direct calls, so no source file references the internal
+ * class and javac stays warning free. Where Unsafe is missing or closed,
+ * {@link #isSupported()} is false and nothing else may be called.
+ */
+final class OrderedMemory {
+    private static final MethodHandle GET_LONG;             // (Object, long)long
+    private static final MethodHandle GET_LONG_VOLATILE;    // (Object, long)long
+    private static final MethodHandle PUT_ORDERED_LONG;     // (Object, long, long)void
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        MethodHandle getLong = null;
+        MethodHandle getLongVolatile = null;
+        MethodHandle putOrderedLong = null;
+        long addressOffset = -1;
+        try{
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodType load = MethodType.methodType(long.class, Object.class, long.class);
+            getLong = lookup.findVirtual(type, "getLong", load).bindTo(unsafe);
+            getLongVolatile = lookup.findVirtual(type, "getLongVolatile", load).bindTo(unsafe);
+            putOrderedLong = lookup.findVirtual(type, "putOrderedLong",
+                    MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+            addressOffset = (long)lookup.findVirtual(type, "objectFieldOffset",
+                    MethodType.methodType(long.class, Field.class)).bindTo(unsafe)
+                    .invoke(Buffer.class.getDeclaredField("address"));
+        } catch (Throwable e){
+            getLong = null;
+        }
+        GET_LONG = getLong;
+        GET_LONG_VOLATILE = getLongVolatile;
+        PUT_ORDERED_LONG = putOrderedLong;
+        ADDRESS_OFFSET = addressOffset;
+    }
+
+    private OrderedMemory(){
+    }
+
+    static boolean isSupported(){
+        return GET_LONG != null;
+    }
+
+    /**
+     * @param buffer Direct or mapped
+     * @return Address of the buffer's first byte, valid while it is reachable
+     */
+    static long address(ByteBuffer buffer){
+        try{
+            return (long)GET_LONG.invokeExact((Object)buffer, ADDRESS_OFFSET);
+        } catch (Throwable e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Load that sees everything stored before the matching ordered store
+     */
+    static long getLongVolatile(long address){
+        try{
+            return (long)GET_LONG_VOLATILE.invokeExact((Object)null, address);
+        } catch (Throwable e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Store that is not reordered with the stores before it, without the
+     * cost of a full fence
+     */
+    static void putOrderedLong(long address, long value){
+        try{
+            PUT_ORDERED_LONG.invokeExact((Object)null, address, value);
+        } catch (Throwable e){
+            throw new IllegalStateException(e);
+        }
+    }
+}
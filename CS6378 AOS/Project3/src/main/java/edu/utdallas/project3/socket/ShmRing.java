@@ -0,0 +1,185 @@
+package edu.utdallas.project3.socket;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Single-producer/single-consumer ring of frames in a memory-mapped file,
+ * shared by two processes on the same host.
+ *
+ * <pre>
+ * offset   0  magic:int64  capacity:int64
+ * offset  64  tail:int64   (next byte the producer writes)
+ * offset 128  head:int64   (next byte the consumer reads)
+ * offset 192  data[capacity]
+ * </pre>
+ * Head and tail only grow and are in native byte order; they sit on their
+ * own cache lines and are published with ordered stores through
+ * {@link OrderedMemory}, so the data written before a tail update is
+ * visible to the consumer that reads it. A record is a frame as it is
+ * sent, the 4-byte payload length followed by the payload, padded to 4
+ * bytes. A record never wraps: a length of -1 tells the consumer to skip
+ * to the start of the data area.
+ */
+class ShmRing {
+    private static final long MAGIC = 0x50334d5452494e47L;     // "P3MTRING"
+    private static final int CAPACITY_OFFSET = 8;
+    static final int TAIL_OFFSET = 64;
+    static final int HEAD_OFFSET = 128;
+    static final int DATA_OFFSET = 192;
+    static final int WRAP = -1;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final long tailAddress;
+    private final long headAddress;
+    private long position;          // Producer: local tail. Consumer: local head.
+
+    private ShmRing(Path file, MappedByteBuffer buffer, int capacity){
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        long base = OrderedMemory.address(buffer);
+        this.tailAddress = base + TAIL_OFFSET;
+        this.headAddress = base + HEAD_OFFSET;
+    }
+
+    /**
+     * @return Whether rings can be used on this JVM
+     */
+    static boolean isSupported(){
+        return OrderedMemory.isSupported();
+    }
+
+    /**
+     * Create an empty ring as consumer. The file appears atomically, so a
+     * producer never maps a half initialized ring.
+     *
+     * @param capacity Data bytes, power of two
+     */
+    static ShmRing create(Path file, int capacity) throws IOException{
+        if(Integer.bitCount(capacity) != 1 || capacity < 1024)
+            throw new IllegalArgumentException(String.format("Ring capacity %d must be a power of two of at least 1024", capacity));
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        MappedByteBuffer buffer = map(temp, DATA_OFFSET + capacity, true);
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(TAIL_OFFSET, 0);
+        buffer.putLong(HEAD_OFFSET, 0);
+        buffer.putLong(0, MAGIC);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return new ShmRing(file, buffer, capacity);
+    }
+
+    /**
+     * Attach to a ring created by the consumer
+     *
+     * @return null if the consumer has not created it yet
+     */
+    static ShmRing attach(Path file) throws IOException{
+        if(!Files.exists(file))
+            return null;
+        MappedByteBuffer buffer = map(file, (int)Files.size(file), false);
+        if(buffer.getLong(0) != MAGIC)
+            throw new IOException(String.format("%s is not a ring", file));
+        int capacity = (int)buffer.getLong(CAPACITY_OFFSET);
+        ShmRing ring = new ShmRing(file, buffer, capacity);
+        ring.position = OrderedMemory.getLongVolatile(ring.tailAddress);
+        return ring;
+    }
+
+    private static MappedByteBuffer map(Path file, int size, boolean create) throws IOException{
+        try(RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+                FileChannel channel = raf.getChannel()){
+            if(create)
+                raf.setLength(size);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Producer only. Copy one frame into the ring.
+     *
+     * @param frame Whole frame with length header, position is not changed
+     * @return false if the ring is too full right now
+     * @throws IOException Frame can never fit
+     */
+    boolean offer(ByteBuffer frame) throws IOException{
+        checkFits(frame);
+        int length = frame.remaining();
+        int need = align(length);
+
+        long head = OrderedMemory.getLongVolatile(headAddress);
+        int offset = (int)(position & mask);
+        int toEnd = capacity - offset;
+        int total = toEnd < need ? toEnd + need : need;
+        if(capacity - (position - head) < total)
+            return false;
+
+        if(toEnd < need){
+            buffer.putInt(DATA_OFFSET + offset, WRAP);
+            position += toEnd;
+            offset = 0;
+        }
+        ByteBuffer target = buffer.duplicate();
+        target.position(DATA_OFFSET + offset);
+        target.put(frame.duplicate());
+        position += need;
+        OrderedMemory.putOrderedLong(tailAddress, position);
+        return true;
+    }
+
+    /**
+     * @param frame Whole frame with length header
+     * @throws IOException Frame can never fit
+     */
+    void checkFits(ByteBuffer frame) throws IOException{
+        int length = frame.remaining();
+        if(align(length) > capacity)
+            throw new IOException(String.format("Frame of %d bytes exceeds ring capacity %d", length, capacity));
+    }
+
+    /**
+     * Consumer only. Hand every available frame to the listener.
+     *
+     * @return Number of frames delivered
+     */
+    int drain(int index, Transport.FrameListener listener) throws IOException{
+        long tail = OrderedMemory.getLongVolatile(tailAddress);
+        long start = position;
+        int delivered = 0;
+        while(position < tail){
+            int offset = (int)(position & mask);
+            int length = buffer.getInt(DATA_OFFSET + offset);
+            if(length == WRAP){
+                position += capacity - offset;
+                continue;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            int from = DATA_OFFSET + offset + Frames.HEADER_LENGTH;
+            payload.limit(from + length).position(from);
+            listener.onFrame(index, payload);
+            position += align(Frames.HEADER_LENGTH + length);
+            delivered++;
+        }
+        if(position != start)
+            OrderedMemory.putOrderedLong(headAddress, position);
+        return delivered;
+    }
+
+    private static int align(int length){
+        return (length + 3) & ~3;
+    }
+
+    Path getFile(){
+        return file;
+    }
+}
@@ -0,0 +1,266 @@
+package edu.utdallas.project3.socket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.utdallas.project3.server.Node;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Shared-memory transport for neighbors on the same host, TCP for the rest.
+ *
+ * TCP channels to every neighbor are built first by the wrapped transport.
+ * That doubles as a barrier: once a neighbor is connected it has already
+ * wiped its stale ring files. Then each node creates one {@link ShmRing}
+ * per co-located neighbor to receive on, and attaches to the ring that
+ * neighbor created for it to send on. From then on frames to co-located
+ * neighbors only go through the rings, so every channel stays FIFO.
+ *
+ * One thread per node polls the inbound rings and retries frames that did
+ * not fit into a full outbound ring. A full ring never blocks a sender, so
+ * two nodes sending to each other can not deadlock. The two directions of
+ * a channel fail independently: a broken inbound ring is reported to the
+ * listener and no longer polled, a broken outbound ring drops its backlog
+ * and makes later sends fail.
+ */
+public class ShmTransport implements Transport {
+    private static final Logger LOG = LogManager.getLogger(ShmTransport.class);
+    /**
+     * Busy spinning only pays off when the sender has a core of its own
+     */
+    private static final int SPINS_BEFORE_YIELD =
+            Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+    private static final int YIELDS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final NioTransport tcp;
+    private final Path directory;
+    private final String prefix;
+    private final int capacity;
+    private final long attachTimeout;
+
+    private int myId;
+    private FrameListener listener;
+    private ShmRing[] inbound;                  // Indexed by neighbor, null if remote
+    private ShmRing[] outbound;
+    private ArrayDeque<ByteBuffer>[] backlog;   // Frames waiting for room in outbound rings
+    private boolean[] closed;                   // Outbound ring failed, guarded by its backlog
+    private Thread poller;
+    private volatile boolean running;
+
+    /**
+     * @param tcp Transport for remote neighbors and for the setup barrier
+     * @param directory Where ring files live, ideally a tmpfs like /dev/shm
+     * @param prefix Names ring files, must be unique per cluster on the host
+     * @param capacity Data bytes per ring, power of two
+     * @param attachTimeout Milliseconds to wait for a neighbor's ring
+     */
+    public ShmTransport(NioTransport tcp, Path directory, String prefix, int capacity, long attachTimeout){
+        this.tcp = tcp;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.capacity = capacity;
+        this.attachTimeout = attachTimeout;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void open(int myId, List<Node> neighbors, FrameListener listener) throws IOException, InterruptedException {
+        this.myId = myId;
+        this.listener = listener;
+        int numProc = neighbors.size();
+        inbound = new ShmRing[numProc];
+        outbound = new ShmRing[numProc];
+        backlog = new ArrayDeque[numProc];
+        closed = new boolean[numProc];
+
+        deleteRings();
+        tcp.open(myId, neighbors, listener);
+        if(!ShmRing.isSupported()){
+            LOG.warn("[Node {}] [SHM] Memory mapped rings unsupported on this JVM, use TCP only", myId);
+            return;
+        }
+
+        int numLocal = 0;
+        for(int i = 0; i < numProc; i++){
+            if(isLocal(neighbors.get(i).getHostName())){
+                inbound[i] = ShmRing.create(ringFile(neighbors.get(i).getNodeId(), myId), capacity);
+                backlog[i] = new ArrayDeque<>();
+                numLocal++;
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(attachTimeout);
+        for(int i = 0; i < numProc; i++){
+            if(inbound[i] == null)
+                continue;
+            Path file = ringFile(myId, neighbors.get(i).getNodeId());
+            while((outbound[i] = ShmRing.attach(file)) == null){
+                if(System.nanoTime() - deadline > 0)
+                    throw new IOException(String.format("[Node %d] [SHM] %s never appeared", myId, file));
+                Thread.sleep(1);
+            }
+        }
+
+        running = true;
+        poller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, String.format("shm-%d-poll", myId));
+        poller.setDaemon(true);
+        poller.start();
+        LOG.info("[Node {}] [SHM] {} of {} channels on shared memory in {}", myId, numLocal, numProc, directory);
+    }
+
+    @Override
+    public void send(int index, ByteBuffer frame) throws IOException {
+        ShmRing ring = outbound[index];
+        if(ring == null){
+            tcp.send(index, frame);
+            return;
+        }
+        if(!running)
+            throw new IOException("Shared memory transport closed");
+        ring.checkFits(frame);                  // Never queue what can not be flushed
+        ArrayDeque<ByteBuffer> pending = backlog[index];
+        synchronized(pending){
+            if(closed[index])
+                throw new ClosedChannelException();
+            if(pending.isEmpty() && ring.offer(frame))
+                return;
+            pending.addLast(frame);
+        }
+    }
+
+    @Override
+    public int getQueueDepth(int index){
+        if(outbound == null)
+            return 0;
+        if(outbound[index] == null)
+            return tcp.getQueueDepth(index);
+        ArrayDeque<ByteBuffer> pending = backlog[index];
+        synchronized(pending){
+            return pending.size();
+        }
+    }
+
+    /**
+     * Poller thread: deliver inbound frames, push backlog to outbound rings.
+     * Spins while busy, then backs off to yielding and short parks.
+     */
+    private void poll(){
+        int idle = 0;
+        while(running){
+            int work = 0;
+            for(int i = 0; i < inbound.length; i++){
+                if(inbound[i] != null){
+                    try{
+                        work += inbound[i].drain(i, listener);
+                    } catch (IOException e){
+                        inbound[i] = null;
+                        listener.onClosed(i, e);
+                    }
+                }
+                if(outbound[i] != null)
+                    work += flushBacklog(i);
+            }
+            if(work > 0){
+                idle = 0;
+            } else if(++idle > SPINS_BEFORE_YIELD + YIELDS_BEFORE_PARK){
+                LockSupport.parkNanos(this, PARK_NANOS);
+            } else if(idle > SPINS_BEFORE_YIELD){
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Push queued frames into the outbound ring while there is room. On
+     * failure the backlog is dropped and the channel closed for sending.
+     */
+    private int flushBacklog(int index){
+        ArrayDeque<ByteBuffer> pending = backlog[index];
+        int flushed = 0;
+        synchronized(pending){
+            try{
+                ByteBuffer frame;
+                while((frame = pending.peekFirst()) != null && outbound[index].offer(frame)){
+                    pending.pollFirst();
+                    flushed++;
+                }
+            } catch (IOException e){
+                LOG.error("[Node {}] [SHM] Channel {} closed for sending, {} frames dropped",
+                        myId, index, pending.size(), e);
+                closed[index] = true;
+                pending.clear();
+            }
+        }
+        return flushed;
+    }
+
+    /**
+     * @return Whether a host name resolves to this machine
+     */
+    static boolean isLocal(String hostName){
+        if(hostName == null)
+            return false;
+        try{
+            InetAddress address = InetAddress.getByName(hostName);
+            return address.isLoopbackAddress() || NetworkInterface.getByInetAddress(address) != null;
+        } catch (UnknownHostException e){
+            return false;
+        } catch (IOException e){
+            return false;
+        }
+    }
+
+    private Path ringFile(int src, int dst){
+        return directory.resolve(String.format("%s-%d-%d.ring", prefix, src, dst));
+    }
+
+    /**
+     * Remove every ring this node receives on, left over from earlier runs
+     */
+    private void deleteRings() throws IOException{
+        Files.createDirectories(directory);
+        try(DirectoryStream<Path> stale = Files.newDirectoryStream(directory, String.format("%s-*-%d.ring*", prefix, myId))){
+            for(Path file : stale){
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * @return Startup timing of the TCP channels
+     */
+    public ConnectStats getConnectStats(){
+        return tcp.getConnectStats();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if(poller != null)
+            LockSupport.unpark(poller);
+        try{
+            deleteRings();
+        } catch (IOException e){
+            LOG.warn("[Node {}] [SHM] Cannot delete rings", myId, e);
+        }
+        tcp.close();
+    }
+}
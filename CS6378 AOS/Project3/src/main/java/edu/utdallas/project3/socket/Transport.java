@@ -0,0 +1,72 @@
+package edu.utdallas.project3.socket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import edu.utdallas.project3.server.Node;
+
+/**
+ * Moves encoded frames between a node and its neighbors.
+ *
+ * Channels are addressed by the neighbor's position in the sorted neighbor
+ * list. Every channel must be FIFO. {@link Linker} does the encoding and
+ * decoding, a transport only carries bytes.
+ */
+public interface Transport {
+
+    /**
+     * Receives frames from a transport
+     */
+    interface FrameListener {
+        /**
+         * One complete frame arrived.
+         *
+         * @param index Channel the frame came from
+         * @param payload Frame without its length header, only valid during the call
+         */
+        void onFrame(int index, ByteBuffer payload) throws IOException;
+
+        /**
+         * A channel hit end of stream or failed. No frames follow on it.
+         */
+        void onClosed(int index, IOException cause);
+    }
+
+    /**
+     * Connect to every neighbor and start delivering frames.
+     * Returns once every channel is up.
+     *
+     * @param myId
+     * @param neighbors Sorted list of neighbors
+     * @param listener
+     */
+    void open(int myId, List<Node> neighbors, FrameListener listener) throws IOException, InterruptedException;
+
+    /**
+     * Queue one frame on a channel. Safe to call from any thread.
+     *
+     * @param index Channel to send on
+     * @param frame Whole frame including the length header. The transport
+     *        owns the buffer's position from now on but must not change its
+     *        content, so duplicates of one buffer can go to many channels.
+     * @throws IOException Channel has been closed
+     */
+    void send(int index, ByteBuffer frame) throws IOException;
+
+    /**
+     * Frames queued on a channel and not yet handed to the operating
+     * system or the peer. A snapshot for monitoring, safe from any thread.
+     *
+     * @param index Channel
+     * @return Zero if the transport keeps no outbound queue
+     */
+    default int getQueueDepth(int index){
+        return 0;
+    }
+
+    /**
+     * Close every channel
+     */
+    void close();
+}
@@ -1,5 +1,6 @@
 package edu.utdallas.project3.tools;
 
+import java.io.IOException;
 
 /**
  * Interface which all configuration filer loader class need to implement.
@@ -7,6 +8,6 @@ package edu.utdallas.project3.tools;
  *
  */
 public interface ConfigurationLoader {
-    void loadConfig(String relativePath, int myId);
-    void loadConfigFromAbs(String absolutePath, int myId);
+    void loadConfig(String relativePath, int myId) throws IOException;
+    void loadConfigFromAbs(String absolutePath, int myId) throws IOException;
 }
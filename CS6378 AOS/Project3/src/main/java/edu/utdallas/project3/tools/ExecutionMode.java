@@ -0,0 +1,120 @@
+package edu.utdallas.project3.tools;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Where message handlers and other node tasks run.
+ *
+ * With {@link #INLINE} handlers run on the transport's delivery thread, which
+ * is cheapest as long as handlers never block. The other modes hand messages
+ * to an executor, one serial lane per channel so each channel stays FIFO.
+ */
+public enum ExecutionMode {
+    /**
+     * On the transport's delivery thread, no executor
+     */
+    INLINE,
+
+    /**
+     * Fixed pool of platform threads
+     */
+    FIXED,
+
+    /**
+     * Platform threads created on demand and reused while busy
+     */
+    CACHED,
+
+    /**
+     * One virtual thread per task. Needs Java 21; older runtimes fall back
+     * to {@link #CACHED}.
+     */
+    VIRTUAL;
+
+    private static final Logger LOG = LogManager.getLogger(ExecutionMode.class);
+    private static final Method NEW_VIRTUAL_EXECUTOR = lookupVirtualExecutor();
+
+    /**
+     * @param name Case-insensitive mode name
+     * @throws IllegalArgumentException Unknown name
+     */
+    public static ExecutionMode forName(String name){
+        for(ExecutionMode mode : values()){
+            if(mode.name().equalsIgnoreCase(name))
+                return mode;
+        }
+        throw new IllegalArgumentException(String.format("Unknown execution mode '%s'", name));
+    }
+
+    /**
+     * @return Whether this runtime has virtual threads
+     */
+    public static boolean isVirtualSupported(){
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Create the executor of this mode
+     *
+     * @param name Thread name prefix
+     * @param threads Pool size of {@link #FIXED}, ignored otherwise
+     * @return A new executor, null for {@link #INLINE}
+     */
+    public ExecutorService newExecutor(String name, int threads){
+        switch(this){
+        case FIXED:
+            return Executors.newFixedThreadPool(threads, new NamedThreadFactory(name));
+        case CACHED:
+            return Executors.newCachedThreadPool(new NamedThreadFactory(name));
+        case VIRTUAL:
+            if(NEW_VIRTUAL_EXECUTOR != null){
+                try{
+                    return (ExecutorService)NEW_VIRTUAL_EXECUTOR.invoke(null);
+                } catch (ReflectiveOperationException e){
+                    LOG.warn("[{}] Cannot create virtual threads", name, e);
+                }
+            }
+            LOG.info("[{}] Virtual threads unavailable on Java {}, using {}",
+                    name, System.getProperty("java.version"), CACHED);
+            return CACHED.newExecutor(name, threads);
+        default:
+            return null;
+        }
+    }
+
+    private static Method lookupVirtualExecutor(){
+        try{
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e){
+            return null;
+        }
+    }
+
+    /**
+     * Daemon threads named after their node, so a stuck pool never keeps
+     * the JVM alive
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count;
+
+        NamedThreadFactory(String name){
+            this.name = name;
+            this.count = new AtomicInteger();
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, String.format("%s-%d", name, count.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package edu.utdallas.project3.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of non-negative long values, e.g. latencies in nanoseconds,
+ * in log-linear buckets like HdrHistogram.
+ *
+ * Values below 2^(subBits + 1) get a bucket each; above, every power of two
+ * is split into 2^subBits buckets, so a value is off by less than
+ * 1/2^subBits relative to what was recorded, at any magnitude. The whole
+ * long range fits in a fixed array; recording is a few shifts, three
+ * atomic adds for bucket, count and sum, and reads of the minimum and
+ * maximum that only CAS when the value extends them. Safe from any thread.
+ */
+public class Histogram {
+    /**
+     * Under 1% error, 7296 buckets
+     */
+    public static final int DEFAULT_SUB_BITS = 7;
+
+    private final int subBits;
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong min;
+    private final AtomicLong max;
+
+    public Histogram(){
+        this(DEFAULT_SUB_BITS);
+    }
+
+    /**
+     * @param subBits Precision, buckets per power of two as a power of two
+     */
+    public Histogram(int subBits){
+        if(subBits < 1 || subBits > 16)
+            throw new IllegalArgumentException("Sub-bucket bits out of range: " + subBits);
+        this.subBits = subBits;
+        this.counts = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.min = new AtomicLong(Long.MAX_VALUE);
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * @param value Negative values count as 0
+     */
+    public void record(long value){
+        value = Math.max(0, value);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long low;
+        while(value < (low = min.get()) && !min.compareAndSet(low, value))
+            ;
+        long high;
+        while(value > (high = max.get()) && !max.compareAndSet(high, value))
+            ;
+    }
+
+    /**
+     * Add the values of another histogram of the same precision
+     * @param other
+     */
+    public void add(Histogram other){
+        if(other.subBits != subBits)
+            throw new IllegalArgumentException("Histograms differ in precision");
+        for(int i = 0; i < counts.length(); i++){
+            long n = other.counts.get(i);
+            if(n != 0)
+                counts.addAndGet(i, n);
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long low = other.min.get(), high = other.max.get(), seen;
+        while(low < (seen = min.get()) && !min.compareAndSet(seen, low))
+            ;
+        while(high > (seen = max.get()) && !max.compareAndSet(seen, high))
+            ;
+    }
+
+    public long getCount(){
+        return count.get();
+    }
+
+    /**
+     * @return Exact sum of the values recorded
+     */
+    public long getSum(){
+        return sum.get();
+    }
+
+    /**
+     * @return Exact mean, 0 if empty
+     */
+    public double getMean(){
+        long n = count.get();
+        return n == 0 ? 0 : (double)sum.get() / n;
+    }
+
+    /**
+     * @return Exact minimum, 0 if empty
+     */
+    public long getMin(){
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    /**
+     * @return Exact maximum, 0 if empty
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return Highest value of the bucket holding the percentile, never
+     *         above the maximum; 0 if empty
+     */
+    public long getValueAtPercentile(double percentile){
+        long n = count.get();
+        if(n == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(Math.min(100, percentile) / 100 * n));
+        long seen = 0;
+        for(int i = 0; i < counts.length(); i++){
+            seen += counts.get(i);
+            if(seen >= rank)
+                return Math.min(highestOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    public void reset(){
+        for(int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    private int indexOf(long value){
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - subBits - 1);
+        return (shift << subBits) + (int)(value >>> shift);
+    }
+
+    private long highestOf(int index){
+        if(index < 2 << subBits)
+            return index;
+        int shift = (index >>> subBits) - 1;
+        long lowest = (long)(index - (shift << subBits)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("count=%d mean=%.1f min=%d p50=%d p99=%d max=%d",
+                getCount(), getMean(), getMin(), getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+    }
+}
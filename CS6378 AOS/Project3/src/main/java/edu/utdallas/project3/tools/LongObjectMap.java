@@ -0,0 +1,146 @@
+package edu.utdallas.project3.tools;
+
+/**
+ * Hash map from primitive long keys to objects, without boxing.
+ *
+ * Open addressing with linear probing over two parallel arrays. A null
+ * value marks a free slot, so null values cannot be stored. Removal shifts
+ * the following entries of the probe run back instead of leaving
+ * tombstones, and the table shrinks again once mostly empty, so a map
+ * whose entries come and go does not keep its peak size.
+ *
+ * Not thread-safe.
+ *
+ * @param <V>
+ */
+public class LongObjectMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public LongObjectMap(){
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @param key
+     * @return Value of the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key){
+        for(int i = slot(key); values[i] != null; i = (i + 1) & mask){
+            if(keys[i] == key)
+                return (V)values[i];
+        }
+        return null;
+    }
+
+    /**
+     * @param key
+     * @param value Not null
+     * @return Previous value of the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value){
+        if(value == null)
+            throw new NullPointerException();
+        int i = slot(key);
+        for(; values[i] != null; i = (i + 1) & mask){
+            if(keys[i] == key){
+                V old = (V)values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if(++size > (mask + 1) * 3 / 4)
+            resize((mask + 1) * 2);
+        return null;
+    }
+
+    /**
+     * @param key
+     * @return Removed value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key){
+        int i = slot(key);
+        for(; values[i] != null; i = (i + 1) & mask){
+            if(keys[i] == key)
+                break;
+        }
+        V old = (V)values[i];
+        if(old == null)
+            return null;
+
+        // Move back later entries of the run that may no longer be reached
+        int free = i;
+        for(int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask){
+            int home = slot(keys[j]);
+            if(((j - home) & mask) >= ((j - free) & mask)){
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        values[free] = null;
+        size--;
+        if(mask + 1 > MIN_CAPACITY && size < (mask + 1) / 8)
+            resize((mask + 1) / 2);
+        return old;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * @return Slots allocated, for memory accounting
+     */
+    public int capacity(){
+        return mask + 1;
+    }
+
+    private int slot(long key){
+        return (int)mix(key) & mask;
+    }
+
+    /**
+     * Stafford's variant 13 of the MurmurHash3 finalizer, spreads
+     * sequential keys over all bits
+     */
+    public static long mix(long key){
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    private void resize(int capacity){
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for(int i = 0; i < oldValues.length; i++){
+            if(oldValues[i] == null)
+                continue;
+            int j = slot(oldKeys[i]);
+            while(values[j] != null)
+                j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
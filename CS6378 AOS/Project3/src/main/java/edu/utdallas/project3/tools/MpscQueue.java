@@ -0,0 +1,83 @@
+package edu.utdallas.project3.tools;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Unbounded lock-free queue for any number of producer threads and one
+ * consumer thread at a time.
+ *
+ * Like {@link SpscQueue}, but producers claim the tail with one atomic swap
+ * and then link the old tail to their node. Between the two steps the new
+ * value is not reachable yet and {@link #poll()} reports the queue empty,
+ * so a producer that hands the consumer a signal after {@link #offer} must
+ * do so after the offer returns.
+ *
+ * @param <E>
+ */
+public class MpscQueue<E> {
+    private static final class Link<E> {
+        E value;
+        volatile Link<E> next;
+
+        Link(E value){
+            this.value = value;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscQueue, Link> TAIL =
+            AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Link.class, "tail");
+
+    private Link<E> head;                   // Consumer side, always a consumed stub
+    private volatile Link<E> tail;          // Producers side
+
+    public MpscQueue(){
+        head = tail = new Link<>(null);
+    }
+
+    /**
+     * Any thread
+     *
+     * @param value Not null
+     */
+    @SuppressWarnings("unchecked")
+    public void offer(E value){
+        if(value == null)
+            throw new NullPointerException();
+        Link<E> link = new Link<>(value);
+        Link<E> prev = TAIL.getAndSet(this, link);
+        prev.next = link;           // Publishes the value to the consumer.
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return Oldest value, or null if empty
+     */
+    public E poll(){
+        Link<E> next = head.next;
+        if(next == null)
+            return null;
+        E value = next.value;
+        next.value = null;          // Next becomes the stub, let the value go.
+        head = next;
+        return value;
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return Oldest value, left in the queue, or null if empty
+     */
+    public E peek(){
+        Link<E> next = head.next;
+        return next == null ? null : next.value;
+    }
+
+    /**
+     * Consumer only
+     */
+    public boolean isEmpty(){
+        return head.next == null;
+    }
+}
@@ -11,10 +11,18 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
+import edu.utdallas.project3.codec.BinaryCodec;
 import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.RicartAgrawalaProcess;
+import edu.utdallas.project3.socket.ConnectPolicy;
+import edu.utdallas.project3.socket.FlushPolicy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 
 public class MutexConfig implements ConfigurationLoader {
+    private static final Logger LOG = LogManager.getLogger(MutexConfig.class);
     public static final String CONFIG_FILE_NAME = "config.file.name";
     public static final String CONFIG_FILE_DIRECTORY ="config.file.directory";
     public static final String NEIGHBORS = "neighbors";
@@ -24,6 +32,32 @@ public class MutexConfig implements ConfigurationLoader {
     public static final String MEAN_CS_EXECUTION = "mean.cs.execution";       
     public static final String NUM_REQUEST = "num.request";    
     
+    // Optional settings, given as "key = value" lines after the host list.
+    public static final String MESSAGE_CODEC = "message.codec";
+    public static final String LINKER_MAX_BATCH = "linker.max.batch";
+    public static final String LINKER_MAX_DELAY = "linker.max.delay.ms";
+    public static final String CONNECT_DEADLINE = "connect.deadline.ms";
+    public static final String CONNECT_INITIAL_BACKOFF = "connect.backoff.initial.ms";
+    public static final String CONNECT_MAX_BACKOFF = "connect.backoff.max.ms";
+    public static final String SHM_ENABLED = "shm.enabled";
+    public static final String SHM_DIRECTORY = "shm.directory";
+    public static final String SHM_RING_SIZE = "shm.ring.size";
+    public static final String EXECUTION_MODE = "execution.mode";
+    public static final String EXECUTION_THREADS = "execution.threads";
+    public static final String MUTEX_ALGORITHM = "mutex.algorithm";
+    public static final String MUTEX_BATCH = "mutex.batch";
+    public static final String MUTEX_K = "mutex.k";
+    public static final String LOCK_STRIPES = "lock.stripes";
+    public static final String LOCK_ARBITRATION = "lock.arbitration";
+    public static final String LOCK_VIRTUAL_NODES = "lock.virtual.nodes";
+    public static final String LEASE_MILLIS = "lease.millis";
+    public static final String LEASE_TICK_MILLIS = "lease.tick.millis";
+    public static final String WORKLOAD_REPORT = "workload.report";
+    public static final String TRACE_DIRECTORY = "trace.directory";
+    public static final String METRICS_ENABLED = "metrics.enabled";
+    public static final String METRICS_JMX = "metrics.jmx";
+    public static final String METRICS_HTTP_PORT = "metrics.http.port";
+    
     private String configFileName;
     private String configFileDirectory;
     
@@ -32,7 +66,33 @@ public class MutexConfig implements ConfigurationLoader {
     private int meanCSExecution;
     private int numberOfRequest;
     
+    private String messageCodec;
+    private int linkerMaxBatch;
+    private int linkerMaxDelay;
+    private int connectDeadline;
+    private int connectInitialBackoff;
+    private int connectMaxBackoff;
+    private boolean shmEnabled;
+    private String shmDirectory;
+    private int shmRingSize;
+    private ExecutionMode executionMode;
+    private int executionThreads;
+    private String mutexAlgorithm;
+    private int mutexBatch;
+    private int mutexK;
+    private int lockStripes;
+    private String lockArbitration;
+    private int lockVirtualNodes;
+    private long leaseMillis;
+    private long leaseTickMillis;
+    private String workloadReport;
+    private String traceDirectory;
+    private boolean metricsEnabled;
+    private boolean metricsJmx;
+    private int metricsHttpPort;
+    
     private List<Node> neighbors;
+    private List<Node> nodes;
     
     
     public MutexConfig(){
@@ -44,18 +104,48 @@ public class MutexConfig implements ConfigurationLoader {
         meanCSExecution = 0;
         numberOfRequest = 0;
         
+        messageCodec = BinaryCodec.NAME;
+        linkerMaxBatch = FlushPolicy.DEFAULT_MAX_BATCH;
+        linkerMaxDelay = FlushPolicy.DEFAULT_MAX_DELAY;
+        connectDeadline = ConnectPolicy.DEFAULT_DEADLINE;
+        connectInitialBackoff = ConnectPolicy.DEFAULT_INITIAL_BACKOFF;
+        connectMaxBackoff = ConnectPolicy.DEFAULT_MAX_BACKOFF;
+        shmEnabled = false;
+        shmDirectory = Files.isDirectory(Paths.get("/dev/shm")) ? "/dev/shm" : System.getProperty("java.io.tmpdir");
+        shmRingSize = 1 << 20;
+        executionMode = ExecutionMode.INLINE;
+        executionThreads = 50;
+        mutexAlgorithm = RicartAgrawalaProcess.NAME;
+        mutexBatch = 1;
+        mutexK = 1;
+        lockArbitration = "all";
+        lockVirtualNodes = 64;
+        leaseMillis = 5000;
+        leaseTickMillis = 1;
+        workloadReport = "";
+        traceDirectory = "";
+        metricsEnabled = true;
+        metricsJmx = true;
+        metricsHttpPort = 0;
+        
         neighbors = new ArrayList<>();
+        nodes = new ArrayList<>();
     }
     
-    public void loadConfig(String relativePath, int myId){
+    public void loadConfig(String relativePath, int myId) throws IOException{
         Path file = Paths.get(relativePath).toAbsolutePath();
         
         // System.out.println(file.toString());
         loadConfigFromAbs(file.toString(), myId);
     }
 
-    public void loadConfigFromAbs(String absolutePath, int myId) {
+    /**
+     * @throws IOException Unreadable file, or a malformed line or setting,
+     *         quoting the line
+     */
+    public void loadConfigFromAbs(String absolutePath, int myId) throws IOException{
         List<Node> hosts = new LinkedList<>();
+        List<Node> allHosts = new ArrayList<>();
         Path file = Paths.get(absolutePath);
         
         // Store file name
@@ -63,8 +153,8 @@ public class MutexConfig implements ConfigurationLoader {
         configFileDirectory = file.getParent().toString();
         
 
-        System.out.println(String.format("%s = %s\n", CONFIG_FILE_NAME, configFileName));
-        System.out.println(String.format("%s = %s\n", CONFIG_FILE_DIRECTORY, configFileDirectory));
+        LOG.info("{} = {}", CONFIG_FILE_NAME, configFileName);
+        LOG.info("{} = {}", CONFIG_FILE_DIRECTORY, configFileDirectory);
         
         
         
@@ -81,16 +171,22 @@ public class MutexConfig implements ConfigurationLoader {
                 if(line.length() == 0)             // Skip empty lines
                     continue;
                 String[] params = line.split("\\s+"); // Split to read parameters
+                if(params.length < 4)
+                    throw new IOException(String.format("Malformed line \"%s\", expect 4 parameters", line));
                 /*
                  * 0 NUM_NODES,                     // "Number of Nodes";
                  * 1 MEAN_INTER_REQUEST_DELAY,      // "Mean value for inter-request delay";
                  * 2 MEAN_CS_EXECUTION,             // "Mean value for cs-execution time";
                  * 3 NUM_REQUEST,                   // "Number of requests each node should generate";
                  */
-                numberOfNodes = Integer.parseInt(params[0]);
-                meanInterRequestDelay = Integer.parseInt(params[1]);
-                meanCSExecution = Integer.parseInt(params[2]);
-                numberOfRequest = Integer.parseInt(params[3]);
+                try{
+                    numberOfNodes = Integer.parseInt(params[0]);
+                    meanInterRequestDelay = Integer.parseInt(params[1]);
+                    meanCSExecution = Integer.parseInt(params[2]);
+                    numberOfRequest = Integer.parseInt(params[3]);
+                } catch (NumberFormatException e){
+                    throw new IOException(String.format("Malformed line \"%s\"", line), e);
+                }
                 
                 logger.append(String.format("%s = %s\n", NUM_NODES, params[0]));
                 logger.append(String.format("%s = %s\n", MEAN_INTER_REQUEST_DELAY, params[1]));
@@ -119,27 +215,135 @@ public class MutexConfig implements ConfigurationLoader {
                 String[] hostInfo = line.split("\\s+");
                 
                 // hostInfo[0] - node id, hostInfo[1] - host addr, hostInfo[2] - host port
-                Node host = new Node(Integer.parseInt(hostInfo[0]), hostInfo[1] + ".utdallas.edu", hostInfo[2]);
-                hosts.add(host);
+                if(hostInfo.length < 3)
+                    throw new IOException(String.format("Malformed host \"%s\", expect id host port", line));
+                Node host;
+                try{
+                    host = new Node(Integer.parseInt(hostInfo[0]), hostInfo[1] + ".utdallas.edu", hostInfo[2]);
+                } catch (NumberFormatException e){
+                    throw new IOException(String.format("Malformed host \"%s\"", line), e);
+                }
+                allHosts.add(host);
+                if(host.getNodeId() != myId)      // Channels are only built to other nodes.
+                    hosts.add(host);
                 n--;
             }
             validateConfigurationFile(n);
             
-            doConfigure(hosts);
-            
-            System.out.println(logger.toString());
+            // Load optional settings.
+            while ((line = reader.readLine()) != null) {
+                line = line.replaceAll("#.*","");
+                line = line.trim();
+                if(line.length() == 0)
+                    continue;
+                
+                String[] property = line.split("\\s*=\\s*", 2);
+                if(property.length != 2)
+                    throw new IOException(String.format("Malformed setting \"%s\", expect key = value", line));
+                try{
+                    setProperty(property[0], property[1]);
+                } catch (IOException | IllegalArgumentException e){     // Unknown key or unparsable value
+                    throw new IOException(String.format("Invalid setting \"%s\": %s", line, e.getMessage()), e);
+                }
+                logger.append(String.format("%s = %s\n", property[0], property[1]));
+            }
             
+            Collections.sort(allHosts);
+            nodes = allHosts;
+            doConfigure(hosts);
             
-        } catch (IOException x) {
-            System.err.format("IOException: %s%n", x);
-        } catch (NullPointerException e){
-            System.err.println(e.getMessage());
+            LOG.info(logger);
         }
     }
     
     public void doConfigure(List<Node> neighbors){
         Collections.sort(neighbors);
-        neighbors = new ArrayList<>(neighbors);
+        this.neighbors = new ArrayList<>(neighbors);
+    }
+    
+    /**
+     * Apply one optional setting
+     * @param key
+     * @param value
+     * @throws IOException Unknown key
+     */
+    public void setProperty(String key, String value) throws IOException{
+        switch(key){
+        case MESSAGE_CODEC:
+            messageCodec = value;
+            break;
+        case LINKER_MAX_BATCH:
+            linkerMaxBatch = Integer.parseInt(value);
+            break;
+        case LINKER_MAX_DELAY:
+            linkerMaxDelay = Integer.parseInt(value);
+            break;
+        case CONNECT_DEADLINE:
+            connectDeadline = Integer.parseInt(value);
+            break;
+        case CONNECT_INITIAL_BACKOFF:
+            connectInitialBackoff = Integer.parseInt(value);
+            break;
+        case CONNECT_MAX_BACKOFF:
+            connectMaxBackoff = Integer.parseInt(value);
+            break;
+        case SHM_ENABLED:
+            shmEnabled = Boolean.parseBoolean(value);
+            break;
+        case SHM_DIRECTORY:
+            shmDirectory = value;
+            break;
+        case SHM_RING_SIZE:
+            shmRingSize = Integer.parseInt(value);
+            break;
+        case EXECUTION_MODE:
+            executionMode = ExecutionMode.forName(value);
+            break;
+        case EXECUTION_THREADS:
+            executionThreads = Integer.parseInt(value);
+            break;
+        case MUTEX_ALGORITHM:
+            mutexAlgorithm = value;
+            break;
+        case MUTEX_BATCH:
+            mutexBatch = Integer.parseInt(value);
+            break;
+        case MUTEX_K:
+            mutexK = Integer.parseInt(value);
+            break;
+        case LOCK_STRIPES:
+            lockStripes = Integer.parseInt(value);
+            break;
+        case LOCK_ARBITRATION:
+            lockArbitration = value;
+            break;
+        case LOCK_VIRTUAL_NODES:
+            lockVirtualNodes = Integer.parseInt(value);
+            break;
+        case LEASE_MILLIS:
+            leaseMillis = Long.parseLong(value);
+            break;
+        case LEASE_TICK_MILLIS:
+            leaseTickMillis = Long.parseLong(value);
+            break;
+        case WORKLOAD_REPORT:
+            workloadReport = value;
+            break;
+        case TRACE_DIRECTORY:
+            traceDirectory = value;
+            break;
+        case METRICS_ENABLED:
+            metricsEnabled = Boolean.parseBoolean(value);
+            break;
+        case METRICS_JMX:
+            metricsJmx = Boolean.parseBoolean(value);
+            break;
+        case METRICS_HTTP_PORT:
+            metricsHttpPort = Integer.parseInt(value);
+            break;
+        default:
+            throw new IOException(String.format("Unknown setting \"%s\"", key));
+        }
     }
     
     private void validateConfigurationFile(int n) throws IOException{
@@ -196,6 +400,267 @@ public class MutexConfig implements ConfigurationLoader {
         this.numberOfRequest = numberOfRequest;
     }
 
+    /**
+     * @return Name of the wire codec, see {@link edu.utdallas.project3.codec.Codecs}
+     */
+    public String getMessageCodec() {
+        return messageCodec;
+    }
+
+    public void setMessageCodec(String messageCodec) {
+        this.messageCodec = messageCodec;
+    }
+
+    public int getLinkerMaxBatch() {
+        return linkerMaxBatch;
+    }
+
+    public void setLinkerMaxBatch(int linkerMaxBatch) {
+        this.linkerMaxBatch = linkerMaxBatch;
+    }
+
+    /**
+     * @return Outbound linger time in milliseconds
+     */
+    public int getLinkerMaxDelay() {
+        return linkerMaxDelay;
+    }
+
+    public void setLinkerMaxDelay(int linkerMaxDelay) {
+        this.linkerMaxDelay = linkerMaxDelay;
+    }
+
+    /**
+     * @return Milliseconds all channels must be up within
+     */
+    public int getConnectDeadline() {
+        return connectDeadline;
+    }
+
+    public void setConnectDeadline(int connectDeadline) {
+        this.connectDeadline = connectDeadline;
+    }
+
+    public int getConnectInitialBackoff() {
+        return connectInitialBackoff;
+    }
+
+    public void setConnectInitialBackoff(int connectInitialBackoff) {
+        this.connectInitialBackoff = connectInitialBackoff;
+    }
+
+    public int getConnectMaxBackoff() {
+        return connectMaxBackoff;
+    }
+
+    public void setConnectMaxBackoff(int connectMaxBackoff) {
+        this.connectMaxBackoff = connectMaxBackoff;
+    }
+
+    /**
+     * @return Whether co-located nodes talk through shared memory rings
+     */
+    public boolean isShmEnabled() {
+        return shmEnabled;
+    }
+
+    public void setShmEnabled(boolean shmEnabled) {
+        this.shmEnabled = shmEnabled;
+    }
+
+    public String getShmDirectory() {
+        return shmDirectory;
+    }
+
+    public void setShmDirectory(String shmDirectory) {
+        this.shmDirectory = shmDirectory;
+    }
+
+    /**
+     * @return Data bytes per shared memory ring, a power of two
+     */
+    public int getShmRingSize() {
+        return shmRingSize;
+    }
+
+    public void setShmRingSize(int shmRingSize) {
+        this.shmRingSize = shmRingSize;
+    }
+
+    /**
+     * @return Where message handlers run
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * @return Pool size of {@link ExecutionMode#FIXED}
+     */
+    public int getExecutionThreads() {
+        return executionThreads;
+    }
+
+    public void setExecutionThreads(int executionThreads) {
+        this.executionThreads = executionThreads;
+    }
+
+    /**
+     * @return Name of the mutual exclusion algorithm
+     */
+    public String getMutexAlgorithm() {
+        return mutexAlgorithm;
+    }
+
+    public void setMutexAlgorithm(String mutexAlgorithm) {
+        this.mutexAlgorithm = mutexAlgorithm;
+    }
+
+    /**
+     * @return Local entries in a row under one distributed request; 1
+     *         requests for every entry
+     */
+    public int getMutexBatch() {
+        return mutexBatch;
+    }
+
+    public void setMutexBatch(int mutexBatch) {
+        this.mutexBatch = mutexBatch;
+    }
+
+    /**
+     * @return Nodes allowed in the critical section at once by
+     *         {@link edu.utdallas.project3.server.KMutexProcess}
+     */
+    public int getMutexK() {
+        return mutexK;
+    }
+
+    public void setMutexK(int mutexK) {
+        this.mutexK = mutexK;
+    }
+
+    /**
+     * @return Stripes of a {@link edu.utdallas.project3.server.LockTable},
+     *         rounded up to a power of two; 0 picks one from the cores
+     */
+    public int getLockStripes() {
+        return lockStripes;
+    }
+
+    public void setLockStripes(int lockStripes) {
+        this.lockStripes = lockStripes;
+    }
+
+    /**
+     * @return How a lock table arbitrates its locks: "all" nodes, or the
+     *         home node on a "ring"
+     */
+    public String getLockArbitration() {
+        return lockArbitration;
+    }
+
+    public void setLockArbitration(String lockArbitration) {
+        this.lockArbitration = lockArbitration;
+    }
+
+    /**
+     * @return Points per node on the ring of a lock table
+     */
+    public int getLockVirtualNodes() {
+        return lockVirtualNodes;
+    }
+
+    public void setLockVirtualNodes(int lockVirtualNodes) {
+        this.lockVirtualNodes = lockVirtualNodes;
+    }
+
+    /**
+     * @return How long a lease lasts unless released
+     */
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public void setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * @return Period of sending batched lease records; 0 sends each at
+     *         once
+     */
+    public long getLeaseTickMillis() {
+        return leaseTickMillis;
+    }
+
+    public void setLeaseTickMillis(long leaseTickMillis) {
+        this.leaseTickMillis = leaseTickMillis;
+    }
+
+    /**
+     * @return File to write the workload report to, "{node}" standing for
+     *         the node id; empty to print it
+     */
+    public String getWorkloadReport() {
+        return workloadReport;
+    }
+
+    public void setWorkloadReport(String workloadReport) {
+        this.workloadReport = workloadReport;
+    }
+
+    /**
+     * @return Directory to log critical sections to with vector
+     *         timestamps, one file per node; empty to log none
+     */
+    public String getTraceDirectory() {
+        return traceDirectory;
+    }
+
+    public void setTraceDirectory(String traceDirectory) {
+        this.traceDirectory = traceDirectory;
+    }
+
+    /**
+     * @return Whether to count traffic and time handlers and critical
+     *         sections
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * @return Whether to register the metrics as an MBean
+     */
+    public boolean isMetricsJmx() {
+        return metricsJmx;
+    }
+
+    public void setMetricsJmx(boolean metricsJmx) {
+        this.metricsJmx = metricsJmx;
+    }
+
+    /**
+     * @return Port of the Prometheus scrape endpoint, plus the node id
+     *         when every node serves its own; 0 for none
+     */
+    public int getMetricsHttpPort() {
+        return metricsHttpPort;
+    }
+
+    public void setMetricsHttpPort(int metricsHttpPort) {
+        this.metricsHttpPort = metricsHttpPort;
+    }
+
     public List<Node> getNeighbors() {
         return neighbors;
     }
@@ -204,7 +669,21 @@ public class MutexConfig implements ConfigurationLoader {
         this.neighbors = neighbors;
     }
 
-    public static MutexConfig loadFromConfigurationFile(String configurationFilePath, int myId) {
+    /**
+     * @return Every node of the host list, this one included, sorted by id
+     */
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * @throws IOException Unreadable or invalid file, fatal to the node
+     */
+    public static MutexConfig loadFromConfigurationFile(String configurationFilePath, int myId) throws IOException{
         MutexConfig config = new MutexConfig();
         config.loadConfig(configurationFilePath, myId);
         return config;
@@ -0,0 +1,67 @@
+package edu.utdallas.project3.tools;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared executor.
+ *
+ * Any number of lanes can share one pool: a lane holds at most one pool
+ * thread while it has work and none while idle, so thousands of lanes cost
+ * no more threads than the pool has. After a batch of tasks a busy lane
+ * gives its thread back, letting other lanes run.
+ */
+public class SerialExecutor implements Executor {
+    private static final Logger LOG = LogManager.getLogger(SerialExecutor.class);
+    private static final int BATCH = 64;
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+    private final Runnable drain;
+
+    public SerialExecutor(Executor executor){
+        this.executor = executor;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+        this.drain = new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule(){
+        if(scheduled.compareAndSet(false, true))
+            executor.execute(drain);
+    }
+
+    private void drain(){
+        try{
+            Runnable task;
+            for(int n = 0; n < BATCH && (task = tasks.poll()) != null; n++){
+                try{
+                    task.run();
+                } catch (RuntimeException e){
+                    LOG.error("Task failed", e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        if(!tasks.isEmpty())
+            schedule();                 // More work, or a task slipped in after the last poll.
+    }
+}
@@ -0,0 +1,71 @@
+package edu.utdallas.project3.tools;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Unbounded lock-free queue for exactly one producer thread and one
+ * consumer thread at a time.
+ *
+ * A singly linked list with a stub head: the producer only touches the
+ * tail, the consumer only the head, and the two meet on a volatile next
+ * pointer. No locks, no CAS. With several producer threads use {@link
+ * MpscQueue} instead of serializing them on a lock.
+ *
+ * @param <E>
+ */
+public class SpscQueue<E> {
+    private static final class Link<E> {
+        E value;
+        volatile Link<E> next;
+
+        Link(E value){
+            this.value = value;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Link, Link> NEXT =
+            AtomicReferenceFieldUpdater.newUpdater(Link.class, Link.class, "next");
+
+    private Link<E> head;       // Consumer side, always a consumed stub
+    private Link<E> tail;       // Producer side
+
+    public SpscQueue(){
+        head = tail = new Link<>(null);
+    }
+
+    /**
+     * Producer only
+     *
+     * @param value Not null
+     */
+    public void offer(E value){
+        if(value == null)
+            throw new NullPointerException();
+        Link<E> link = new Link<>(value);
+        NEXT.set(tail, link);       // Publishes the value to the consumer.
+        tail = link;
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return Oldest value, or null if empty
+     */
+    public E poll(){
+        Link<E> next = head.next;
+        if(next == null)
+            return null;
+        E value = next.value;
+        next.value = null;          // Next becomes the stub, let the value go.
+        head = next;
+        return value;
+    }
+
+    /**
+     * Consumer only
+     */
+    public boolean isEmpty(){
+        return head.next == null;
+    }
+}
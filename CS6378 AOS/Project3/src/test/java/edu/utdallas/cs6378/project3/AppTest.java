@@ -1,5 +1,11 @@
 package edu.utdallas.cs6378.project3;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import edu.utdallas.project3.tools.MutexConfig;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -35,4 +41,40 @@ public class AppTest
     {
         assertTrue( true );
     }
+
+    public void testConfigLoads() throws IOException
+    {
+        MutexConfig config = load("mutex.batch = 4\n");
+        assertEquals(2, config.getNodes().size());
+        assertEquals(1, config.getNeighbors().size());
+        assertEquals(4, config.getMutexBatch());
+    }
+
+    /**
+     * A bad setting must stop the node, not leave it without neighbors
+     */
+    public void testConfigRejectsBadSettings() throws IOException
+    {
+        String[] bad = { "mutex.bacth = 4", "mutex.batch = four", "execution.mode = turbo", "mutex.batch" };
+        for(String setting : bad){
+            try{
+                load(setting + "\n");
+                fail("Loaded " + setting);
+            } catch (IOException expected){
+                assertTrue(expected.getMessage(), expected.getMessage().contains(setting));
+            }
+        }
+    }
+
+    private static MutexConfig load(String settings) throws IOException
+    {
+        File file = File.createTempFile("config", ".txt");
+        try{
+            String text = "2 10 20 100\n0 dc01 5000\n1 dc02 5001\n" + settings;
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            return MutexConfig.loadFromConfigurationFile(file.getPath(), 0);
+        } finally {
+            file.delete();
+        }
+    }
 }
@@ -0,0 +1,64 @@
+package edu.utdallas.cs6378.project3;
+
+import edu.utdallas.project3.socket.ConnectPolicy;
+import junit.framework.TestCase;
+
+/**
+ * Backoff bounds and jitter of channel establishment.
+ */
+public class ConnectPolicyTest 
+    extends TestCase
+{
+    private static final int SAMPLES = 2000;
+
+    public void testBackoffDoublesUpToMax()
+    {
+        ConnectPolicy policy = new ConnectPolicy(1000, 50, 2000);
+        assertRange(policy, 1, 25, 50);
+        assertRange(policy, 2, 50, 100);
+        assertRange(policy, 3, 100, 200);
+        assertRange(policy, 6, 800, 1600);
+        assertRange(policy, 7, 1000, 2000);
+        assertRange(policy, 30, 1000, 2000);
+        assertRange(policy, 31, 1000, 2000);
+        assertRange(policy, Integer.MAX_VALUE, 1000, 2000);
+    }
+
+    public void testJitterCoversRange()
+    {
+        ConnectPolicy policy = new ConnectPolicy(1000, 8, 8);
+        boolean[] seen = new boolean[9];
+        for(int i = 0; i < SAMPLES; i++)
+            seen[(int)policy.backoff(1)] = true;
+        for(int wait = 4; wait <= 8; wait++)
+            assertTrue("Never waited " + wait, seen[wait]);
+    }
+
+    public void testSmallestBackoff()
+    {
+        ConnectPolicy policy = new ConnectPolicy(1000, 1, 1);
+        assertRange(policy, 1, 0, 1);
+        assertRange(policy, 100, 0, 1);
+    }
+
+    public void testIllegalPolicy()
+    {
+        int[][] illegal = { { 0, 50, 2000 }, { 1000, 0, 2000 }, { 1000, 50, 49 } };
+        for(int[] values : illegal){
+            try{
+                new ConnectPolicy(values[0], values[1], values[2]);
+                fail("Accepted " + values[0] + " " + values[1] + " " + values[2]);
+            } catch (IllegalArgumentException expected){
+            }
+        }
+    }
+
+    private static void assertRange(ConnectPolicy policy, int attempt, long min, long max)
+    {
+        for(int i = 0; i < SAMPLES; i++){
+            long wait = policy.backoff(attempt);
+            assertTrue(String.format("Attempt %d waited %d, not in %d..%d", attempt, wait, min, max),
+                    wait >= min && wait <= max);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package edu.utdallas.cs6378.project3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import edu.utdallas.project3.server.LocalCluster;
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.Process;
+import edu.utdallas.project3.server.Tag;
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.socket.LocalHub;
+import edu.utdallas.project3.socket.LocalTransport;
+import edu.utdallas.project3.socket.Transport;
+import edu.utdallas.project3.tools.MpscQueue;
+import edu.utdallas.project3.tools.MutexConfig;
+import edu.utdallas.project3.tools.SpscQueue;
+import junit.framework.TestCase;
+
+/**
+ * In-process clusters over the local transport.
+ */
+public class LocalTransportTest 
+    extends TestCase
+{
+    private static final int NODES = 64;
+    private static final int ROUNDS = 20;
+
+    /**
+     * Counts application messages and checks they arrive in order per sender
+     */
+    static class CountingProcess extends Process {
+        final int[] lastSeen;
+        final CountDownLatch done;
+
+        CountingProcess(Linker linker, MutexConfig config, CountDownLatch done){
+            super(linker, config);
+            this.lastSeen = new int[config.getNumberOfNodes()];
+            this.done = done;
+        }
+
+        @Override
+        public synchronized void handleMessage(Message msg, int srcId, Tag tag) throws IOException{
+            int round = Integer.parseInt(msg.getContent());
+            assertEquals(lastSeen[srcId] + 1, round);
+            assertEquals(myId, msg.getDstId());
+            lastSeen[srcId] = round;
+            done.countDown();
+        }
+    }
+
+    public void testSpscQueue()
+    {
+        SpscQueue<Integer> queue = new SpscQueue<>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for(int i = 0; i < 10; i++)
+            queue.offer(i);
+        for(int i = 0; i < 10; i++)
+            assertEquals(Integer.valueOf(i), queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testMpscQueue() throws Exception
+    {
+        final int producers = 4;
+        final int values = 100000;
+        final MpscQueue<Integer> queue = new MpscQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for(int p = 0; p < producers; p++){
+            final int producer = p;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < values; i++)
+                        queue.offer(producer * values + i);
+                }
+            }));
+        }
+        for(Thread thread : threads)
+            thread.start();
+        int[] next = new int[producers];
+        int polled = 0;
+        while(polled < producers * values){
+            Integer value = queue.poll();
+            if(value == null){
+                Thread.yield();
+                continue;
+            }
+            int producer = value / values;
+            assertEquals(next[producer]++, value % values);     // FIFO per producer
+            polled++;
+        }
+        for(Thread thread : threads)
+            thread.join();
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testFailedOpenLeavesHub() throws Exception
+    {
+        LocalHub hub = new LocalHub();
+        try{
+            open(hub, 0, 50, 1);
+            fail("Opened without neighbor 1");
+        } catch (IOException expected){
+        }
+
+        final LocalHub waiting = hub;
+        final List<Exception> thrown = new ArrayList<>();
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    open(waiting, 0, 60000, 1);
+                } catch (Exception e){
+                    thrown.add(e);
+                }
+            }
+        });
+        opener.start();
+        opener.interrupt();
+        opener.join();
+        assertEquals(1, thrown.size());
+        assertTrue(thrown.get(0) instanceof InterruptedException);
+
+        final List<LocalTransport> pair = new ArrayList<>();
+        Thread joiner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    pair.add(open(waiting, 2, 10000, 1));
+                } catch (Exception e){
+                    thrown.add(e);
+                }
+            }
+        });
+        joiner.start();
+        LocalTransport one = open(hub, 1, 10000, 2);
+        joiner.join();
+        assertEquals(1, thrown.size());
+        LocalTransport two = pair.get(0);
+        try{
+            open(hub, 0, 1000, 1);
+            fail("Opened although node 1 does not list node 0");
+        } catch (IOException expected){
+        }
+
+        // Every failed open gave its id back
+        open(hub, 0, 1000).close();
+        one.close();
+        two.close();
+    }
+
+    private static LocalTransport open(LocalHub hub, int myId, long timeout, int... neighborIds)
+            throws IOException, InterruptedException
+    {
+        List<Node> neighbors = new ArrayList<>();
+        for(int id : neighborIds)
+            neighbors.add(new Node(id));
+        LocalTransport transport = new LocalTransport(hub, timeout);
+        transport.open(myId, neighbors, new Transport.FrameListener() {
+            @Override
+            public void onFrame(int index, ByteBuffer payload) {
+            }
+
+            @Override
+            public void onClosed(int index, IOException cause) {
+            }
+        });
+        return transport;
+    }
+
+    public void testMulticastInOrder() throws Exception
+    {
+        MutexConfig config = new MutexConfig();
+        config.setNumberOfNodes(NODES);
+        multicastInOrder(config);
+    }
+
+    public void testMulticastInOrderOnPool() throws Exception
+    {
+        MutexConfig config = new MutexConfig();
+        config.setNumberOfNodes(NODES);
+        config.setProperty(MutexConfig.EXECUTION_MODE, "fixed");
+        config.setProperty(MutexConfig.EXECUTION_THREADS, "8");
+        multicastInOrder(config);
+    }
+
+    private void multicastInOrder(MutexConfig config) throws Exception
+    {
+        final CountDownLatch done = new CountDownLatch(NODES * (NODES - 1) * ROUNDS);
+        LocalCluster cluster = new LocalCluster(config, new LocalCluster.ProcessFactory() {
+            @Override
+            public Process create(Linker linker, MutexConfig config) {
+                return new CountingProcess(linker, config, done);
+            }
+        });
+        cluster.start();
+        try{
+            for(int round = 1; round <= ROUNDS; round++){
+                for(Process process : cluster.getProcesses()){
+                    process.sendToNeighbors(Tag.APP, Integer.toString(round));
+                }
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+            assertEquals(NODES * (NODES - 1) * ROUNDS, cluster.getHub().getFrameCount());
+        } finally {
+            cluster.close();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package edu.utdallas.cs6378.project3;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+import edu.utdallas.project3.server.HashRing;
+import edu.utdallas.project3.server.LeaseService;
+import edu.utdallas.project3.server.Lease;
+import edu.utdallas.project3.server.LocalCluster;
+import edu.utdallas.project3.server.LockGrant;
+import edu.utdallas.project3.server.LockTable;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.Process;
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.LongObjectMap;
+import edu.utdallas.project3.tools.MutexConfig;
+import junit.framework.TestCase;
+
+/**
+ * Named locks and leases on in-process clusters.
+ */
+public class LockTableTest
+    extends TestCase
+{
+    private static final int NODES = 6;
+
+    private LocalCluster cluster;
+
+    @Override
+    protected void tearDown()
+    {
+        if(cluster == null)
+            return;
+        for(Process process : cluster.getProcesses()){
+            if(process instanceof LeaseService)
+                ((LeaseService)process).stop();
+        }
+        cluster.close();
+    }
+
+    private LocalCluster start(MutexConfig config) throws Exception
+    {
+        cluster = new LocalCluster(config, new LocalCluster.ProcessFactory() {
+            @Override
+            public Process create(Linker linker, MutexConfig config) {
+                return new LockTable(linker, config);
+            }
+        });
+        cluster.start();
+        return cluster;
+    }
+
+    private LocalCluster startLeases(MutexConfig config) throws Exception
+    {
+        cluster = new LocalCluster(config, new LocalCluster.ProcessFactory() {
+            @Override
+            public Process create(Linker linker, MutexConfig config) {
+                return new LeaseService(linker, config);
+            }
+        });
+        cluster.start();
+        return cluster;
+    }
+
+    private static MutexConfig config()
+    {
+        MutexConfig config = new MutexConfig();
+        config.setNumberOfNodes(NODES);
+        return config;
+    }
+
+    public void testLongObjectMap()
+    {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(7);
+        for(int i = 0; i < 200000; i++){
+            long key = random.nextInt(5000) * 0x10000L;        // Same low bits, collide without mixing
+            if(random.nextBoolean()){
+                assertEquals(expected.put(key, (long)i), map.put(key, (long)i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for(Map.Entry<Long, Long> entry : expected.entrySet())
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        for(Long key : new ArrayList<>(expected.keySet()))
+            assertEquals(expected.get(key), map.remove(key));
+        assertTrue(map.isEmpty());
+        assertEquals(16, map.capacity());           // Shrunk back
+    }
+
+    public void testHashRingBalance()
+    {
+        List<Node> nodes = nodes(16);
+        HashRing ring = new HashRing(nodes, 128);
+        double total = 0;
+        for(Node node : nodes){
+            double share = ring.share(node.getNodeId());
+            assertTrue(String.valueOf(share), share > 0.5 / 16 && share < 1.5 / 16);
+            total += share;
+        }
+        assertEquals(1.0, total, 1e-9);
+
+        int[] counts = new int[16];
+        for(long key = 0; key < 160000; key++){
+            int[] owners = ring.owners(key, 3);
+            assertEquals(ring.owner(key), owners[0]);
+            assertTrue(owners[0] != owners[1] && owners[1] != owners[2] && owners[0] != owners[2]);
+            counts[owners[0]]++;
+        }
+        for(int count : counts)
+            assertTrue(String.valueOf(count), count > 5000 && count < 15000);
+    }
+
+    public void testHashRingPlan()
+    {
+        HashRing before = new HashRing(nodes(8), 64);
+        HashRing after = new HashRing(nodes(9), 64);
+        double moved = 0;
+        for(HashRing.Move move : before.plan(after)){
+            assertEquals(8, move.getTo());           // Only the new node takes over
+            moved += move.getShare();
+        }
+        assertEquals(after.share(8), moved, 1e-9);
+        for(long key = 0; key < 100000; key++){
+            if(before.owner(key) != after.owner(key))
+                assertEquals(8, after.owner(key));
+        }
+        assertTrue(before.plan(new HashRing(nodes(8), 64)).isEmpty());
+    }
+
+    private static List<Node> nodes(int count)
+    {
+        List<Node> nodes = new ArrayList<>();
+        for(int id = 0; id < count; id++)
+            nodes.add(new Node(id));
+        return nodes;
+    }
+
+    public void testNamedLocksExclude() throws Exception
+    {
+        checkNamedLocks(start(config()));
+    }
+
+    public void testNamedLocksOnRing() throws Exception
+    {
+        MutexConfig config = config();
+        config.setProperty(MutexConfig.LOCK_ARBITRATION, LockTable.ARBITRATION_RING);
+        LocalCluster cluster = start(config);
+        checkNamedLocks(cluster);
+        for(Process process : cluster.getProcesses())
+            assertTrue(((LockTable)process).getStats().getMaxMessages() <= 3);
+    }
+
+    /**
+     * Every node takes random locks of a small set; holders of one lock
+     * never overlap
+     */
+    private void checkNamedLocks(LocalCluster cluster) throws Exception
+    {
+        final int resources = 16;
+        final int perNode = 500;
+        final AtomicIntegerArray inside = new AtomicIntegerArray(resources);
+        final AtomicInteger violations = new AtomicInteger();
+        final Random random = new Random(11);
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for(Process process : cluster.getProcesses()){
+            LockTable table = (LockTable)process;
+            for(int i = 0; i < perNode; i++){
+                final int resource = random.nextInt(resources);
+                done.add(table.acquire(resource).thenAccept(new Consumer<LockGrant>() {
+                    @Override
+                    public void accept(LockGrant grant) {
+                        if(inside.incrementAndGet(resource) != 1)
+                            violations.incrementAndGet();
+                        inside.decrementAndGet(resource);
+                        release(grant);
+                    }
+                }));
+            }
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        assertEquals(0, violations.get());
+        for(Process process : cluster.getProcesses()){
+            LockTable table = (LockTable)process;
+            // All idle again, once the last releases reached the home nodes
+            for(int wait = 0; wait < 100 && table.getActiveLocks() > 0; wait++)
+                Thread.sleep(50);
+            assertEquals(0, table.getActiveLocks());
+            assertEquals(perNode, table.getStats().getEntries());
+        }
+    }
+
+    public void testManyIdleLocks() throws Exception
+    {
+        LocalCluster cluster = start(config());
+        LockTable table = (LockTable)cluster.getProcess(1);
+        List<LockGrant> grants = new ArrayList<>();
+        for(int i = 0; i < 1000; i++)
+            grants.add(table.acquire(LockTable.resourceId("account-" + i)).get(10, TimeUnit.SECONDS));
+        assertEquals(1000, table.getActiveLocks());
+        for(LockGrant grant : grants)
+            grant.release();
+        assertEquals(0, table.getActiveLocks());
+    }
+
+    public void testLocalQueueOnOneLock() throws Exception
+    {
+        LocalCluster cluster = start(config());
+        LockTable table = (LockTable)cluster.getProcess(0);
+        LockTable other = (LockTable)cluster.getProcess(3);
+        LockGrant held = other.acquire(42).get(10, TimeUnit.SECONDS);
+        final AtomicInteger granted = new AtomicInteger();
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for(int i = 0; i < 20000; i++){
+            done.add(table.acquire(42).thenAccept(new Consumer<LockGrant>() {
+                @Override
+                public void accept(LockGrant grant) {
+                    granted.incrementAndGet();
+                    release(grant);
+                }
+            }));
+        }
+        assertEquals(0, granted.get());
+        held.release();
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        assertEquals(20000, granted.get());
+        assertEquals(19999, table.getStats().getCombined());    // One request for all of them
+    }
+
+    private static void release(LockGrant grant)
+    {
+        try{
+            grant.release();
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void testLeasesExcludeWithGrowingTokens() throws Exception
+    {
+        final int resources = 8;
+        final int perNode = 500;
+        MutexConfig config = config();
+        config.setProperty(MutexConfig.LEASE_TICK_MILLIS, "2");
+        LocalCluster cluster = startLeases(config);
+        final AtomicIntegerArray inside = new AtomicIntegerArray(resources);
+        final long[] lastToken = new long[resources];
+        final AtomicInteger violations = new AtomicInteger();
+        Random random = new Random(5);
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for(Process process : cluster.getProcesses()){
+            LeaseService service = (LeaseService)process;
+            for(int i = 0; i < perNode; i++){
+                final int resource = random.nextInt(resources);
+                done.add(service.acquire(resource).thenAccept(new Consumer<Lease>() {
+                    @Override
+                    public void accept(Lease lease) {
+                        if(inside.incrementAndGet(resource) != 1 || !lease.isValid())
+                            violations.incrementAndGet();
+                        synchronized(lastToken){
+                            if(lease.getToken() <= lastToken[resource])
+                                violations.incrementAndGet();
+                            lastToken[resource] = lease.getToken();
+                        }
+                        inside.decrementAndGet(resource);
+                        try{
+                            lease.release();
+                        } catch (IOException e){
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }));
+            }
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        assertEquals(0, violations.get());
+        LeaseService coordinator = (LeaseService)cluster.getProcess(0);
+        assertEquals(NODES * perNode, coordinator.getGrants());
+        assertEquals(0, coordinator.getExpired());
+        // Three messages per grant unless batched
+        assertTrue(cluster.getHub().getFrameCount() < 3 * NODES * perNode);
+    }
+
+    public void testLeaseOfCrashedHolderExpires() throws Exception
+    {
+        MutexConfig config = config();
+        config.setProperty(MutexConfig.LEASE_MILLIS, "200");
+        LocalCluster cluster = startLeases(config);
+        LeaseService crashed = (LeaseService)cluster.getProcess(2);
+        LeaseService next = (LeaseService)cluster.getProcess(4);
+        Lease stale = crashed.acquire(7).get(10, TimeUnit.SECONDS);
+        CompletableFuture<Lease> waiting = next.acquire(7);
+
+        Lease lease = waiting.get(10, TimeUnit.SECONDS);     // Holder never releases
+        assertFalse(stale.isValid());
+        assertTrue(lease.isValid());
+        assertTrue(lease.getToken() > stale.getToken());
+        assertEquals(1, ((LeaseService)cluster.getProcess(0)).getExpired());
+
+        stale.release();                    // Too late, must not free the new lease
+        CompletableFuture<Lease> third = ((LeaseService)cluster.getProcess(1)).acquire(7);
+        Thread.sleep(50);
+        assertFalse(third.isDone());
+        lease.release();
+        assertTrue(third.get(10, TimeUnit.SECONDS).getToken() > lease.getToken());
+    }
+}
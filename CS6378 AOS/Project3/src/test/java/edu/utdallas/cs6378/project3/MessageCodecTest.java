@@ -0,0 +1,81 @@
+package edu.utdallas.cs6378.project3;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import edu.utdallas.project3.codec.BinaryCodec;
+import edu.utdallas.project3.codec.MessageCodec;
+import edu.utdallas.project3.codec.SerializationCodec;
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.Tag;
+import junit.framework.TestCase;
+
+/**
+ * Round trips through every wire codec.
+ */
+public class MessageCodecTest 
+    extends TestCase
+{
+    private static final MessageCodec[] CODECS = { new BinaryCodec(), new SerializationCodec() };
+
+    public void testRoundTrip() throws Exception
+    {
+        for(MessageCodec codec : CODECS){
+            assertRoundTrip(codec, new Message(3, 7, Tag.APP, "hello"));
+            assertRoundTrip(codec, new Message(0, Integer.MAX_VALUE, Tag.TREE_BROADCAST, "é中😀"));
+            assertRoundTrip(codec, new Message(-1, 200, Tag.MARKER, ""));
+            assertRoundTrip(codec, new Message(12, 1, Tag.HANDSHAKE, (String)null));
+            assertRoundTrip(codec, new Message(5, 2, Tag.TOKEN, new int[]{ 3, 3, 4, 0, -7, Integer.MIN_VALUE, Integer.MAX_VALUE }));
+            assertRoundTrip(codec, new Message(5, 2, Tag.TOKEN, new int[0]));
+            Message both = new Message(1, 2, Tag.APP, new int[]{ 9 });
+            both.setContent("text");
+            assertRoundTrip(codec, both);
+            Message stamped = new Message(4, 0, Tag.REPLY, "17");
+            stamped.setClock(new int[]{ 120, 7, 0, 119 });
+            assertRoundTrip(codec, stamped);
+        }
+    }
+
+    public void testBinaryValuesAreDeltaEncoded() throws Exception
+    {
+        int[] requests = new int[100];
+        for(int i = 0; i < requests.length; i++)
+            requests[i] = 5000 + i % 3;
+        int binary = new BinaryCodec().encode(new Message(3, 7, Tag.TOKEN, requests)).remaining();
+        assertEquals(MessageCodec.HEADER_LENGTH + 3 + 1 + 2 + 99, binary);
+    }
+
+    public void testBinaryIsSmaller() throws Exception
+    {
+        Message message = new Message(3, 7, Tag.APP, "12");
+        int binary = new BinaryCodec().encode(message).remaining();
+        int serialized = new SerializationCodec().encode(message).remaining();
+        assertEquals(MessageCodec.HEADER_LENGTH + 5, binary);
+        assertTrue(binary * 10 < serialized);
+    }
+
+    public void testBinaryLeavesOutDestination() throws Exception
+    {
+        BinaryCodec codec = new BinaryCodec();
+        ByteBuffer a = codec.encode(new Message(3, 7, Tag.APP, "x"));
+        ByteBuffer b = codec.encode(new Message(3, 9, Tag.APP, "x"));
+        assertEquals(a, b);
+        a.position(MessageCodec.HEADER_LENGTH);
+        assertEquals(Message.NO_DESTINATION, codec.decode(a).getDstId());
+    }
+
+    private static void assertRoundTrip(MessageCodec codec, Message message) throws Exception
+    {
+        ByteBuffer frame = codec.encode(message);
+        assertEquals(frame.remaining() - MessageCodec.HEADER_LENGTH, frame.getInt(0));
+        frame.position(MessageCodec.HEADER_LENGTH);
+        Message decoded = codec.decode(frame);
+        assertEquals(message.getSrcId(), decoded.getSrcId());
+        if(codec instanceof SerializationCodec)
+            assertEquals(message.getDstId(), decoded.getDstId());
+        assertEquals(message.getTag(), decoded.getTag());
+        assertEquals(message.getContent(), decoded.getContent());
+        assertTrue(Arrays.equals(message.getValues(), decoded.getValues()));
+        assertTrue(Arrays.equals(message.getClock(), decoded.getClock()));
+    }
+}
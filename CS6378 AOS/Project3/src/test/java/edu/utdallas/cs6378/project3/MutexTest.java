@@ -0,0 +1,809 @@
+package edu.utdallas.cs6378.project3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import edu.utdallas.project3.metrics.MetricsHttpServer;
+import edu.utdallas.project3.metrics.MetricsRegistry;
+import edu.utdallas.project3.server.CsTrace;
+import edu.utdallas.project3.server.CsTraceVerifier;
+import edu.utdallas.project3.server.GridQuorum;
+import edu.utdallas.project3.server.KMutexProcess;
+import edu.utdallas.project3.server.LocalCluster;
+import edu.utdallas.project3.server.LockGrant;
+import edu.utdallas.project3.server.MaekawaProcess;
+import edu.utdallas.project3.server.MutexAlgorithms;
+import edu.utdallas.project3.server.MutexProcess;
+import edu.utdallas.project3.server.MutexStats;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.RaymondProcess;
+import edu.utdallas.project3.server.ReaderWriterProcess;
+import edu.utdallas.project3.server.SpanningTree;
+import edu.utdallas.project3.server.SuzukiKasamiProcess;
+import edu.utdallas.project3.server.Process;
+import edu.utdallas.project3.server.RicartAgrawalaProcess;
+import edu.utdallas.project3.server.VectorClock;
+import edu.utdallas.project3.server.WorkloadDriver;
+import edu.utdallas.project3.server.WorkloadReport;
+import edu.utdallas.project3.socket.Linker;
+import edu.utdallas.project3.tools.Histogram;
+import edu.utdallas.project3.tools.MutexConfig;
+import junit.framework.TestCase;
+
+/**
+ * Mutual exclusion algorithms on in-process clusters.
+ */
+public class MutexTest 
+    extends TestCase
+{
+    private static final int NODES = 8;
+    private static final int ENTRIES = 50;
+
+    private LocalCluster cluster;
+
+    @Override
+    protected void tearDown()
+    {
+        if(cluster != null)
+            cluster.close();
+    }
+
+    private LocalCluster start(MutexConfig config) throws Exception
+    {
+        cluster = new LocalCluster(config, MutexAlgorithms.forName(config.getMutexAlgorithm()),
+                MutexAlgorithms.topologyFor(config.getMutexAlgorithm()));
+        cluster.start();
+        return cluster;
+    }
+
+    private static MutexConfig config(String algorithm)
+    {
+        MutexConfig config = new MutexConfig();
+        config.setNumberOfNodes(NODES);
+        config.setMutexAlgorithm(algorithm);
+        return config;
+    }
+
+    /**
+     * Every node enters concurrently; at most one may be inside at a time
+     */
+    private void checkMutualExclusion(LocalCluster cluster) throws Exception
+    {
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        final AtomicInteger entered = new AtomicInteger();
+        final List<Throwable> failures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for(Process process : cluster.getProcesses()){
+            final MutexProcess mutex = (MutexProcess)process;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        for(int i = 0; i < ENTRIES; i++){
+                            mutex.csEnter();
+                            if(inside.incrementAndGet() != 1)
+                                violations.incrementAndGet();
+                            entered.incrementAndGet();
+                            inside.decrementAndGet();
+                            mutex.csLeave();
+                        }
+                    } catch (Throwable t){
+                        synchronized(failures){
+                            failures.add(t);
+                        }
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join(30000);
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(0, violations.get());
+        assertEquals(NODES * ENTRIES, entered.get());
+    }
+
+    public void testRicartAgrawala() throws Exception
+    {
+        checkMutualExclusion(start(config(RicartAgrawalaProcess.NAME)));
+    }
+
+    public void testRicartAgrawalaKeepsPermissions() throws Exception
+    {
+        LocalCluster cluster = start(config(RicartAgrawalaProcess.NAME));
+        MutexProcess node = (MutexProcess)cluster.getProcess(3);
+        node.csEnter();
+        node.csLeave();
+        assertEquals(2 * (NODES - 1), node.getStats().getMessages());
+
+        // Nobody asked since, so the next entries cost nothing
+        for(int i = 0; i < 10; i++){
+            node.csEnter();
+            node.csLeave();
+        }
+        MutexStats stats = node.getStats();
+        assertEquals(11, stats.getEntries());
+        assertEquals(10, stats.getUncontended());
+        assertEquals(2 * (NODES - 1), stats.getMessages());
+    }
+
+    public void testGridQuorumsIntersect()
+    {
+        for(int n = 1; n <= 40; n++){
+            List<Node> nodes = new ArrayList<>();
+            for(int id = 0; id < n; id++)
+                nodes.add(new Node(id));
+            for(int a = 0; a < n; a++){
+                List<Node> qa = GridQuorum.quorum(a, nodes);
+                assertTrue(qa.size() <= 2 * Math.ceil(Math.sqrt(n)));
+                for(int b = 0; b < n; b++){
+                    List<Node> qb = new ArrayList<>(GridQuorum.quorum(b, nodes));
+                    qb.retainAll(qa);
+                    assertFalse(String.format("n=%d a=%d b=%d", n, a, b), qb.isEmpty());
+                }
+            }
+        }
+    }
+
+    public void testMaekawa() throws Exception
+    {
+        checkMutualExclusion(start(config(MaekawaProcess.NAME)));
+    }
+
+    public void testMaekawaOnPool() throws Exception
+    {
+        MutexConfig config = config(MaekawaProcess.NAME);
+        config.setProperty(MutexConfig.EXECUTION_MODE, "fixed");
+        config.setProperty(MutexConfig.EXECUTION_THREADS, "4");
+        checkMutualExclusion(start(config));
+    }
+
+    public void testRaymond() throws Exception
+    {
+        checkMutualExclusion(start(config(RaymondProcess.NAME)));
+    }
+
+    public void testRaymondSpanningTree() throws Exception
+    {
+        MutexConfig config = config(RaymondProcess.NAME);
+        config.setNumberOfNodes(37);
+        LocalCluster cluster = start(config);
+        int edges = 0;
+        for(int id = 0; id < 37; id++){
+            SpanningTree tree = ((RaymondProcess)cluster.getProcess(id)).getTree();
+            tree.awaitReady();
+            edges += tree.getChildren().size();
+            assertTrue(tree.getDepth() <= 6);       // ceil(log2 37)
+            for(int child : tree.getChildren())
+                assertEquals(id, ((RaymondProcess)cluster.getProcess(child)).getTree().getParent());
+        }
+        assertEquals(36, edges);
+
+        // Token stays put while nobody else asks
+        MutexProcess node = (MutexProcess)cluster.getProcess(29);
+        for(int i = 0; i < 5; i++){
+            node.csEnter();
+            node.csLeave();
+        }
+        assertEquals(4, node.getStats().getUncontended());
+    }
+
+    public void testSuzukiKasami() throws Exception
+    {
+        checkMutualExclusion(start(config(SuzukiKasamiProcess.NAME)));
+    }
+
+    public void testSuzukiKasamiHolderReenters() throws Exception
+    {
+        LocalCluster cluster = start(config(SuzukiKasamiProcess.NAME));
+        MutexProcess node = (MutexProcess)cluster.getProcess(5);
+        for(int i = 0; i < 10; i++){
+            node.csEnter();
+            node.csLeave();
+        }
+        MutexStats stats = node.getStats();
+        assertEquals(NODES, stats.getMessages());       // Broadcast plus the token, once
+        assertEquals(9, stats.getUncontended());
+    }
+
+    /**
+     * Every node queues many requests at once and releases each grant from
+     * its callback; at most one may be inside at a time
+     */
+    private void checkAsync(LocalCluster cluster) throws Exception
+    {
+        final int requests = 1000;
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for(Process process : cluster.getProcesses()){
+            MutexProcess mutex = (MutexProcess)process;
+            for(int i = 0; i < requests; i++){
+                done.add(mutex.csEnterAsync().thenAccept(new Consumer<LockGrant>() {
+                    @Override
+                    public void accept(LockGrant grant) {
+                        if(inside.incrementAndGet() != 1)
+                            violations.incrementAndGet();
+                        inside.decrementAndGet();
+                        try{
+                            grant.release();
+                        } catch (IOException e){
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }));
+            }
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        assertEquals(0, violations.get());
+        for(Process process : cluster.getProcesses())
+            assertEquals(requests, ((MutexProcess)process).getStats().getEntries());
+    }
+
+    public void testRicartAgrawalaAsync() throws Exception
+    {
+        checkAsync(start(config(RicartAgrawalaProcess.NAME)));
+    }
+
+    public void testRaymondAsync() throws Exception
+    {
+        checkAsync(start(config(RaymondProcess.NAME)));
+    }
+
+    /**
+     * A caller interrupted just as its grant arrives must not keep the
+     * critical section, or nobody else gets in again
+     */
+    public void testInterruptAroundGrantReleases() throws Exception
+    {
+        LocalCluster cluster = start(config(RicartAgrawalaProcess.NAME));
+        MutexProcess holder = (MutexProcess)cluster.getProcess(0);
+        final MutexProcess waiter = (MutexProcess)cluster.getProcess(1);
+        final List<Throwable> failures = new ArrayList<>();
+        for(int i = 0; i < 200; i++){
+            holder.csEnter();
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        waiter.csEnter();
+                        waiter.csLeave();
+                    } catch (InterruptedException e){
+                        // Withdrawn or released on the way out
+                    } catch (Throwable t){
+                        synchronized(failures){
+                            failures.add(t);
+                        }
+                    }
+                }
+            });
+            caller.start();
+            if(i % 2 == 0)
+                Thread.yield();                     // Vary who wins the race
+            holder.csLeave();
+            caller.interrupt();
+            caller.join(10000);
+            assertFalse(caller.isAlive());
+            holder.csEnterAsync().get(10, TimeUnit.SECONDS).release();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    public void testCombining() throws Exception
+    {
+        MutexConfig config = config(SuzukiKasamiProcess.NAME);
+        config.setProperty(MutexConfig.MUTEX_BATCH, "16");
+        LocalCluster cluster = start(config);
+        checkAsync(cluster);
+        long combined = 0;
+        for(Process process : cluster.getProcesses()){
+            MutexStats stats = ((MutexProcess)process).getStats();
+            combined += stats.getCombined();
+            // Never more than a batch under one request
+            assertTrue(stats.toString(), stats.getEntries() - stats.getCombined() >= stats.getEntries() / 16);
+        }
+        assertTrue(combined > 0);
+    }
+
+    public void testCombiningThreads() throws Exception
+    {
+        MutexConfig config = config(RicartAgrawalaProcess.NAME);
+        config.setMutexBatch(4);
+        final MutexProcess node = (MutexProcess)start(config).getProcess(2);
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 32; t++){
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        for(int i = 0; i < ENTRIES; i++){
+                            node.csEnter();
+                            if(inside.incrementAndGet() != 1)
+                                violations.incrementAndGet();
+                            inside.decrementAndGet();
+                            node.csLeave();
+                        }
+                    } catch (Exception e){
+                        violations.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join(30000);
+        assertEquals(0, violations.get());
+        assertEquals(32 * ENTRIES, node.getStats().getEntries());
+    }
+
+    public void testKMutex() throws Exception
+    {
+        final int k = 3;
+        MutexConfig config = config(KMutexProcess.NAME);
+        config.setProperty(MutexConfig.MUTEX_K, Integer.toString(k));
+        LocalCluster cluster = start(config);
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger maxInside = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for(Process process : cluster.getProcesses()){
+            final MutexProcess mutex = (MutexProcess)process;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        for(int i = 0; i < 20; i++){
+                            mutex.csEnter();
+                            int now = inside.incrementAndGet();
+                            synchronized(maxInside){
+                                maxInside.set(Math.max(maxInside.get(), now));
+                            }
+                            Thread.sleep(2);
+                            inside.decrementAndGet();
+                            mutex.csLeave();
+                        }
+                    } catch (Exception e){
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join(30000);
+        assertEquals(0, failures.get());
+        assertTrue(maxInside.get() <= k);
+        assertTrue(maxInside.get() > 1);
+    }
+
+    public void testKMutexOfOneExcludes() throws Exception
+    {
+        checkMutualExclusion(start(config(KMutexProcess.NAME)));
+    }
+
+    public void testReaderWriter() throws Exception
+    {
+        LocalCluster cluster = start(config(ReaderWriterProcess.NAME));
+        final AtomicInteger readers = new AtomicInteger();
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicInteger maxReaders = new AtomicInteger();
+        final AtomicInteger violations = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for(int id = 0; id < NODES; id++){
+            final MutexProcess mutex = (MutexProcess)cluster.getProcess(id);
+            final boolean writer = id % 4 == 0;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        for(int i = 0; i < 20; i++){
+                            if(writer){
+                                mutex.csEnter();
+                                if(writers.incrementAndGet() != 1 || readers.get() != 0)
+                                    violations.incrementAndGet();
+                                Thread.sleep(1);
+                                writers.decrementAndGet();
+                            } else {
+                                mutex.csEnterShared();
+                                int now = readers.incrementAndGet();
+                                if(writers.get() != 0)
+                                    violations.incrementAndGet();
+                                synchronized(maxReaders){
+                                    maxReaders.set(Math.max(maxReaders.get(), now));
+                                }
+                                Thread.sleep(2);
+                                readers.decrementAndGet();
+                            }
+                            mutex.csLeave();
+                        }
+                    } catch (Exception e){
+                        violations.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads)
+            thread.start();
+        for(Thread thread : threads)
+            thread.join(30000);
+        assertEquals(0, violations.get());
+        assertTrue(maxReaders.get() > 1);
+    }
+
+    public void testReaderWriterExclusive() throws Exception
+    {
+        checkMutualExclusion(start(config(ReaderWriterProcess.NAME)));
+    }
+
+    public void testAsyncTimeout() throws Exception
+    {
+        LocalCluster cluster = start(config(RicartAgrawalaProcess.NAME));
+        MutexProcess holder = (MutexProcess)cluster.getProcess(0);
+        MutexProcess node = (MutexProcess)cluster.getProcess(1);
+        holder.csEnter();
+        try{
+            node.csEnterAsync(100, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+            fail("Granted while another node holds the critical section");
+        } catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        holder.csLeave();
+
+        // The timed out request is passed on once granted, so the node can enter again
+        LockGrant grant = node.csEnterAsync(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+        grant.release();
+        try{
+            grant.release();
+            fail("Released twice");
+        } catch (IllegalStateException e){
+        }
+    }
+
+    public void testAsyncCancel() throws Exception
+    {
+        LocalCluster cluster = start(config(SuzukiKasamiProcess.NAME));
+        MutexProcess holder = (MutexProcess)cluster.getProcess(0);
+        MutexProcess node = (MutexProcess)cluster.getProcess(1);
+        holder.csEnter();
+        CompletableFuture<LockGrant> inFlight = node.csEnterAsync();
+        CompletableFuture<LockGrant> queued = node.csEnterAsync();
+        CompletableFuture<LockGrant> last = node.csEnterAsync();
+        assertTrue(inFlight.cancel(false));
+        assertTrue(queued.cancel(false));
+        holder.csLeave();
+
+        last.get(10, TimeUnit.SECONDS).release();
+        try{
+            queued.get();
+            fail("Cancelled request granted");
+        } catch (CancellationException e){
+        }
+        node.csEnter();
+        node.csLeave();
+        assertEquals(3, node.getStats().getEntries());     // The queued one never began
+    }
+
+    /**
+     * Fails its first request after request() returned, grants the others
+     */
+    static class FlakyProcess extends MutexProcess {
+        private boolean first = true;
+
+        FlakyProcess(Linker linker, MutexConfig config){
+            super(linker, config);
+        }
+
+        @Override
+        protected void request() {
+            if(!first){
+                granted();
+                return;
+            }
+            first = false;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    failed(new IOException("Lost the request"));
+                }
+            }).start();
+        }
+
+        @Override
+        protected void release() {
+        }
+    }
+
+    public void testAsyncFailureFreesNode() throws Exception
+    {
+        MutexConfig config = new MutexConfig();
+        config.setNumberOfNodes(2);
+        cluster = new LocalCluster(config, new LocalCluster.ProcessFactory() {
+            @Override
+            public Process create(Linker linker, MutexConfig config) {
+                return new FlakyProcess(linker, config);
+            }
+        });
+        cluster.start();
+        MutexProcess node = (MutexProcess)cluster.getProcess(0);
+        CompletableFuture<LockGrant> lost = node.csEnterAsync();
+        CompletableFuture<LockGrant> next = node.csEnterAsync();
+        try{
+            lost.get(10, TimeUnit.SECONDS);
+            fail("Failed request granted");
+        } catch (ExecutionException e){
+            assertEquals("Lost the request", e.getCause().getMessage());
+        }
+        next.get(10, TimeUnit.SECONDS).release();
+        node.csEnter();
+        node.csLeave();
+    }
+
+    public void testHistogram()
+    {
+        Histogram histogram = new Histogram();
+        Random random = new Random(3);
+        long[] values = new long[100000];
+        for(int i = 0; i < values.length; i++){
+            values[i] = (long)(-1e6 * Math.log(1 - random.nextDouble()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for(double percentile : new double[]{ 1, 50, 90, 99, 99.9, 100 }){
+            long exact = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+            long value = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + value + " vs " + exact, value >= exact && value <= exact * 1.01);
+        }
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+
+        Histogram small = new Histogram();
+        for(long value = 0; value < 256; value++)
+            small.record(value);                    // Exact below 2^(subBits + 1)
+        assertEquals(127, small.getValueAtPercentile(50));
+        small.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, small.getValueAtPercentile(100));
+    }
+
+    public void testWorkloadDriver() throws Exception
+    {
+        MutexConfig config = config(RicartAgrawalaProcess.NAME);
+        config.setMeanInterRequestDelay(2);
+        config.setMeanCSExecution(1);
+        config.setNumberOfRequest(20);
+        File directory = Files.createTempDirectory("workload").toFile();
+        File report = new File(directory, "node-0.json");
+        report.deleteOnExit();
+        directory.deleteOnExit();
+        config.setWorkloadReport(new File(directory, "node-{node}.json").getPath());
+        LocalCluster cluster = start(config);
+        List<MutexProcess> processes = new ArrayList<>();
+        for(Process process : cluster.getProcesses())
+            processes.add((MutexProcess)process);
+
+        WorkloadDriver driver = new WorkloadDriver(config);
+        WorkloadReport result = driver.run(processes);
+        assertEquals(NODES * 20, result.getEntries());
+        assertEquals(NODES * 20, result.getResponseTime().getCount());
+        assertEquals(NODES * 20, result.getMessages().getCount());
+        assertTrue(result.getMessages().getMax() <= 2 * (NODES - 1));
+        assertTrue(result.getSyncDelay().getCount() > 0);       // Under contention at times
+        assertTrue(result.getResponseTime().getMean() >= result.getWaitTime().getMean());
+        assertTrue(result.getThroughput() > 0);
+
+        driver.publish(result, 0);
+        String json = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8).trim();
+        assertTrue(json, json.startsWith("{\"algorithm\":\"ricart-agrawala\"") && json.endsWith("}"));
+        assertTrue(json, json.contains("\"syncDelayNanos\":{\"count\":"));
+    }
+
+    public void testTracesVerify() throws Exception
+    {
+        Path directory = Files.createTempDirectory("traces");
+        MutexConfig config = config(RicartAgrawalaProcess.NAME);
+        config.setTraceDirectory(directory.toString());
+        checkMutualExclusion(start(config));
+        cluster.close();                            // Flushes the traces
+
+        List<Path> files = new ArrayList<>();
+        for(int id = 0; id < NODES; id++)
+            files.add(directory.resolve(CsTrace.fileName(id)));
+        CsTraceVerifier.Result result = CsTraceVerifier.verify(files, 1000);    // Remaps often
+        assertTrue(result.toString(), result.isSafe());
+        assertEquals(NODES * ENTRIES, result.getSections());
+        delete(directory, files);
+    }
+
+    public void testTracesVerifyReaders() throws Exception
+    {
+        Path directory = Files.createTempDirectory("traces");
+        MutexConfig config = config(ReaderWriterProcess.NAME);
+        config.setTraceDirectory(directory.toString());
+        LocalCluster cluster = start(config);
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for(Process process : cluster.getProcesses()){
+            MutexProcess mutex = (MutexProcess)process;
+            for(int i = 0; i < ENTRIES; i++){
+                CompletableFuture<LockGrant> grant = i % 5 == 0 ? mutex.csEnterAsync() : mutex.csEnterSharedAsync();
+                done.add(grant.thenAccept(new Consumer<LockGrant>() {
+                    @Override
+                    public void accept(LockGrant grant) {
+                        try{
+                            grant.release();
+                        } catch (IOException e){
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }));
+            }
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        cluster.close();
+
+        List<Path> files = new ArrayList<>();
+        for(int id = 0; id < NODES; id++)
+            files.add(directory.resolve(CsTrace.fileName(id)));
+        CsTraceVerifier.Result result = CsTraceVerifier.verify(files);
+        assertTrue(result.toString(), result.isSafe());
+        assertEquals(NODES * ENTRIES, result.getSections());
+        delete(directory, files);
+    }
+
+    public void testTraceVerifierFindsOverlap() throws Exception
+    {
+        Path directory = Files.createTempDirectory("traces");
+        List<Path> files = new ArrayList<>();
+        VectorClock[] clocks = new VectorClock[3];
+        CsTrace[] traces = new CsTrace[3];
+        for(int id = 0; id < 3; id++){
+            files.add(directory.resolve(CsTrace.fileName(id)));
+            clocks[id] = new VectorClock(id, 3);
+            traces[id] = new CsTrace(files.get(id), clocks[id]);
+        }
+        // 0 then 1 then 2, handing over by message
+        traces[0].enter(false);
+        traces[0].exit();
+        clocks[1].receive(clocks[0].send());
+        traces[1].enter(false);
+        traces[1].exit();
+        clocks[2].receive(clocks[1].send());
+        traces[2].enter(true);
+        traces[2].exit();
+        // 0 enters again having heard from 1 only, while 2 may still read
+        clocks[0].receive(clocks[1].send());
+        traces[0].enter(false);
+        traces[0].exit();
+        for(CsTrace trace : traces)
+            trace.close();
+
+        CsTraceVerifier.Result result = CsTraceVerifier.verify(files);
+        assertEquals(4, result.getSections());
+        assertEquals(1, result.getViolations());
+        assertTrue(result.getExamples().get(0), result.getExamples().get(0).contains("node 2"));
+        delete(directory, files);
+    }
+
+    public void testMetrics() throws Exception
+    {
+        checkMutualExclusion(start(config(RicartAgrawalaProcess.NAME)));
+        MetricsRegistry metrics = cluster.getMetrics();
+        Map<String, Number> values = metrics.snapshot();
+        for(int i = 0; i < 1000 && sum(values, "project3_channel_messages_sent_total{")
+                != sum(values, "project3_channel_messages_received_total{"); i++){
+            Thread.sleep(10);                           // Last replies in flight
+            values = metrics.snapshot();
+        }
+        long sent = sum(values, "project3_channel_messages_sent_total{");
+        assertTrue(sent > 0);
+        assertEquals(sent, sum(values, "project3_channel_messages_received_total{"));
+        assertEquals(sent, sum(values, "project3_tag_messages_sent_total{"));
+        assertEquals(sum(values, "project3_channel_bytes_sent_total{"), sum(values, "project3_channel_bytes_received_total{"));
+        assertEquals(ENTRIES, values.get("project3_cs_wait_seconds_count{node=\"0\"}").longValue());
+        assertTrue(values.get("project3_handler_seconds_count{node=\"0\",tag=\"REQUEST\"}").longValue() > 0);
+        assertEquals(0L, values.get("project3_channel_queue_depth{node=\"0\",peer=\"1\"}"));
+
+        Object jmx = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("edu.utdallas.project3:type=Metrics,cluster=local"),
+                "project3_cs_wait_seconds_count{node=\"0\"}");
+        assertEquals((long)ENTRIES, jmx);
+        try{
+            ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName("edu.utdallas.project3:type=Metrics,cluster=local"), "reset", null, null);
+            fail("Invoked an operation of a read-only bean");
+        } catch (ReflectionException expected){
+            assertTrue(expected.getTargetException() instanceof NoSuchMethodException);
+        }
+
+        MetricsHttpServer http = new MetricsHttpServer(metrics, 0);
+        try{
+            HttpURLConnection connection = (HttpURLConnection)new URL(
+                    "http://localhost:" + http.getPort() + MetricsHttpServer.PATH).openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MetricsHttpServer.CONTENT_TYPE, connection.getContentType());
+            String text;
+            try(InputStream in = connection.getInputStream()){
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for(int n; (n = in.read(buffer)) > 0; )
+                    out.write(buffer, 0, n);
+                text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+            }
+            assertTrue(text, text.contains("# TYPE project3_channel_messages_sent_total counter\n"));
+            assertTrue(text, text.contains("# TYPE project3_cs_wait_seconds summary\n"));
+            assertTrue(text, text.contains("project3_cs_wait_seconds{node=\"3\",quantile=\"0.99\"} "));
+            assertTrue(text, text.contains("project3_tag_messages_sent_total{node=\"1\",tag=\"REPLY\"} "));
+        } finally {
+            http.stop();
+        }
+    }
+
+    public void testMetricsRegistry()
+    {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("hits_total", "Hits", "path", "a\"b").add(3);
+        assertSame(metrics.counter("hits_total", "Hits", "path", "a\"b"), metrics.counter("hits_total", "Hits", "path", "a\"b"));
+        metrics.histogram("latency_seconds", "Latency", 1e-3).record(1000);
+        assertEquals("# HELP hits_total Hits\n# TYPE hits_total counter\nhits_total{path=\"a\\\"b\"} 3\n"
+                + "# HELP latency_seconds Latency\n# TYPE latency_seconds summary\n"
+                + "latency_seconds{quantile=\"0.5\"} 1.0\nlatency_seconds{quantile=\"0.9\"} 1.0\n"
+                + "latency_seconds{quantile=\"0.99\"} 1.0\nlatency_seconds{quantile=\"0.999\"} 1.0\n"
+                + "latency_seconds_sum 1.0\nlatency_seconds_count 1\n", metrics.toString());
+        for(Map.Entry<String, Number> entry : metrics.snapshot().entrySet())
+            assertEquals(entry.getKey(), entry.getValue(), metrics.value(entry.getKey()));
+        assertNull(metrics.value("hits_total"));
+        assertNull(metrics.value("misses_total"));
+        assertNull(metrics.value("hits_total_count{path=\"a\\\"b\"}"));
+        assertNull(metrics.value("latency_seconds{quantile=\"0.75\"}"));
+        try{
+            metrics.histogram("hits_total", "Hits", 1);
+            fail("Registered a counter name as a summary");
+        } catch (IllegalArgumentException expected){
+        }
+    }
+
+    private static long sum(Map<String, Number> values, String prefix)
+    {
+        long sum = 0;
+        for(Map.Entry<String, Number> entry : values.entrySet()){
+            if(entry.getKey().startsWith(prefix))
+                sum += entry.getValue().longValue();
+        }
+        return sum;
+    }
+
+    private static void delete(Path directory, List<Path> files) throws IOException
+    {
+        for(Path file : files)
+            Files.deleteIfExists(file);
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,119 @@
+package edu.utdallas.project3.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.utdallas.project3.codec.BinaryCodec;
+import edu.utdallas.project3.codec.MessageCodec;
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.Tag;
+import junit.framework.TestCase;
+
+/**
+ * Channel establishment against a scripted peer. In the connector's
+ * package to speak its framing.
+ */
+public class ConnectorTest
+    extends TestCase
+{
+    private final MessageCodec codec = new BinaryCodec();
+
+    /**
+     * The peer drops the first handshake and answers the second with the
+     * wrong tag; the dialer retries until the third gets through
+     */
+    public void testDialRetriesFailedHandshake() throws Exception
+    {
+        final ServerSocketChannel peer = ServerSocketChannel.open();
+        peer.bind(new InetSocketAddress("localhost", 0));
+        final List<Message> requests = Collections.synchronizedList(new ArrayList<Message>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread script = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    for(int attempt = 0; attempt < 3; attempt++){
+                        try(SocketChannel socket = peer.accept()){
+                            requests.add(Frames.read(socket, codec));
+                            if(attempt == 1)
+                                Frames.write(socket, codec.encode(new Message(1, 0, Tag.APP, "Not yet")));
+                            else if(attempt == 2)
+                                Frames.write(socket, codec.encode(new Message(1, 0, Tag.HANDSHAKE, "Response")));
+                        }
+                    }
+                } catch (IOException e){
+                    failures.add(e);
+                }
+            }
+        });
+        script.start();
+
+        Connector connector = new Connector();
+        SocketChannel[] channels = new SocketChannel[1];
+        List<Node> processes = Collections.singletonList(
+                new Node(1, "localhost", String.valueOf(peer.socket().getLocalPort())));
+        try{
+            connector.connect(freePort(), 0, channels, processes, codec, new ConnectPolicy(10000, 10, 50));
+            script.join();
+            assertEquals(0, failures.size());
+            assertEquals(3, requests.size());
+            for(Message request : requests)
+                assertEquals(Tag.HANDSHAKE, request.getTag());
+            assertNotNull(channels[0]);
+            assertSame(channels[0], connector.link[0]);
+        } finally {
+            connector.closeSockets();
+            peer.close();
+        }
+    }
+
+    /**
+     * A peer that never answers properly makes the dialer give up at the
+     * deadline
+     */
+    public void testDialGivesUpAtDeadline() throws Exception
+    {
+        final ServerSocketChannel peer = ServerSocketChannel.open();
+        peer.bind(new InetSocketAddress("localhost", 0));
+        Thread script = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    while(true){
+                        peer.accept().close();
+                    }
+                } catch (IOException e){
+                    // Closed by the test
+                }
+            }
+        });
+        script.start();
+
+        Connector connector = new Connector();
+        List<Node> processes = Collections.singletonList(
+                new Node(1, "localhost", String.valueOf(peer.socket().getLocalPort())));
+        try{
+            connector.connect(freePort(), 0, new SocketChannel[1], processes, codec, new ConnectPolicy(300, 10, 50));
+            fail("Connected without a handshake");
+        } catch (IOException expected){
+        } finally {
+            connector.closeSockets();
+            peer.close();
+            script.join();
+        }
+    }
+
+    private static int freePort() throws IOException
+    {
+        try(ServerSocket socket = new ServerSocket(0)){
+            return socket.getLocalPort();
+        }
+    }
+}
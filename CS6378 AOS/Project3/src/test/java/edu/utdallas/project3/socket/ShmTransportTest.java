@@ -0,0 +1,387 @@
+package edu.utdallas.project3.socket;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import edu.utdallas.project3.codec.BinaryCodec;
+import edu.utdallas.project3.server.Message;
+import edu.utdallas.project3.server.MessageHandler;
+import edu.utdallas.project3.server.Node;
+import edu.utdallas.project3.server.Tag;
+import junit.framework.TestCase;
+
+/**
+ * Shared memory rings, producer and consumer in one JVM, and the transport
+ * over them. In the rings' package to reach their layout.
+ */
+public class ShmTransportTest
+    extends TestCase
+{
+    private static final int CAPACITY = 1024;
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("rings");
+    }
+
+    @Override
+    protected void tearDown() throws IOException
+    {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)){
+            for(Path file : files)
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Copies every payload delivered
+     */
+    static class Collector implements Transport.FrameListener {
+        final List<byte[]> payloads = new ArrayList<>();
+
+        @Override
+        public void onFrame(int index, ByteBuffer payload) {
+            byte[] copy = new byte[payload.remaining()];
+            payload.get(copy);
+            payloads.add(copy);
+        }
+
+        @Override
+        public void onClosed(int index, IOException cause) {
+            fail("Ring closed: " + cause);
+        }
+    }
+
+    public void testWrapMarkerAndFullRing() throws IOException
+    {
+        if(!ShmRing.isSupported())
+            return;
+        Path file = directory.resolve("wrap.ring");
+        ShmRing consumer = ShmRing.create(file, CAPACITY);
+        ShmRing producer = ShmRing.attach(file);
+        Collector collector = new Collector();
+
+        // Records of 100 bytes: ten fill 1000 bytes, the eleventh does not fit
+        // before the end and needs 24 bytes of wrap on top of its own
+        for(int seq = 0; seq < 10; seq++)
+            assertTrue(producer.offer(frame(seq, 96)));
+        assertFalse("Full ring took a frame", producer.offer(frame(10, 96)));
+        assertEquals(0, collector.payloads.size());
+
+        assertEquals(10, consumer.drain(0, collector));
+        assertTrue(producer.offer(frame(10, 96)));
+        MappedByteBuffer raw = map(file);
+        assertEquals(ShmRing.WRAP, raw.getInt(ShmRing.DATA_OFFSET + 1000));
+        assertEquals(96, raw.getInt(ShmRing.DATA_OFFSET));
+        assertEquals(1000 + 24 + 100, counter(raw, ShmRing.TAIL_OFFSET));
+
+        assertEquals(1, consumer.drain(0, collector));
+        assertEquals(counter(raw, ShmRing.TAIL_OFFSET), counter(raw, ShmRing.HEAD_OFFSET));
+        for(int seq = 0; seq <= 10; seq++)
+            checkPayload(collector.payloads.get(seq), seq, 96);
+        assertEquals(0, consumer.drain(0, collector));
+    }
+
+    public void testFrameLargerThanRing() throws IOException
+    {
+        if(!ShmRing.isSupported())
+            return;
+        Path file = directory.resolve("large.ring");
+        ShmRing.create(file, CAPACITY);
+        try{
+            ShmRing.attach(file).offer(frame(0, CAPACITY));
+            fail("Offered a frame larger than the ring");
+        } catch (IOException expected){
+        }
+    }
+
+    public void testManyWraps() throws IOException
+    {
+        if(!ShmRing.isSupported())
+            return;
+        Path file = directory.resolve("wraps.ring");
+        ShmRing consumer = ShmRing.create(file, CAPACITY);
+        ShmRing producer = ShmRing.attach(file);
+        MappedByteBuffer raw = map(file);
+        Collector collector = new Collector();
+        Random random = new Random(42);
+        int frames = 20000;
+        int[] lengths = new int[frames];
+        int fulls = 0;
+        for(int seq = 0; seq < frames; seq++){
+            lengths[seq] = 4 + random.nextInt(300);
+            ByteBuffer frame = frame(seq, lengths[seq]);
+            while(!producer.offer(frame)){
+                fulls++;
+                consumer.drain(0, collector);
+                assertEquals(counter(raw, ShmRing.TAIL_OFFSET), counter(raw, ShmRing.HEAD_OFFSET));
+            }
+            assertTrue(counter(raw, ShmRing.TAIL_OFFSET) - counter(raw, ShmRing.HEAD_OFFSET) <= CAPACITY);
+        }
+        consumer.drain(0, collector);
+        long tail = counter(raw, ShmRing.TAIL_OFFSET);
+        assertEquals(tail, counter(raw, ShmRing.HEAD_OFFSET));
+        assertTrue("Wrapped only " + tail / CAPACITY + " times", tail / CAPACITY > 1000);
+        assertTrue(fulls > 0);
+        assertEquals(frames, collector.payloads.size());
+        for(int seq = 0; seq < frames; seq++)
+            checkPayload(collector.payloads.get(seq), seq, lengths[seq]);
+    }
+
+    /**
+     * Frames that find the ring full wait in the sender's backlog and must
+     * still arrive in order
+     */
+    public void testBacklogKeepsOrder() throws Exception
+    {
+        if(!ShmRing.isSupported())
+            return;
+        final int count = 2000;
+        List<Node> nodes = Arrays.asList(new Node(0, "localhost", String.valueOf(freePort())),
+                new Node(1, "localhost", String.valueOf(freePort())));
+        final List<Linker> linkers = new ArrayList<>();
+        final List<ShmTransport> transports = new ArrayList<>();
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch received = new CountDownLatch(count);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        for(int id = 0; id < 2; id++){
+            Linker linker = new Linker(id, Collections.singletonList(nodes.get(1 - id)));
+            ShmTransport transport = new ShmTransport(
+                    new NioTransport(nodes.get(id).getPort(), linker.getCodec(), new FlushPolicy(), new ConnectPolicy()),
+                    directory, "backlog", CAPACITY, ConnectPolicy.DEFAULT_DEADLINE);
+            linker.setTransport(transport);
+            linkers.add(linker);
+            transports.add(transport);
+        }
+        linkers.get(1).setMessageHandler(new MessageHandler() {
+            @Override
+            public void handleMessage(Message m, int srcId, Tag tag) throws IOException {
+                try{
+                    stalled.await();                    // Hold the ring full until all is sent
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                order.add(Integer.parseInt(m.getContent()));
+                received.countDown();
+            }
+
+            @Override
+            public Message receiveMessage(int fromId) {
+                return null;
+            }
+        });
+        try{
+            Thread joiner = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        linkers.get(1).buildChannels();
+                    } catch (Exception e){
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            joiner.start();
+            linkers.get(0).buildChannels();
+            joiner.join();
+
+            for(int i = 0; i < count; i++)
+                linkers.get(0).sendMessage(1, Tag.APP, String.valueOf(i));
+            assertTrue("Ring never filled", transports.get(0).getQueueDepth(0) > 0);
+            stalled.countDown();
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+            for(int i = 0; i < count; i++)
+                assertEquals(i, order.get(i).intValue());
+        } finally {
+            stalled.countDown();
+            for(Linker linker : linkers)
+                linker.close();
+        }
+    }
+
+    /**
+     * Node 1 fails on the first frame it receives. Its own frames to node 0,
+     * most of them through the backlog, must still all arrive.
+     */
+    public void testInboundFailureKeepsSending() throws Exception
+    {
+        if(!ShmRing.isSupported())
+            return;
+        final int count = 500;
+        final CountDownLatch received = new CountDownLatch(count);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<IOException> closed = Collections.synchronizedList(new ArrayList<IOException>());
+        List<ShmTransport> transports = openPair(new Transport.FrameListener() {
+            @Override
+            public void onFrame(int index, ByteBuffer payload) {
+                order.add(payload.getInt(payload.position()));
+                received.countDown();
+            }
+
+            @Override
+            public void onClosed(int index, IOException cause) {
+                fail("Ring closed: " + cause);
+            }
+        }, new Transport.FrameListener() {
+            @Override
+            public void onFrame(int index, ByteBuffer payload) throws IOException {
+                throw new IOException("Broken handler");
+            }
+
+            @Override
+            public void onClosed(int index, IOException cause) {
+                closed.add(cause);
+            }
+        });
+        try{
+            transports.get(0).send(0, frame(-1, 96));
+            for(int i = 0; i < 1000 && closed.isEmpty(); i++)
+                Thread.sleep(10);
+            assertEquals(1, closed.size());
+
+            for(int seq = 0; seq < count; seq++)
+                transports.get(1).send(0, frame(seq, 96));
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+            for(int seq = 0; seq < count; seq++)
+                assertEquals(seq, order.get(seq).intValue());
+            assertEquals(1, closed.size());
+        } finally {
+            for(ShmTransport transport : transports)
+                transport.close();
+        }
+    }
+
+    /**
+     * A frame that can never fit is refused right away, even behind a
+     * backlog, and the channel stays usable
+     */
+    public void testOversizedFrameRefused() throws Exception
+    {
+        if(!ShmRing.isSupported())
+            return;
+        final int count = 100;
+        final CountDownLatch received = new CountDownLatch(count);
+        Transport.FrameListener counting = new Transport.FrameListener() {
+            @Override
+            public void onFrame(int index, ByteBuffer payload) {
+                received.countDown();
+            }
+
+            @Override
+            public void onClosed(int index, IOException cause) {
+                fail("Ring closed: " + cause);
+            }
+        };
+        List<ShmTransport> transports = openPair(counting, counting);
+        try{
+            for(int seq = 0; seq < count / 2; seq++)
+                transports.get(0).send(0, frame(seq, 96));
+            try{
+                transports.get(0).send(0, frame(-1, CAPACITY));
+                fail("Queued a frame larger than the ring");
+            } catch (IOException expected){
+            }
+            for(int seq = count / 2; seq < count; seq++)
+                transports.get(0).send(0, frame(seq, 96));
+            assertTrue(received.await(30, TimeUnit.SECONDS));
+        } finally {
+            for(ShmTransport transport : transports)
+                transport.close();
+        }
+    }
+
+    /**
+     * @return Transports of nodes 0 and 1, connected to each other
+     */
+    private List<ShmTransport> openPair(Transport.FrameListener... listeners) throws Exception
+    {
+        final List<Node> nodes = Arrays.asList(new Node(0, "localhost", String.valueOf(freePort())),
+                new Node(1, "localhost", String.valueOf(freePort())));
+        final List<ShmTransport> transports = new ArrayList<>();
+        for(int id = 0; id < 2; id++){
+            transports.add(new ShmTransport(
+                    new NioTransport(nodes.get(id).getPort(), new BinaryCodec(), new FlushPolicy(), new ConnectPolicy()),
+                    directory, "pair", CAPACITY, ConnectPolicy.DEFAULT_DEADLINE));
+        }
+        final Transport.FrameListener joinerListener = listeners[1];
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread joiner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    transports.get(1).open(1, Collections.singletonList(nodes.get(0)), joinerListener);
+                } catch (Exception e){
+                    failures.add(e);
+                }
+            }
+        });
+        joiner.start();
+        transports.get(0).open(0, Collections.singletonList(nodes.get(1)), listeners[0]);
+        joiner.join();
+        assertEquals(0, failures.size());
+        return transports;
+    }
+
+    /**
+     * @return Frame whose payload starts with the sequence number
+     */
+    private static ByteBuffer frame(int seq, int payloadLength)
+    {
+        ByteBuffer frame = ByteBuffer.allocate(Frames.HEADER_LENGTH + payloadLength);
+        frame.putInt(payloadLength).putInt(seq);
+        while(frame.hasRemaining())
+            frame.put((byte)seq);
+        frame.flip();
+        return frame;
+    }
+
+    private static void checkPayload(byte[] payload, int seq, int length)
+    {
+        assertEquals(length, payload.length);
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        assertEquals(seq, buffer.getInt());
+        while(buffer.hasRemaining())
+            assertEquals((byte)seq, buffer.get());
+    }
+
+    /**
+     * Head and tail are stored in native order, frames in network order
+     */
+    private static long counter(MappedByteBuffer raw, int offset)
+    {
+        return raw.duplicate().order(ByteOrder.nativeOrder()).getLong(offset);
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int freePort() throws IOException
+    {
+        try(ServerSocket socket = new ServerSocket(0)){
+            return socket.getLocalPort();
+        }
+    }
+}